@@ -0,0 +1,179 @@
+package com.octopepper.apprate;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The eligibility decision made by every init().
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EligibilityBenchmark {
+
+    private static final long NOW = 1450000000000L;
+
+    /**
+     * A custom condition as costly as an IPC, always met.
+     */
+    private static final PromptCondition EXPENSIVE_CONDITION = new PromptCondition() {
+        @Override
+        public String getName() {
+            return "expensive";
+        }
+
+        @Override
+        public int getCost() {
+            return COST_EXPENSIVE;
+        }
+
+        @Override
+        public boolean isCacheable() {
+            return true;
+        }
+
+        @Override
+        public boolean isMet(RateStateStore store, long launchCount) {
+            Blackhole.consumeCPU(10000);
+            return true;
+        }
+    };
+
+    private InMemoryRateStateStore mStore;
+    private FakeClock mClock;
+    private RatingEligibilityEngine mNotYetEligibleEngine;
+    private RatingEligibilityEngine mSuppressedEngine;
+    private RatingEligibilityEngine mCrashedEngine;
+    private RatingEligibilityEngine mPrecomputedEngine;
+    private CrashLog mCrashLog;
+    private RatingEligibilityEngine mEligibleEngine;
+    private RatingEligibilityEngine mShortCircuitedEngine;
+    private RatingEligibilityEngine mMemoizedEngine;
+
+    @Setup
+    public void setUp() {
+        mClock = new FakeClock(NOW);
+        mStore = new InMemoryRateStateStore();
+        mStore.putLong(PrefsContract.PREF_DATE_FIRST_LAUNCH, NOW - RatingEligibilityEngine.DAY_IN_MILLIS)
+                .putLong(PrefsContract.PREF_LAUNCH_COUNT, 3)
+                .putInt(PrefsContract.PREF_APP_VERSION_CODE, 1);
+
+        mNotYetEligibleEngine = new RatingEligibilityEngine(mStore, mClock)
+                .setMinLaunchesUntilPrompt(20)
+                .setMinDaysUntilPrompt(7);
+
+        InMemoryRateStateStore suppressedStore = new InMemoryRateStateStore();
+        suppressedStore.putBoolean(PrefsContract.PREF_DONT_SHOW_AGAIN, true);
+        mSuppressedEngine = new RatingEligibilityEngine(suppressedStore, mClock);
+
+        mCrashLog = new CrashLog(ByteBuffer.allocateDirect(128));
+        mCrashLog.record(NOW - RatingEligibilityEngine.DAY_IN_MILLIS);
+        mCrashedEngine = new RatingEligibilityEngine(new InMemoryRateStateStore(), mClock)
+                .setCrashHistory(mCrashLog)
+                .setMaxCrashesUntilPrompt(0, 30);
+
+        mEligibleEngine = new RatingEligibilityEngine(mStore, mClock);
+
+        InMemoryRateStateStore precomputedStore = new InMemoryRateStateStore();
+        precomputedStore.putLong(PrefsContract.PREF_DATE_FIRST_LAUNCH, NOW - RatingEligibilityEngine.DAY_IN_MILLIS);
+        mPrecomputedEngine = new RatingEligibilityEngine(precomputedStore, mClock)
+                .setMinDaysUntilPrompt(7);
+        mPrecomputedEngine.precomputeNextLaunch(true);
+
+        // Added first, but evaluated after the cheaper launch threshold, which is never reached.
+        mShortCircuitedEngine = new RatingEligibilityEngine(new InMemoryRateStateStore(), mClock)
+                .addCondition(EXPENSIVE_CONDITION)
+                .setMinLaunchesUntilPrompt(Long.MAX_VALUE);
+
+        // Evaluated once, then remembered as met.
+        mMemoizedEngine = new RatingEligibilityEngine(new InMemoryRateStateStore(), mClock)
+                .addCondition(EXPENSIVE_CONDITION);
+        mMemoizedEngine.onLaunch();
+    }
+
+    /**
+     * The common case: a launch before the thresholds are reached, with the precomputed state already known.
+     */
+    @Benchmark
+    public RatingEligibilityEngine.Decision notYetEligible() {
+        return mNotYetEligibleEngine.onLaunch();
+    }
+
+    /**
+     * A launch after the user rated or declined.
+     */
+    @Benchmark
+    public RatingEligibilityEngine.Decision suppressed() {
+        return mSuppressedEngine.onLaunch();
+    }
+
+    /**
+     * A launch whose decision was precomputed when the application last went to the background.
+     */
+    @Benchmark
+    public boolean promptPending() {
+        return mPrecomputedEngine.isPromptPending();
+    }
+
+    /**
+     * A launch within the crash window.
+     */
+    @Benchmark
+    public RatingEligibilityEngine.Decision crashed() {
+        return mCrashedEngine.onLaunch();
+    }
+
+    /**
+     * The work done by the uncaught exception handler.
+     */
+    @Benchmark
+    public CrashLog recordCrash() {
+        mCrashLog.record(NOW);
+        return mCrashLog;
+    }
+
+    @Benchmark
+    public RatingEligibilityEngine.Decision eligible() {
+        return mEligibleEngine.onLaunch();
+    }
+
+    /**
+     * A launch stopped by a cheap threshold, without evaluating an expensive custom condition.
+     */
+    @Benchmark
+    public RatingEligibilityEngine.Decision conditionShortCircuited() {
+        return mShortCircuitedEngine.onLaunch();
+    }
+
+    /**
+     * An eligible launch with an expensive cacheable condition that was met by an earlier launch.
+     */
+    @Benchmark
+    public RatingEligibilityEngine.Decision conditionMemoized() {
+        return mMemoizedEngine.onLaunch();
+    }
+
+    /**
+     * The first decision made by a new AppRate, which has to precompute its state from the store.
+     */
+    @Benchmark
+    public RatingEligibilityEngine.Decision firstDecision() {
+        mNotYetEligibleEngine.invalidate();
+        return mNotYetEligibleEngine.onLaunch();
+    }
+}
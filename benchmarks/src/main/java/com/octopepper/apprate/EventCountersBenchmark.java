@@ -0,0 +1,60 @@
+package com.octopepper.apprate;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recording significant events from several threads at once, and flushing them to the store.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EventCountersBenchmark {
+
+    private EventCounters mEventCounters;
+    private InMemoryRateStateStore mStore;
+
+    @Setup
+    public void setUp() {
+        mStore = new InMemoryRateStateStore();
+        mEventCounters = new EventCounters(new EventCounters.FlushScheduler() {
+            @Override
+            public void scheduleFlush() {
+                // Flushed explicitly by the flush benchmark.
+            }
+        });
+        mEventCounters.record("purchase");
+        mEventCounters.record("level_finished");
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordFromFourThreads() {
+        mEventCounters.record("level_finished");
+    }
+
+    @Benchmark
+    public void record() {
+        mEventCounters.record("purchase");
+    }
+
+    @Benchmark
+    public boolean recordThenFlush() {
+        mEventCounters.record("purchase");
+        return mEventCounters.flushTo(mStore);
+    }
+}
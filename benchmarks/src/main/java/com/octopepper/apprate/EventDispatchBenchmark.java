@@ -0,0 +1,71 @@
+package com.octopepper.apprate;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Posting an event from a click handler, which should not depend on the number of listeners.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EventDispatchBenchmark {
+
+    @Param({"1", "16"})
+    public int mListenerCount;
+
+    private ExecutorService mExecutor;
+    private AppRateEventDispatcher mDispatcher;
+
+    @Setup
+    public void setUp() {
+        mExecutor = Executors.newSingleThreadExecutor();
+        mDispatcher = new AppRateEventDispatcher(mExecutor, AppRateEventDispatcher.DEFAULT_CAPACITY,
+                new AppRateEventDispatcher.FailureHandler() {
+                    @Override
+                    public void onListenerFailed(AppRateEventListener listener, RuntimeException e) {
+                        // The listeners of the benchmark never throw.
+                    }
+                });
+        for (int i = 0; i < mListenerCount; i++) {
+            mDispatcher.addListener(new AppRateEventListener() {
+                @Override
+                public void onEvents(List<AppRateEvent> events) {
+                    // A slow analytics listener.
+                    long end = System.nanoTime() + 1000;
+                    while (System.nanoTime() < end) {
+                        Thread.yield();
+                    }
+                }
+            });
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public boolean postButtonClicked() {
+        return mDispatcher.post(AppRateEvent.buttonClicked(AppRateEvent.Dialog.RATE, -1));
+    }
+}
@@ -0,0 +1,65 @@
+package com.octopepper.apprate;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The experiment variant lookup made by every init(), and the assignment made by the first one.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ExperimentBenchmark {
+
+    private final AppRateExperiment mExperiment = new AppRateExperiment("prompt_timing")
+            .addVariant(new AppRateExperiment.Variant("control"))
+            .addVariant(new AppRateExperiment.Variant("early").setMinLaunchesUntilPrompt(3))
+            .addVariant(new AppRateExperiment.Variant("like_first", 2).setShowDoYouLikeTheAppFlow(true));
+
+    private InMemoryRateStateStore mAssignedStore;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mAssignedStore = new InMemoryRateStateStore();
+        mExperiment.assign(mAssignedStore);
+    }
+
+    /**
+     * A store of an install that has not been assigned yet, renewed for each invocation.
+     */
+    @State(Scope.Thread)
+    public static class NewInstall {
+
+        InMemoryRateStateStore mStore;
+
+        @Setup(Level.Invocation)
+        public void setUp() {
+            mStore = new InMemoryRateStateStore();
+            mStore.putLong(PrefsContract.PREF_INSTALL_ID, 0x5DEECE66DL);
+        }
+    }
+
+    @Benchmark
+    public AppRateExperiment.Variant assigned() {
+        return mExperiment.assign(mAssignedStore);
+    }
+
+    @Benchmark
+    public AppRateExperiment.Variant firstAssignment(NewInstall newInstall) {
+        return mExperiment.assign(newInstall.mStore);
+    }
+}
@@ -0,0 +1,26 @@
+package com.octopepper.apprate;
+
+/**
+ * A {@link RatingEligibilityEngine.Clock} whose time only moves when told to.
+ */
+public class FakeClock implements RatingEligibilityEngine.Clock {
+
+    private long mNow;
+
+    public FakeClock(long now) {
+        mNow = now;
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return mNow;
+    }
+
+    public void set(long now) {
+        mNow = now;
+    }
+
+    public void advance(long millis) {
+        mNow += millis;
+    }
+}
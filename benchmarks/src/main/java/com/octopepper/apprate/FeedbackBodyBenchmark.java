@@ -0,0 +1,42 @@
+package com.octopepper.apprate;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The default body of the email sent by {@link SendFeedback}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FeedbackBodyBenchmark {
+
+    private String mHeader = "Please enter your feedback above this line";
+    private String mDeviceLine = "Android Device: Samsung SM-G920F";
+    private String mAndroidVersionLine = "Android Version: 6.0.1";
+    private String mAppVersionLine = "App Version: 1.0.0";
+    private String mManufacturer = "samsung";
+    private String mModel = "SM-G920F";
+
+    @Benchmark
+    public String body() {
+        return FeedbackBody.build(mHeader, mDeviceLine, mAndroidVersionLine, mAppVersionLine);
+    }
+
+    @Benchmark
+    public String deviceName() {
+        return FeedbackBody.deviceName(mManufacturer, mModel);
+    }
+}
@@ -0,0 +1,68 @@
+package com.octopepper.apprate;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The same patterns as {@link StateStoreBenchmark}, against the memory-mapped file of the {@link MultiProcessRateStateStore}:
+ * lock-free reads, and increments under the file lock.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SharedStateFileBenchmark {
+
+    private File mFile;
+    private SharedStateFile mSharedFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("apprate_shared_state", null);
+        mSharedFile = SharedStateFile.open(mFile);
+        mSharedFile.put(PrefsContract.PREF_DATE_FIRST_LAUNCH, SharedStateFile.TYPE_LONG, 1450000000000L);
+        mSharedFile.put(PrefsContract.PREF_LAUNCH_COUNT, SharedStateFile.TYPE_LONG, 3);
+        mSharedFile.put(PrefsContract.PREF_APP_VERSION_CODE, SharedStateFile.TYPE_INT, 1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    /**
+     * The reads made by a launch that is not suppressed.
+     */
+    @Benchmark
+    public void readLaunchState(Blackhole blackhole) throws IOException {
+        blackhole.consume(mSharedFile.get(PrefsContract.PREF_APP_VERSION_CODE, SharedStateFile.TYPE_INT, -1));
+        blackhole.consume(mSharedFile.get(PrefsContract.PREF_DONT_SHOW_AGAIN, SharedStateFile.TYPE_BOOLEAN, 0));
+        blackhole.consume(mSharedFile.get(PrefsContract.PREF_PROMPT_AT, SharedStateFile.TYPE_LONG, -1));
+        blackhole.consume(mSharedFile.get(PrefsContract.PREF_LAUNCH_COUNT, SharedStateFile.TYPE_LONG, 0));
+        blackhole.consume(mSharedFile.get(PrefsContract.PREF_DATE_FIRST_LAUNCH, SharedStateFile.TYPE_LONG, 0));
+    }
+
+    /**
+     * Increment the launch counter, atomically across processes: a file lock, a read and a write.
+     */
+    @Benchmark
+    public long incrementLaunchCount() throws IOException {
+        return mSharedFile.add(PrefsContract.PREF_LAUNCH_COUNT, 1);
+    }
+}
@@ -0,0 +1,103 @@
+package com.octopepper.apprate;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link PrefsContract} read and write patterns of init() and of the dialog click listeners, against the in-memory write
+ * back cache. The write itself is a no-op, so that only the cost paid by the caller is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StateStoreBenchmark {
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private CachedRateStateStore mStore;
+    private long mNow = 1450000000000L;
+
+    @Setup
+    public void setUp() {
+        mStore = new CachedRateStateStore(DIRECT_EXECUTOR) {
+            @Override
+            protected Map<String, Object> load() {
+                return Collections.emptyMap();
+            }
+
+            @Override
+            protected boolean write(Map<String, Object> values) {
+                return true;
+            }
+        };
+        mStore.putLong(PrefsContract.PREF_DATE_FIRST_LAUNCH, mNow)
+                .putLong(PrefsContract.PREF_LAUNCH_COUNT, 3)
+                .putInt(PrefsContract.PREF_APP_VERSION_CODE, 1)
+                .commit();
+    }
+
+    /**
+     * The reads made by a launch that is not suppressed.
+     */
+    @Benchmark
+    public void readLaunchState(Blackhole blackhole) {
+        blackhole.consume(mStore.getInt(PrefsContract.PREF_APP_VERSION_CODE, -1));
+        blackhole.consume(mStore.getBoolean(PrefsContract.PREF_DONT_SHOW_AGAIN, false));
+        blackhole.consume(mStore.getLong(PrefsContract.PREF_PROMPT_AT, -1));
+        blackhole.consume(mStore.getLong(PrefsContract.PREF_LAUNCH_COUNT, 0));
+        blackhole.consume(mStore.getLong(PrefsContract.PREF_DATE_FIRST_LAUNCH, 0));
+    }
+
+    /**
+     * Increment the launch counter and write back, as init() does.
+     */
+    @Benchmark
+    public boolean incrementLaunchCount() {
+        long launchCount = mStore.getLong(PrefsContract.PREF_LAUNCH_COUNT, 0) + 1;
+        mStore.putLong(PrefsContract.PREF_LAUNCH_COUNT, launchCount).apply();
+        return true;
+    }
+
+    /**
+     * The remind me later button, two mutations coalesced into one write back.
+     */
+    @Benchmark
+    public boolean remindLater() {
+        mNow++;
+        mStore.putLong(PrefsContract.PREF_DATE_FIRST_LAUNCH, mNow)
+                .putLong(PrefsContract.PREF_LAUNCH_COUNT, 0)
+                .apply();
+        return true;
+    }
+
+    /**
+     * A mutation that does not change the value, which must not cause a write back.
+     */
+    @Benchmark
+    public boolean unchangedValue() {
+        mStore.putInt(PrefsContract.PREF_APP_VERSION_CODE, 1).apply();
+        return true;
+    }
+}
@@ -0,0 +1,61 @@
+package com.octopepper.apprate;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The application upgrade check made by every init(), and the reset it triggers after an upgrade.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class UpgradeCheckBenchmark {
+
+    private static final long NOW = 1450000000000L;
+
+    private InMemoryRateStateStore mStore;
+    private RatingEligibilityEngine mEngine;
+
+    @Setup(Level.Invocation)
+    public void setUp() {
+        mStore = new InMemoryRateStateStore();
+        mStore.putLong(PrefsContract.PREF_DATE_FIRST_LAUNCH, NOW)
+                .putLong(PrefsContract.PREF_LAUNCH_COUNT, 12)
+                .putBoolean(PrefsContract.PREF_DONT_SHOW_AGAIN, true)
+                .putInt(PrefsContract.PREF_APP_VERSION_CODE, 1);
+        mEngine = new RatingEligibilityEngine(mStore, new FakeClock(NOW));
+    }
+
+    @Benchmark
+    public boolean sameVersion() {
+        return mEngine.performAppUpgradeCheck(1, true);
+    }
+
+    @Benchmark
+    public boolean upgradeWithReset() {
+        return mEngine.performAppUpgradeCheck(2, true);
+    }
+
+    /**
+     * The first launch after an upgrade with reset: the state is cleared and the launch tracking starts over.
+     */
+    @Benchmark
+    public RatingEligibilityEngine.Decision upgradeThenLaunch() {
+        mEngine.performAppUpgradeCheck(2, true);
+        return mEngine.onLaunch();
+    }
+}
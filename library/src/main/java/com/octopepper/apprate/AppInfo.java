@@ -6,68 +6,134 @@ import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.util.Log;
 
+/**
+ * An immutable snapshot of the application name and version.<br/>
+ * It is built once per process, on first use or in the background with {@link #prewarm(Context)}, so that showing the dialogs
+ * does not go through the PackageManager again.
+ */
 public class AppInfo {
 
     private static final String TAG = AppInfo.class.getSimpleName();
 
+    private static volatile AppInfo sInstance;
+
+    private final String mName;
+    private final int mVersionCode;
+    private final String mVersionName;
+
+    private AppInfo(String name, int versionCode, String versionName) {
+        mName = name;
+        mVersionCode = versionCode;
+        mVersionName = versionName;
+    }
+
     /**
      * @param context A context of the current application.
-     * @return The application name of the current application.
+     * @return The snapshot of the current application, built on the first call.
      */
-    public static String getApplicationName(Context context) {
-        final PackageManager packageManager = context.getPackageManager();
-        ApplicationInfo applicationInfo;
+    public static AppInfo get(Context context) {
+        AppInfo instance = sInstance;
+        if (instance == null) {
+            synchronized (AppInfo.class) {
+                instance = sInstance;
+                if (instance == null) {
+                    instance = load(context.getApplicationContext());
+                    sInstance = instance;
+                }
+            }
+        }
+        return instance;
+    }
 
-        try {
-            applicationInfo = packageManager.getApplicationInfo(context.getPackageName(), 0);
-        } catch (final PackageManager.NameNotFoundException e) {
-            applicationInfo = null;
+    /**
+     * Build the snapshot on a background thread if it has not been built yet.
+     *
+     * @param context A context of the current application.
+     */
+    public static void prewarm(Context context) {
+        if (sInstance != null) {
+            return;
         }
 
-        return (String) (applicationInfo != null ? packageManager.getApplicationLabel(applicationInfo) : context.getString(R.string.application_name_unknown));
+        final Context applicationContext = context.getApplicationContext();
+        AppRateExecutors.background().execute(new Runnable() {
+            @Override
+            public void run() {
+                get(applicationContext);
+            }
+        });
     }
 
     /**
-     * Get the application version code
-     *
-     * @param context
-     * @return The version name or null if there was an error
+     * Forget the snapshot, so that the next call to {@link #get(Context)} builds it again. For tests only.
      */
-    public static Integer getApplicationVersionCode(Context context) {
+    static void reset() {
+        sInstance = null;
+    }
+
+    private static AppInfo load(Context context) {
+        final PackageManager packageManager = context.getPackageManager();
+
+        // The application info of the current process is available locally, without asking the PackageManager.
+        ApplicationInfo applicationInfo = context.getApplicationInfo();
+        CharSequence label = applicationInfo != null ? packageManager.getApplicationLabel(applicationInfo) : null;
+        String name = label != null ? label.toString() : context.getString(R.string.application_name_unknown);
+
+        int versionCode = 0;
+        String versionName = "";
         try {
-            if (context != null) {
-                PackageManager pm = context.getPackageManager();
-                if (pm != null) {
-                    PackageInfo pi = pm.getPackageInfo(context.getPackageName(), 0);
-                    if (pi != null) {
-                        return pi.versionCode;
-                    }
-                }
+            PackageInfo pi = packageManager.getPackageInfo(context.getPackageName(), 0);
+            if (pi != null) {
+                versionCode = pi.versionCode;
+                versionName = pi.versionName;
             }
-
         } catch (PackageManager.NameNotFoundException e) {
-            Log.e(TAG, "Unable to get application version code");
+            Log.e(TAG, "Unable to get application version");
         }
 
-        return 0;
+        return new AppInfo(name, versionCode, versionName);
     }
 
-    public static String getApplicationVersionName(Context context) {
-        try {
-            if (context != null) {
-                PackageManager pm = context.getPackageManager();
-                if (pm != null) {
-                    PackageInfo pi = pm.getPackageInfo(context.getPackageName(), 0);
-                    if (pi != null) {
-                        return pi.versionName;
-                    }
-                }
-            }
+    /**
+     * @return The application name.
+     */
+    public String getName() {
+        return mName;
+    }
 
-        } catch (PackageManager.NameNotFoundException e) {
-            Log.e(TAG, "Unable to get application version name");
-        }
+    /**
+     * @return The application version code, or 0 if there was an error.
+     */
+    public int getVersionCode() {
+        return mVersionCode;
+    }
+
+    /**
+     * @return The application version name, or an empty string if there was an error.
+     */
+    public String getVersionName() {
+        return mVersionName;
+    }
+
+    /**
+     * @param context A context of the current application.
+     * @return The application name of the current application.
+     */
+    public static String getApplicationName(Context context) {
+        return get(context).getName();
+    }
 
-        return "";
+    /**
+     * Get the application version code
+     *
+     * @param context
+     * @return The version code or 0 if there was an error
+     */
+    public static Integer getApplicationVersionCode(Context context) {
+        return context != null ? get(context).getVersionCode() : 0;
+    }
+
+    public static String getApplicationVersionName(Context context) {
+        return context != null ? get(context).getVersionName() : "";
     }
 }
@@ -2,47 +2,149 @@ package com.octopepper.apprate;
 
 import android.app.Activity;
 import android.app.AlertDialog;
+import android.app.Application;
 import android.content.ActivityNotFoundException;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.DialogInterface.OnCancelListener;
 import android.content.DialogInterface.OnClickListener;
 import android.content.Intent;
-import android.content.SharedPreferences;
-import android.content.SharedPreferences.Editor;
-import android.net.Uri;
-import android.text.format.DateUtils;
+import android.os.Bundle;
+import android.os.Build;
+import android.os.Trace;
 import android.util.Log;
+import android.view.View;
 import android.widget.Button;
+import android.widget.EditText;
 import android.widget.Toast;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.Thread.UncaughtExceptionHandler;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class AppRate {
 
     private static final String TAG = "AppRater";
 
-    private Activity mHostActivity;
+    /**
+     * The default maximum delay of a dialog deferred with {@link #setDeferDialogUntilIdle(boolean)}.
+     */
+    public static final long DEFAULT_DIALOG_MAX_DELAY = 2000;
+
+    /**
+     * The number of days a crash is remembered by {@link #setShowIfAppHasCrashed(boolean)}.
+     */
+    public static final int DEFAULT_CRASH_WINDOW_DAYS = 30;
+
+    /**
+     * The key of the sticky crash flag of previous versions, see {@link #migrateLegacyCrashFlag(Context, RateStateStore)}.
+     */
+    private static final String LEGACY_APP_HAS_CRASHED = "pref_app_has_crashed";
+
+    private static final RatingTarget[] DEFAULT_RATING_TARGETS = {RatingTargets.PLAY_STORE, RatingTargets.PLAY_STORE_WEB};
+
+    private final Context mContext;
+    private final WeakReference<Activity> mHostActivity;
+    private AlertDialog mVisibleDialog;
+    private Application.ActivityLifecycleCallbacks mHostLifecycleCallbacks;
     private OnClickListener mClickListener;
     private OnClickListener mSendFeedbackClickListener;
     private OnClickListener mDoYouLikeAppClickListener;
-    private SharedPreferences mPreferences;
+    private RateStateStore mStore;
+    private RatingEligibilityEngine mEngine;
+    private AppRateSession mSession;
+    private RatingIntentResolver mRatingIntentResolver;
     private AlertDialog.Builder mDialogBuilder = null;
     private AlertDialog.Builder mSendFeedbackDialogBuilder = null;
     private AlertDialog.Builder mDoYouLikeAppDialogBuilder = null;
-    private long mMinLaunchesUntilPrompt = 0;
-    private long mMinDaysUntilPrompt = 0;
-    private boolean mShowIfHasCrashed = true;
-    private boolean mResetOnAppUpgrade = false;
+    private int mMaxCrashes = -1;
     private boolean mShowDoYouLikeTheAppFlow = false;
+    private boolean mDeferDialogUntilIdle = false;
+    private long mDialogMaxDelay = DEFAULT_DIALOG_MAX_DELAY;
+    private IdleDialogScheduler.PendingDialog mPendingDialog;
     private String mSendFeedbackEmailAddress;
     private String mSendFeedbackSubject;
     private String mSendFeedbackBody;
+    private int mFeedbackLogTailLines = 0;
+    private AppRateExperiment mExperiment;
     private AppRaterEventListener mAppRaterEventListener;
+    private AppRateMetricsListener mMetricsListener;
+    private boolean mSystemTraceEnabled = false;
+    private volatile AtomicBoolean mAsyncInitCancelled;
+
+    private static RateStateStore sRateStateStore;
+    private static CrashLog sCrashLog;
+    private static boolean sCrashLogClearPending;
+    private static FeedbackOutbox sFeedbackOutbox;
+    private static final AppRateEventDispatcher sEventDispatcher = new AppRateEventDispatcher(AppRateExecutors.listeners(),
+            AppRateEventDispatcher.DEFAULT_CAPACITY, new AppRateEventDispatcher.FailureHandler() {
+        @Override
+        public void onListenerFailed(AppRateEventListener listener, RuntimeException e) {
+            Log.e(TAG, "AppRate event listener " + listener + " failed", e);
+        }
+    });
+
+    private static final long EVENT_FLUSH_DELAY = 5000;
+    private static final Runnable sEventFlush = new Runnable() {
+        @Override
+        public void run() {
+            flushEvents();
+        }
+    };
+    private static final EventCounters sEventCounters = new EventCounters(new EventCounters.FlushScheduler() {
+        @Override
+        public void scheduleFlush() {
+            AppRateExecutors.schedule(sEventFlush, EVENT_FLUSH_DELAY);
+        }
+    });
 
     public AppRate(Activity hostActivity) {
-        mHostActivity = hostActivity;
-        mPreferences = hostActivity.getSharedPreferences(PrefsContract.SHARED_PREFS_NAME, Context.MODE_PRIVATE);
+        // Only the application context is kept, the host activity is weakly referenced so that it can always be collected.
+        mContext = hostActivity.getApplicationContext();
+        mHostActivity = new WeakReference<Activity>(hostActivity);
+        mStore = getRateStateStore(mContext);
+        mEngine = new RatingEligibilityEngine(mStore, RatingEligibilityEngine.SYSTEM_CLOCK);
+        mSession = AppRateSession.get(mContext);
+        mRatingIntentResolver = new RatingIntentResolver(mContext, DEFAULT_RATING_TARGETS);
+    }
+
+    /**
+     * Replace the storage used for the AppRate tracking state. Must be called before any other use of AppRate, typically from
+     * {@link android.app.Application#onCreate()}.<br/>
+     * By default the state is stored in a compact binary file by a {@link FileRateStateStore}, which imports the shared preferences
+     * of previous versions once.
+     *
+     * @param store The storage to use, for example a {@link SharedPreferencesRateStateStore}.
+     */
+    public static synchronized void setRateStateStore(RateStateStore store) {
+        sRateStateStore = store;
+    }
+
+    /**
+     * @param context A context.
+     * @return The process wide storage for the AppRate tracking state.
+     */
+    static synchronized RateStateStore getRateStateStore(Context context) {
+        if (sRateStateStore == null) {
+            sRateStateStore = new FileRateStateStore(context);
+        }
+        return sRateStateStore;
+    }
+
+    /**
+     * Forget all the process wide state of AppRate, as if the process had been restarted. For tests only.
+     */
+    static synchronized void resetProcessState() {
+        sRateStateStore = null;
+        sCrashLog = null;
+        sCrashLogClearPending = false;
+        sFeedbackOutbox = null;
+        AppRateSession.reset();
+        AppInfo.reset();
+        DefaultDialogContents.reset();
     }
 
     /**
@@ -51,7 +153,7 @@ public class AppRate {
      * @return This {@link AppRate} object to allow chaining.
      */
     public AppRate setMinLaunchesUntilPrompt(long minLaunchesUntilPrompt) {
-        mMinLaunchesUntilPrompt = minLaunchesUntilPrompt;
+        mEngine.setMinLaunchesUntilPrompt(minLaunchesUntilPrompt);
         return this;
     }
 
@@ -61,17 +163,124 @@ public class AppRate {
      * @return This {@link AppRate} object to allow chaining.
      */
     public AppRate setMinDaysUntilPrompt(long minDaysUntilPrompt) {
-        mMinDaysUntilPrompt = minDaysUntilPrompt;
+        mEngine.setMinDaysUntilPrompt(minDaysUntilPrompt);
+        return this;
+    }
+
+    /**
+     * @param minForegroundMinutesUntilPrompt The minimum total time the user spends in the application before showing the rate
+     *                                        dialog, in minutes. The time is measured from the first activity started to the last one
+     *                                        stopped, and added to the AppRate state when the application goes to the background.<br/>
+     *                                        Default value is 0 minutes.
+     * @return This {@link AppRate} object to allow chaining.
+     */
+    public AppRate setMinForegroundMinutesUntilPrompt(long minForegroundMinutesUntilPrompt) {
+        mEngine.setMinForegroundMinutesUntilPrompt(minForegroundMinutesUntilPrompt);
         return this;
     }
 
     /**
-     * @param showIfCrash If <code>false</code> the rate dialog will not be shown if the application has crashed once.<br/>
+     * @param event                The name of a significant event, as recorded with {@link #recordEvent(String)}.
+     * @param minEventsUntilPrompt The minimum number of times the event must have occurred before showing the rate dialog.
+     *                             Can be called for several events, they must all reach their minimum.
+     * @return This {@link AppRate} object to allow chaining.
+     */
+    public AppRate setMinEventsUntilPrompt(String event, long minEventsUntilPrompt) {
+        mEngine.setMinEventsUntilPrompt(event, minEventsUntilPrompt);
+        return this;
+    }
+
+    /**
+     * @param condition A condition that must be met for the rate dialog to be shown, in addition to the thresholds. Can be called for
+     *                  several conditions, they are evaluated from the cheapest to the most expensive, on a background thread.
+     * @return This {@link AppRate} object to allow chaining.
+     */
+    public AppRate addPromptCondition(PromptCondition condition) {
+        mEngine.addCondition(condition);
+        return this;
+    }
+
+    /**
+     * Record that a significant event occurred, for example a completed purchase or a finished level.<br/>
+     * This is cheap enough to be called from hot code paths on any thread: the events are counted in memory and added to the AppRate
+     * state in batches on a background thread.
+     *
+     * @param event The name of the event.
+     */
+    public static void recordEvent(String event) {
+        sEventCounters.record(event);
+    }
+
+    /**
+     * Subscribe to the {@link AppRateEvent}s of all the {@link AppRate} of the process: decisions, dialogs shown, buttons clicked,
+     * dialogs cancelled and feedback sent. They are delivered asynchronously in batches, see {@link #setEventExecutor(Executor)}.
+     *
+     * @param listener The listener to add.
+     */
+    public static void addEventListener(AppRateEventListener listener) {
+        sEventDispatcher.addListener(listener);
+    }
+
+    /**
+     * @param listener The listener to remove.
+     */
+    public static void removeEventListener(AppRateEventListener listener) {
+        sEventDispatcher.removeListener(listener);
+    }
+
+    /**
+     * @param executor The executor the {@link AppRateEventListener}s are called on, for example one posting to the main thread.<br/>
+     *                 Default value is a thread of AppRate dedicated to the listeners.
+     */
+    public static void setEventExecutor(Executor executor) {
+        sEventDispatcher.setExecutor(executor);
+    }
+
+    private static void postEvent(AppRateEvent event) {
+        if (!sEventDispatcher.post(event)) {
+            Log.w(TAG, "Too many pending AppRate events, dropped " + event);
+        }
+    }
+
+    private static void flushEvents() {
+        RateStateStore store;
+        synchronized (AppRate.class) {
+            store = sRateStateStore;
+        }
+
+        // Until AppRate is used, the events are kept in memory and flushed by init().
+        if (store != null && sEventCounters.flushTo(store)) {
+            store.apply();
+        }
+    }
+
+    /**
+     * @param showIfCrash If <code>false</code> the rate dialog will not be shown if the application has crashed in the last
+     *                    {@link #DEFAULT_CRASH_WINDOW_DAYS} days.<br/>
      *                    Default value is <code>true</code>.
      * @return This {@link AppRate} object to allow chaining.
      */
     public AppRate setShowIfAppHasCrashed(boolean showIfCrash) {
-        mShowIfHasCrashed = showIfCrash;
+        if (showIfCrash) {
+            mMaxCrashes = -1;
+            mEngine.setMaxCrashesUntilPrompt(-1, 0);
+            return this;
+        }
+        return setMaxCrashesUntilPrompt(0, DEFAULT_CRASH_WINDOW_DAYS);
+    }
+
+    /**
+     * @param maxCrashes The rate dialog will not be shown if the application has crashed more than this number of times in the last
+     *                   days, between 0 and 7.
+     * @param days       The number of days after which a crash is forgotten.
+     * @return This {@link AppRate} object to allow chaining.
+     */
+    public AppRate setMaxCrashesUntilPrompt(int maxCrashes, int days) {
+        if (maxCrashes < 0 || maxCrashes >= CrashLog.CAPACITY) {
+            throw new IllegalArgumentException("maxCrashes must be between 0 and " + (CrashLog.CAPACITY - 1));
+        }
+        mMaxCrashes = maxCrashes;
+        mEngine.setMaxCrashesUntilPrompt(maxCrashes, days);
         return this;
     }
 
@@ -82,7 +291,43 @@ public class AppRate {
      * @return This {@link AppRate} object to allow chaining.
      */
     public AppRate setResetOnAppUpgrade(boolean resetOnAppUpgrade) {
-        mResetOnAppUpgrade = resetOnAppUpgrade;
+        mEngine.setResetOnAppUpgrade(resetOnAppUpgrade);
+        return this;
+    }
+
+    /**
+     * @param ratingTargets Where the rate button sends the user, in order of preference. The first one that can be handled on the
+     *                      device is resolved in the background before the dialog is shown.<br/>
+     *                      Default value is the Play Store application, then the Play Store web site.
+     * @return This {@link AppRate} object to allow chaining.
+     */
+    public AppRate setRatingTargets(RatingTarget... ratingTargets) {
+        if (ratingTargets.length == 0) {
+            throw new IllegalArgumentException("At least one rating target is required");
+        }
+        mRatingIntentResolver = new RatingIntentResolver(mContext, ratingTargets.clone());
+        return this;
+    }
+
+    /**
+     * @param deferDialogUntilIdle If <code>true</code> the first dialog is not shown from {@link #init()} but once the host activity
+     *                             has drawn its first frame and the main thread is idle, so that it does not delay the display of
+     *                             the activity. It is dropped if the activity is finishing by then.<br/>
+     *                             Default value is <code>false</code>.
+     * @return This {@link AppRate} object to allow chaining.
+     */
+    public AppRate setDeferDialogUntilIdle(boolean deferDialogUntilIdle) {
+        mDeferDialogUntilIdle = deferDialogUntilIdle;
+        return this;
+    }
+
+    /**
+     * @param maxDelayMillis The maximum delay after which a deferred dialog is shown even if the main thread never became idle.<br/>
+     *                       Default value is {@link #DEFAULT_DIALOG_MAX_DELAY}.
+     * @return This {@link AppRate} object to allow chaining.
+     */
+    public AppRate setDialogMaxDelay(long maxDelayMillis) {
+        mDialogMaxDelay = maxDelayMillis;
         return this;
     }
 
@@ -177,80 +422,610 @@ public class AppRate {
         return this;
     }
 
+    /**
+     * Collect the feedback in the application rather than by email. The send feedback button of the do you like the app flow then
+     * opens a dialog where the user writes their feedback. It is kept in an outbox with diagnostics, and delivered by the sender on a
+     * background thread, retried until it succeeds, including at later launches. An {@link InteractiveFeedbackSender} is only
+     * called right after the user sends the feedback. Call this early, typically from {@link Application#onCreate()}.
+     *
+     * @param context A context.
+     * @param sender  The sender, for example an {@link EmailFeedbackSender}, or <code>null</code> to send the feedback by email.
+     */
+    public static synchronized void setFeedbackSender(Context context, FeedbackSender sender) {
+        if (sender == null) {
+            sFeedbackOutbox = null;
+            return;
+        }
+        sFeedbackOutbox = new FeedbackOutbox(context.getApplicationContext(), sender, AppRateExecutors.outbox());
+        sFeedbackOutbox.deliverPending();
+    }
+
+    private static synchronized FeedbackOutbox getFeedbackOutbox() {
+        return sFeedbackOutbox;
+    }
+
+    /**
+     * @param lines The number of lines of the log of the application attached to the in-app feedback, see
+     *              {@link #setFeedbackSender(Context, FeedbackSender)}.<br/>
+     *              Default value is 0.
+     * @return This {@link AppRate} object to allow chaining.
+     */
+    public AppRate setFeedbackLogTailLines(int lines) {
+        mFeedbackLogTailLines = lines;
+        return this;
+    }
+
+    /**
+     * Load the AppRate state, the crash log, the application information and the texts of the default dialogs on a background
+     * thread, so that the first {@link #init()} does not wait for them. Call this early, typically from {@link Application#onCreate()}.<br/>
+     * The sessions are also tracked from then on, so that an activity started before the first {@link AppRate} is created, such as
+     * a splash screen, is counted in the session.
+     *
+     * @param context A context.
+     */
+    public static void prewarm(Context context) {
+        final Context applicationContext = context.getApplicationContext();
+        AppRateSession.get(applicationContext);
+        AppRateExecutors.background().execute(new Runnable() {
+            @Override
+            public void run() {
+                getRateStateStore(applicationContext).preload();
+                getCrashLog(applicationContext);
+                AppInfo.get(applicationContext);
+                DefaultDialogContents.get(applicationContext);
+            }
+        });
+    }
+
     /**
      * Reset all the data collected about number of launches and days until first launch.
      *
      * @param context A context.
      */
     public static void reset(Context context) {
-        context.getSharedPreferences(PrefsContract.SHARED_PREFS_NAME, Context.MODE_PRIVATE).edit().clear().commit();
-        Log.d(TAG, "Cleared AppRate shared preferences.");
+        getRateStateStore(context).clear().apply();
+        clearCrashLog(context);
+        Log.d(TAG, "Cleared AppRate state.");
     }
 
     /**
-     * Display the rate dialog if needed.
+     * Display the rate dialog if needed.<br/>
+     * A launch is counted and a decision is made only once per session, that is while the application stays in the foreground. The
+     * following calls, for example after a configuration change or from other activities, do nothing except showing again a dialog
+     * that was dismissed without an answer.
      */
     public void init() {
         Log.d(TAG, "Init AppRate");
 
-        Editor editor = mPreferences.edit();
-        performAppUpgradeCheck(editor);
+        if (!mSession.beginDecision()) {
+            presentPendingDialog();
+            return;
+        }
+
+        boolean showDialog = false;
+        try {
+            showDialog = shouldShowDialog();
+        } finally {
+            mSession.endDecision(showDialog);
+        }
+
+        if (showDialog) {
+            presentFirstDialog();
+        }
+    }
+
+    /**
+     * Display the rate dialog if needed, without blocking the calling thread.<br/>
+     * The preferences, the application version check and the launch counters are handled on a background thread.
+     * Only the dialog itself is shown on the main thread, unless {@link #cancel()} has been called or the host activity is
+     * finishing by then.
+     */
+    public void initAsync() {
+        Log.d(TAG, "Init AppRate asynchronously");
+
+        if (!mSession.beginDecision()) {
+            presentPendingDialog();
+            return;
+        }
+
+        final AtomicBoolean cancelled = new AtomicBoolean(false);
+        mAsyncInitCancelled = cancelled;
+
+        AppRateExecutors.background().execute(new Runnable() {
+            @Override
+            public void run() {
+                boolean showDialog = false;
+                try {
+                    showDialog = shouldShowDialog();
+                } finally {
+                    mSession.endDecision(showDialog);
+                }
+
+                if (!showDialog || cancelled.get()) {
+                    return;
+                }
 
-        if (!mShowIfHasCrashed) {
+                // Resolve the texts here rather than on the main thread.
+                DefaultDialogContents.get(mContext);
+
+                AppRateExecutors.postToMainThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Activity hostActivity = getHostActivity();
+                        if (cancelled.get() || hostActivity == null || hostActivity.isFinishing()) {
+                            Log.d(TAG, "Host activity is gone, dropping the rate dialog.");
+                            return;
+                        }
+                        presentFirstDialog();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Cancel a pending {@link #initAsync()} or a dialog deferred with {@link #setDeferDialogUntilIdle(boolean)}. No dialog will be
+     * shown for it.<br/>
+     * Call this on the main thread when the host activity is finishing, typically from {@link Activity#onDestroy()}.
+     */
+    public void cancel() {
+        AtomicBoolean cancelled = mAsyncInitCancelled;
+        if (cancelled != null) {
+            cancelled.set(true);
+        }
+        if (mPendingDialog != null) {
+            mPendingDialog.cancel();
+            mPendingDialog = null;
+        }
+    }
+
+    /**
+     * Update the launch tracking information and decide whether the first dialog of the flow should be shown.<br/>
+     * This performs disk and PackageManager work and does not touch the UI, so it may run on any thread. When the decision has been
+     * precomputed as the application last went to the background, only the state is loaded and the version of the application checked,
+     * since an upgrade may reset the precomputed decision.
+     *
+     * @return <code>true</code> if the first dialog should be shown.
+     */
+    private boolean shouldShowDialog() {
+        long initStart = beginPhase(AppRateMetricsListener.Phase.INIT);
+
+        long phaseStart = beginPhase(AppRateMetricsListener.Phase.STATE_LOAD);
+        mStore.preload();
+        endPhase(AppRateMetricsListener.Phase.STATE_LOAD, phaseStart);
+        migrateLegacyCrashFlag(mContext, mStore);
+
+        if (mExperiment != null) {
+            AppRateExperiment.Variant variant = mExperiment.assign(mStore);
+            applyVariant(variant);
+            if (mMetricsListener != null) {
+                mMetricsListener.onVariantAssigned(mExperiment, variant);
+            }
+        }
+
+        if (mMaxCrashes >= 0) {
+            // Crashes must be recorded from the start of the session.
             initExceptionHandler();
         }
 
-        if (mPreferences.getBoolean(PrefsContract.PREF_DONT_SHOW_AGAIN, false) || (
-                mPreferences.getBoolean(PrefsContract.PREF_APP_HAS_CRASHED, false) && !mShowIfHasCrashed)) {
+        phaseStart = beginPhase(AppRateMetricsListener.Phase.ELIGIBILITY);
+        SessionHost host = new SessionHost(mContext, mEngine, mStore, mMaxCrashes >= 0) {
+            @Override
+            public int getVersionCode() {
+                long upgradeCheckStart = beginPhase(AppRateMetricsListener.Phase.UPGRADE_CHECK);
+                int versionCode = super.getVersionCode();
+                endPhase(AppRateMetricsListener.Phase.UPGRADE_CHECK, upgradeCheckStart);
+                return versionCode;
+            }
+        };
+        RatingEligibilityEngine.Decision decision = mEngine.onSessionStart(host);
+        boolean launchCounted = mEngine.isLaunchCounted();
+        if (launchCounted) {
+            if (decision.isShow()) {
+                // Started as early as possible, the rate button will only have to start the resolved intent.
+                mRatingIntentResolver.resolveAsync();
+            }
+            // All the changes made during init are written back at once.
+            mStore.apply();
+        }
+        endPhase(AppRateMetricsListener.Phase.ELIGIBILITY, phaseStart);
+
+        String unmetCondition = mEngine.getUnmetCondition();
+        Log.d(TAG, "Rate dialog decision: " + decision + (unmetCondition != null ? " (" + unmetCondition + ")" : ""));
+        if (sEventDispatcher.hasListeners()) {
+            postEvent(AppRateEvent.decision(decision, unmetCondition));
+        }
+        mSession.setSessionEndTask(new PrecomputeTask(new SessionHost(mContext, mEngine, mStore, mMaxCrashes >= 0), mSession,
+                !launchCounted));
+
+        endPhase(AppRateMetricsListener.Phase.INIT, initStart);
+        if (mMetricsListener != null) {
+            mMetricsListener.onDecision(decision, unmetCondition);
+        }
+
+        return decision.isShow();
+    }
+
+    /**
+     * Override the settings with those of the variant the install is assigned to.
+     *
+     * @param variant The variant of {@link #mExperiment}.
+     */
+    private void applyVariant(AppRateExperiment.Variant variant) {
+        if (variant.getMinLaunchesUntilPrompt() != null) {
+            mEngine.setMinLaunchesUntilPrompt(variant.getMinLaunchesUntilPrompt());
+        }
+        if (variant.getMinDaysUntilPrompt() != null) {
+            mEngine.setMinDaysUntilPrompt(variant.getMinDaysUntilPrompt());
+        }
+        if (variant.getShowDoYouLikeTheAppFlow() != null) {
+            mShowDoYouLikeTheAppFlow = variant.getShowDoYouLikeTheAppFlow();
+        }
+        Log.d(TAG, "AppRate experiment " + mExperiment.getName() + " variant: " + variant);
+    }
+
+    /**
+     * The application a session of the {@link RatingEligibilityEngine} runs in.<br/>
+     * It only references the application context and the state, so that it can be kept by the session end task.
+     */
+    private static class SessionHost implements RatingEligibilityEngine.SessionHost {
+        private final Context mContext;
+        private final RatingEligibilityEngine mEngine;
+        private final RateStateStore mStore;
+        private final boolean mCheckCrashes;
+
+        private SessionHost(Context context, RatingEligibilityEngine engine, RateStateStore store, boolean checkCrashes) {
+            mContext = context;
+            mEngine = engine;
+            mStore = store;
+            mCheckCrashes = checkCrashes;
+        }
+
+        @Override
+        public int getVersionCode() {
+            return AppInfo.get(mContext).getVersionCode();
+        }
+
+        @Override
+        public void onTrackingReset() {
+            clearCrashLog(mContext);
+            Log.d(TAG, "Cleared AppRate state after upgrade.");
+        }
+
+        @Override
+        public void beforeEvaluation() {
+            if (mCheckCrashes) {
+                mEngine.setCrashHistory(getCrashLog(mContext));
+            }
+            sEventCounters.flushTo(mStore);
+        }
+    }
+
+    /**
+     * Prepares the decision of the next session, once this one has ended.<br/>
+     * It is held by the process wide {@link AppRateSession} until the application goes to the background, so it never references
+     * the {@link AppRate}, its custom dialog builders or its host activity.
+     */
+    private static class PrecomputeTask implements Runnable {
+        private final SessionHost mHost;
+        private final AppRateSession mSession;
+        private final boolean mCountLaunch;
+
+        /**
+         * @param countLaunch <code>true</code> if the launch of this session has not been counted by
+         *                    {@link RatingEligibilityEngine#onSessionStart(RatingEligibilityEngine.SessionHost)}.
+         */
+        private PrecomputeTask(SessionHost host, AppRateSession session, boolean countLaunch) {
+            mHost = host;
+            mSession = session;
+            mCountLaunch = countLaunch;
+        }
+
+        @Override
+        public void run() {
+            mHost.mEngine.onSessionEnd(mHost, mCountLaunch, mSession.takeForegroundMillis());
+            mHost.mStore.apply();
+            Log.d(TAG, "Precomputed the next rate dialog decision.");
+        }
+    }
+
+    /**
+     * Shows again the first dialog of the flow if it was decided earlier in this session but dismissed without an answer.
+     */
+    private void presentPendingDialog() {
+        if (mSession.isDialogPending()) {
+            Log.d(TAG, "Show the rate dialog dismissed earlier in this session.");
+            presentFirstDialog();
+        } else {
+            Log.d(TAG, "AppRate already initialized in this session.");
+        }
+    }
+
+    /**
+     * Shows the first dialog of the flow now, or once the main thread is idle if it must be deferred. Must be called on the main
+     * thread.
+     */
+    private void presentFirstDialog() {
+        // Already started by the decision, unless the dialog is shown again by another AppRate of the session.
+        mRatingIntentResolver.resolveAsync();
+
+        if (!mDeferDialogUntilIdle) {
+            showFirstDialog();
+            return;
+        }
+
+        Activity hostActivity = getHostActivity();
+        if (hostActivity == null) {
+            return;
+        }
+
+        if (mPendingDialog != null) {
+            mPendingDialog.cancel();
+        }
+        mPendingDialog = IdleDialogScheduler.schedule(hostActivity, new Runnable() {
+            @Override
+            public void run() {
+                mPendingDialog = null;
+                showFirstDialog();
+            }
+        }, mDialogMaxDelay);
+    }
+
+    /**
+     * @return The host activity, or <code>null</code> if it has been collected.
+     */
+    private Activity getHostActivity() {
+        return mHostActivity.get();
+    }
+
+    /**
+     * Show a dialog of the flow on the host activity. The dialog is dismissed, and the references AppRate keeps to the activity are
+     * dropped, when the host activity is destroyed. Only a dialog that is shown is set as {@link #mVisibleDialog}.
+     *
+     * @param dialog The dialog to show.
+     * @param type   Which dialog of the flow it is.
+     */
+    private void showAttachedDialog(AlertDialog dialog, AppRateEvent.Dialog type) {
+        Activity hostActivity = getHostActivity();
+        if (hostActivity == null || hostActivity.isFinishing()) {
+            Log.d(TAG, "Host activity is gone, dropping the dialog.");
             return;
         }
 
-        // Get and increment launch counter.
-        long launch_count = mPreferences.getLong(PrefsContract.PREF_LAUNCH_COUNT, 0) + 1;
-        editor.putLong(PrefsContract.PREF_LAUNCH_COUNT, launch_count);
+        if (mHostLifecycleCallbacks == null) {
+            mHostLifecycleCallbacks = new HostLifecycleCallbacks();
+            hostActivity.getApplication().registerActivityLifecycleCallbacks(mHostLifecycleCallbacks);
+        }
+
+        dialog.show();
+        mVisibleDialog = dialog;
+        if (sEventDispatcher.hasListeners()) {
+            postEvent(AppRateEvent.dialogShown(type));
+        }
+    }
+
+    /**
+     * Detach from the host activity once it is destroyed.
+     */
+    private class HostLifecycleCallbacks implements Application.ActivityLifecycleCallbacks {
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+            if (activity != getHostActivity()) {
+                return;
+            }
+
+            activity.getApplication().unregisterActivityLifecycleCallbacks(this);
+            mHostLifecycleCallbacks = null;
+
+            if (mVisibleDialog != null && mVisibleDialog.isShowing()) {
+                mVisibleDialog.dismiss();
+                mSession.onFlowDetached();
+            }
+            mVisibleDialog = null;
+            cancel();
+
+            // The custom builders hold a context of the activity.
+            mDialogBuilder = null;
+            mDoYouLikeAppDialogBuilder = null;
+            mSendFeedbackDialogBuilder = null;
+        }
+
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityStarted(Activity activity) {
+        }
 
-        // Get date of first launch.
-        Long date_firstLaunch = mPreferences.getLong(PrefsContract.PREF_DATE_FIRST_LAUNCH, 0);
-        if (date_firstLaunch == 0) {
-            date_firstLaunch = System.currentTimeMillis();
-            editor.putLong(PrefsContract.PREF_DATE_FIRST_LAUNCH, date_firstLaunch);
+        @Override
+        public void onActivityResumed(Activity activity) {
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
         }
 
-        // Show the first dialog if needed.
-        if (launch_count >= mMinLaunchesUntilPrompt) {
-            if (System.currentTimeMillis() >= date_firstLaunch + (mMinDaysUntilPrompt * DateUtils.DAY_IN_MILLIS)) {
-                if (mShowDoYouLikeTheAppFlow) {
+        @Override
+        public void onActivityStopped(Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+    }
+
+    /**
+     * Shows the first dialog of the flow and notifies the {@link AppRaterEventListener}.
+     */
+    private void showFirstDialog() {
+        // Only one flow at a time, even if several activities reach this point.
+        if (!mSession.claimDialog()) {
+            Log.d(TAG, "A rate dialog is already on screen.");
+            return;
+        }
+
+        long phaseStart = beginPhase(AppRateMetricsListener.Phase.DIALOG_CREATION);
+        showFlowDialog(mShowDoYouLikeTheAppFlow ? AppRateEvent.Dialog.DO_YOU_LIKE_APP : AppRateEvent.Dialog.RATE, false);
+        endPhase(AppRateMetricsListener.Phase.DIALOG_CREATION, phaseStart);
+
+        // Notify listener that we have shown a dialog starting the flow, once the dialog is drawn.
+        if (mVisibleDialog != null && mAppRaterEventListener != null) {
+            final AppRaterEventListener appRaterEventListener = mAppRaterEventListener;
+            AppRateExecutors.postToMainThread(new Runnable() {
+                @Override
+                public void run() {
+                    appRaterEventListener.onAppRaterDialogsShown();
+                }
+            });
+        }
+    }
+
+    /**
+     * Show a dialog of the claimed flow. If none could be shown, because the host activity is gone or the dialog failed to show,
+     * the flow is released so that the session does not keep it claimed.
+     *
+     * @param type     The dialog to show.
+     * @param answered <code>true</code> if the user has already answered the first dialog of the flow, in which case the flow is
+     *                 over if this one is not shown. Otherwise it may be shown again in this session.
+     */
+    private void showFlowDialog(AppRateEvent.Dialog type, boolean answered) {
+        mVisibleDialog = null;
+        try {
+            switch (type) {
+                case RATE:
+                    showDialog();
+                    break;
+                case DO_YOU_LIKE_APP:
                     showDoYouLikeAppDialog();
+                    break;
+                case SEND_FEEDBACK:
+                    showSendFeedbackDialog();
+                    break;
+                case IN_APP_FEEDBACK:
+                    showInAppFeedbackDialog();
+                    break;
+            }
+        } finally {
+            if (mVisibleDialog == null) {
+                if (answered) {
+                    mSession.onFlowFinished();
                 } else {
-                    showDialog();
+                    mSession.onFlowDetached();
                 }
+            }
+        }
+    }
 
-                // Notify listener that we have shown a dialog starting the flow
-                if (mAppRaterEventListener != null) {
-                    mAppRaterEventListener.onAppRaterDialogsShown();
-                }
+    /**
+     * Start timing a phase. Does nothing unless a {@link AppRateMetricsListener} is set or system tracing is enabled.
+     *
+     * @return The start time to pass to {@link #endPhase}.
+     */
+    private long beginPhase(AppRateMetricsListener.Phase phase) {
+        if (mSystemTraceEnabled && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.beginSection(phase.getSectionName());
+        }
+        return mMetricsListener != null ? System.nanoTime() : 0;
+    }
+
+    private void endPhase(AppRateMetricsListener.Phase phase, long phaseStart) {
+        if (mSystemTraceEnabled && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.endSection();
+        }
+        if (mMetricsListener != null) {
+            mMetricsListener.onPhaseCompleted(phase, System.nanoTime() - phaseStart);
+        }
+    }
+
+    /**
+     * @param context A context.
+     * @return The process wide log of the crashes recorded by the {@link ExceptionHandler}, or <code>null</code> if its file could
+     * not be mapped.
+     */
+    static synchronized CrashLog getCrashLog(Context context) {
+        if (sCrashLog == null) {
+            try {
+                sCrashLog = CrashLog.open(new File(context.getApplicationContext().getFilesDir(), CrashLog.FILE_NAME));
+            } catch (IOException e) {
+                Log.e(TAG, "Unable to map the crash log", e);
             }
         }
+        if (sCrashLog != null && sCrashLogClearPending) {
+            sCrashLog.clear();
+            sCrashLogClearPending = false;
+        }
+        return sCrashLog;
+    }
+
+    /**
+     * Record the crash of the sticky flag set by previous versions into the crash log, so that an application that crashed before
+     * the upgrade is still not prompted. The time of that crash is unknown, so it is recorded as now and is forgotten after the crash
+     * window like any other. The flag is then cleared, and written back with the next changes of the state.
+     */
+    private static void migrateLegacyCrashFlag(Context context, RateStateStore store) {
+        if (!store.getBoolean(LEGACY_APP_HAS_CRASHED, false)) {
+            return;
+        }
 
-        editor.commit();
+        CrashLog crashLog = getCrashLog(context);
+        if (crashLog != null) {
+            crashLog.record(System.currentTimeMillis());
+            store.putBoolean(LEGACY_APP_HAS_CRASHED, false);
+            Log.d(TAG, "Migrated the crash flag to the crash log.");
+        }
     }
 
     /**
-     * Checks and saves off the current version information for the application. If the application has been upgraded, and configured to do so, then
-     * reset tracking information to allow the rate dialog to be shown again.
+     * Forget the recorded crashes without touching the disk on the calling thread. A crash log that is already mapped is cleared
+     * right away, otherwise it is cleared on the background thread if its file exists, or by {@link #getCrashLog(Context)} if it is
+     * opened first.
      */
-    private void performAppUpgradeCheck(Editor editor) {
-        Integer currentAppVersionCode = AppInfo.getApplicationVersionCode(mHostActivity.getApplicationContext());
-        Integer lastRunAppVersionCode = mPreferences.getInt(PrefsContract.PREF_APP_VERSION_CODE, -1);
+    private static synchronized void clearCrashLog(Context context) {
+        if (sCrashLog != null) {
+            sCrashLog.clear();
+            return;
+        }
+
+        sCrashLogClearPending = true;
+        final Context applicationContext = context.getApplicationContext();
+        AppRateExecutors.background().execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (AppRate.class) {
+                    if (!sCrashLogClearPending) {
+                        return;
+                    }
+                    if (new File(applicationContext.getFilesDir(), CrashLog.FILE_NAME).exists()) {
+                        getCrashLog(applicationContext);
+                    } else {
+                        sCrashLogClearPending = false;
+                    }
+                }
+            }
+        });
+    }
 
-        // If the version has been initialized, we are being upgraded, and the user enabled resetting on upgrading
-        if (lastRunAppVersionCode != -1 && currentAppVersionCode > lastRunAppVersionCode && mResetOnAppUpgrade) {
-            AppRate.reset(mHostActivity);
+    /**
+     * Start the rating intent resolved before the dialog was shown.
+     */
+    private void startRatingActivity() {
+        Activity hostActivity = getHostActivity();
+        if (hostActivity == null) {
+            return;
         }
 
-        // Save off the current app version code
-        editor.putInt(PrefsContract.PREF_APP_VERSION_CODE, currentAppVersionCode);
-        editor.commit();
+        Intent ratingIntent = mRatingIntentResolver.getIntent();
+        try {
+            if (ratingIntent != null) {
+                hostActivity.startActivity(ratingIntent);
+                return;
+            }
+        } catch (ActivityNotFoundException e) {
+            Log.e(TAG, "Rating target is no longer available", e);
+        }
+        Toast.makeText(mContext, mContext.getString(R.string.toast_rating_target_missing_error), Toast.LENGTH_SHORT).show();
     }
 
     /**
@@ -264,7 +1039,7 @@ public class AppRate {
         // Don't register again if already registered.
         if (!(currentHandler instanceof ExceptionHandler)) {
             // Register default exceptions handler.
-            Thread.setDefaultUncaughtExceptionHandler(new ExceptionHandler(currentHandler, mHostActivity));
+            Thread.setDefaultUncaughtExceptionHandler(new ExceptionHandler(currentHandler, mContext));
         }
     }
 
@@ -302,143 +1077,194 @@ public class AppRate {
     }
 
     /**
-     * Shows the default rate dialog.
+     * Shows the dialog where the user writes their feedback, sent through the outbox.
+     */
+    private void showInAppFeedbackDialog() {
+        Log.d(TAG, "Create in-app feedback dialog.");
+
+        Activity hostActivity = getHostActivity();
+        if (hostActivity == null) {
+            return;
+        }
+
+        final EditText input = new EditText(hostActivity);
+        input.setHint(mContext.getText(R.string.feedback_input_hint));
+        input.setMinLines(3);
+
+        OnClickListener onClickListener = new OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                postButtonClicked(AppRateEvent.Dialog.IN_APP_FEEDBACK, which);
+                if (which == DialogInterface.BUTTON_POSITIVE) {
+                    submitFeedback(input.getText().toString());
+                }
+                dialog.dismiss();
+                mSession.onFlowFinished();
+            }
+        };
+
+        AlertDialog dialog = new AlertDialog.Builder(hostActivity)
+                .setTitle(mContext.getText(R.string.in_app_feedback_dialog_title))
+                .setView(input)
+                .setPositiveButton(mContext.getText(R.string.in_app_feedback_dialog_positive_button), onClickListener)
+                .setNegativeButton(mContext.getText(R.string.in_app_feedback_dialog_negative_button), onClickListener)
+                .setOnCancelListener(new OnCancelListener() {
+                    @Override
+                    public void onCancel(DialogInterface dialog) {
+                        postCancelled(AppRateEvent.Dialog.IN_APP_FEEDBACK);
+                        mSession.onFlowFinished();
+                    }
+                })
+                .create();
+        showAttachedDialog(dialog, AppRateEvent.Dialog.IN_APP_FEEDBACK);
+    }
+
+    /**
+     * Write the feedback to the outbox. The diagnostics are streamed to their file on the outbox thread.
      *
-     * @return
+     * @param message The text written by the user.
      */
-    private void showDefaultDialog() {
-        Log.d(TAG, "Create default dialog.");
+    private void submitFeedback(String message) {
+        FeedbackOutbox outbox = getFeedbackOutbox();
+        if (outbox == null || message.trim().length() == 0) {
+            return;
+        }
 
-        String title = mHostActivity.getString(R.string.dialog_title, AppInfo.getApplicationName(mHostActivity.getApplicationContext()));
-        String message = mHostActivity.getString(R.string.dialog_message, AppInfo.getApplicationName(mHostActivity.getApplicationContext()));
-        String positiveButtonText = mHostActivity.getString(R.string.dialog_positive_button);
-        String neutralButtonText = mHostActivity.getString(R.string.dialog_neutral_button);
-        String negativeButtonText = mHostActivity.getString(R.string.dialog_negative_button);
+        outbox.enqueue(message, FeedbackDiagnostics.collect(mContext, mFeedbackLogTailLines));
+        Toast.makeText(mContext, mContext.getText(R.string.feedback_sent_toast), Toast.LENGTH_SHORT).show();
+        if (sEventDispatcher.hasListeners()) {
+            postEvent(AppRateEvent.feedbackSent(AppRateEvent.Dialog.IN_APP_FEEDBACK));
+        }
+    }
 
-        new AlertDialog.Builder(mHostActivity)
-                .setTitle(title)
-                .setMessage(message)
-                .setPositiveButton(positiveButtonText, mDialogOnClickListener)
-                .setNegativeButton(negativeButtonText, mDialogOnClickListener)
-                .setNeutralButton(neutralButtonText, mDialogOnClickListener)
-                .setOnCancelListener(mDialogOnCancelListener)
-                .create().show();
+    /**
+     * Shows the default rate dialog.
+     */
+    private void showDefaultDialog() {
+        Log.d(TAG, "Create default dialog.");
+        showDefaultDialog(DefaultDialogContents.get(mContext).getRateDialog(), AppRateEvent.Dialog.RATE, mDialogOnClickListener,
+                mDialogOnCancelListener);
     }
 
     /**
      * Shows the default do you like app dialog.
-     *
-     * @return
      */
     private void showDefaultDoYouLikeAppDialog() {
         Log.d(TAG, "Create default do you like app dialog.");
-
-        String title = mHostActivity.getString(R.string.like_app_dialog_title, AppInfo.getApplicationName(mHostActivity.getApplicationContext()));
-        String message = mHostActivity.getString(R.string.like_app_dialog_message, AppInfo.getApplicationName(mHostActivity.getApplicationContext()));
-        String positiveButtonText = mHostActivity.getString(R.string.like_app_dialog_positive_button);
-        String negativeButtonText = mHostActivity.getString(R.string.like_app_dialog_negative_button);
-
-        new AlertDialog.Builder(mHostActivity)
-                .setTitle(title)
-                .setMessage(message)
-                .setPositiveButton(positiveButtonText, mDoYouLikeAppDialogOnClickListener)
-                .setNegativeButton(negativeButtonText, mDoYouLikeAppDialogOnClickListener)
-                .setOnCancelListener(mDoYouLikeAppDialogOnCancelListener)
-                .create().show();
+        showDefaultDialog(DefaultDialogContents.get(mContext).getDoYouLikeAppDialog(), AppRateEvent.Dialog.DO_YOU_LIKE_APP,
+                mDoYouLikeAppDialogOnClickListener, mDoYouLikeAppDialogOnCancelListener);
     }
 
     /**
      * Shows the default send feedback dialog.
-     *
-     * @return
      */
     private void showDefaultSendFeedbackDialog() {
         Log.d(TAG, "Create default send feedback dialog.");
+        showDefaultDialog(DefaultDialogContents.get(mContext).getSendFeedbackDialog(), AppRateEvent.Dialog.SEND_FEEDBACK,
+                mSendFeedbackDialogOnClickListener, mSendFeedbackDialogOnCancelListener);
+    }
 
-        String title = mHostActivity.getString(R.string.send_feedback_dialog_title, AppInfo.getApplicationName(mHostActivity.getApplicationContext()));
-        String message = mHostActivity.getString(R.string.send_feedback_dialog_message, AppInfo.getApplicationName(mHostActivity.getApplicationContext()));
-        String positiveButtonText = mHostActivity.getString(R.string.send_feedback_dialog_positive_button);
-        String negativeButtonText = mHostActivity.getString(R.string.send_feedback_dialog_negative_button);
+    /**
+     * Build a dialog from the cached texts and show it.
+     *
+     * @param content          The texts of the dialog. It has a neutral button only if its text is set.
+     * @param type             Which dialog of the flow it is.
+     * @param onClickListener  The listener of all the buttons.
+     * @param onCancelListener The listener called when the dialog is cancelled.
+     */
+    private void showDefaultDialog(DialogContent content, AppRateEvent.Dialog type, OnClickListener onClickListener,
+                                   OnCancelListener onCancelListener) {
+        Activity hostActivity = getHostActivity();
+        if (hostActivity == null) {
+            return;
+        }
 
-        new AlertDialog.Builder(mHostActivity)
-                .setTitle(title)
-                .setMessage(message)
-                .setPositiveButton(positiveButtonText, mSendFeedbackDialogOnClickListener)
-                .setNegativeButton(negativeButtonText, mSendFeedbackDialogOnClickListener)
-                .setOnCancelListener(mSendFeedbackDialogOnCancelListener)
-                .create().show();
+        AlertDialog.Builder builder = new AlertDialog.Builder(hostActivity)
+                .setTitle(content.getTitle())
+                .setMessage(content.getMessage())
+                .setPositiveButton(content.getPositiveButton(), onClickListener)
+                .setNegativeButton(content.getNegativeButton(), onClickListener)
+                .setOnCancelListener(onCancelListener);
+        if (content.getNeutralButton() != null) {
+            builder.setNeutralButton(content.getNeutralButton(), onClickListener);
+        }
+        showAttachedDialog(builder.create(), type);
     }
 
     /**
      * Show the custom rate dialog.
-     *
-     * @return
      */
     private void showCustomDialog(AlertDialog.Builder builder) {
         Log.d(TAG, "Create custom dialog.");
-        buildDialogWithWrapperedClickHandlers(builder, mDialogOnClickListener, mDialogOnCancelListener);
+        showCustomDialog(builder, AppRateEvent.Dialog.RATE, mDialogOnClickListener, mDialogOnCancelListener);
     }
 
     /**
      * Show the custom do you like app dialog.
-     *
-     * @return
      */
     private void showCustomDoYouLikeAppDialog(AlertDialog.Builder builder) {
         Log.d(TAG, "Create custom do you like app dialog.");
-        buildDialogWithWrapperedClickHandlers(builder, mDoYouLikeAppDialogOnClickListener, mDoYouLikeAppDialogOnCancelListener);
+        showCustomDialog(builder, AppRateEvent.Dialog.DO_YOU_LIKE_APP, mDoYouLikeAppDialogOnClickListener,
+                mDoYouLikeAppDialogOnCancelListener);
     }
 
     /**
      * Show the custom send feedback dialog.
-     *
-     * @return
      */
     private void showCustomSendFeedbackDialog(AlertDialog.Builder builder) {
         Log.d(TAG, "Create custom send feedback dialog.");
-        buildDialogWithWrapperedClickHandlers(builder, mSendFeedbackDialogOnClickListener, mSendFeedbackDialogOnCancelListener);
+        showCustomDialog(builder, AppRateEvent.Dialog.SEND_FEEDBACK, mSendFeedbackDialogOnClickListener,
+                mSendFeedbackDialogOnCancelListener);
     }
 
     /**
-     * Create the dialog using the provided builder. After created reassign all on click listeners to route through the provided listener.
+     * Create the dialog using the provided builder, with all of its buttons routed through the provided listener.<br/>
+     * The buttons of an {@link AlertDialog} only exist once it is shown, so they are wired when the dialog is shown, before the
+     * user can touch them. Their texts, styled or not, are left as the builder set them.
      *
-     * @param builder
-     * @param onClickListener
-     * @param onCancelListener
+     * @param builder          The builder provided by the application.
+     * @param type             Which dialog of the flow it is.
+     * @param onClickListener  The listener of all the buttons.
+     * @param onCancelListener The listener called when the dialog is cancelled.
      */
-    private void buildDialogWithWrapperedClickHandlers(AlertDialog.Builder builder, OnClickListener onClickListener, OnCancelListener onCancelListener) {
-        // Make the dialog
-        AlertDialog dialog = builder.create();
-        dialog.show();
-
-        // Wrapper each of the button click listeners with our own that gets called first
-        updateDialogButtonClickListeners(dialog, AlertDialog.BUTTON_POSITIVE, onClickListener);
-        updateDialogButtonClickListeners(dialog, AlertDialog.BUTTON_NEUTRAL, onClickListener);
-        updateDialogButtonClickListeners(dialog, AlertDialog.BUTTON_NEGATIVE, onClickListener);
-
-        // Wrapper the on cancel listener
+    private void showCustomDialog(AlertDialog.Builder builder, AppRateEvent.Dialog type, final OnClickListener onClickListener,
+                                  OnCancelListener onCancelListener) {
+        final AlertDialog dialog = builder.create();
         dialog.setOnCancelListener(onCancelListener);
+        dialog.setOnShowListener(new DialogInterface.OnShowListener() {
+            @Override
+            public void onShow(DialogInterface dialogInterface) {
+                setButtonClickListener(dialog, AlertDialog.BUTTON_POSITIVE, onClickListener);
+                setButtonClickListener(dialog, AlertDialog.BUTTON_NEUTRAL, onClickListener);
+                setButtonClickListener(dialog, AlertDialog.BUTTON_NEGATIVE, onClickListener);
+            }
+        });
+        showAttachedDialog(dialog, type);
     }
 
     /**
-     * Update all of the dialogs buttons to use the provided onClickListener
+     * Route a button of the dialog through the provided listener.
      *
-     * @param dialog
-     * @param whichButton
-     * @param onClickListener
-     */
-    private void updateDialogButtonClickListeners(AlertDialog dialog, int whichButton, OnClickListener onClickListener) {
-        if (dialog != null) {
-            Button button = dialog.getButton(whichButton);
-            if (button != null) {
-                String buttonText = (String) button.getText();
-                dialog.setButton(whichButton, buttonText, onClickListener);
-            }
+     * @param dialog          The shown dialog.
+     * @param whichButton     The button.
+     * @param onClickListener The listener, called as the listener of a button set on the builder would be.
+     */
+    private static void setButtonClickListener(final AlertDialog dialog, final int whichButton, final OnClickListener onClickListener) {
+        Button button = dialog.getButton(whichButton);
+        if (button != null) {
+            button.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View view) {
+                    onClickListener.onClick(dialog, whichButton);
+                }
+            });
         }
     }
 
     /**
-     * @param onClickListener A listener to be called back on click actions to the rate dialog.
+     * @param onClickListener A listener to be called back on click actions to the rate dialog.<br/>
+     *                        It is called on the main thread after the click has been handled, the dialog being already
+     *                        dismissed. Prefer {@link #addEventListener(AppRateEventListener)}, which is called off the main thread.
      * @return This {@link AppRate} object to allow chaining.
      */
     public AppRate setOnClickListener(OnClickListener onClickListener) {
@@ -447,7 +1273,9 @@ public class AppRate {
     }
 
     /**
-     * @param onClickListener A listener to be called back on click actions to the do you like the app dialog.
+     * @param onClickListener A listener to be called back on click actions to the do you like the app dialog.<br/>
+     *                        It is called on the main thread after the click has been handled, the dialog being already
+     *                        dismissed. Prefer {@link #addEventListener(AppRateEventListener)}, which is called off the main thread.
      * @return This {@link AppRate} object to allow chaining.
      */
     public AppRate setDoYouLikeAppOnClickListener(OnClickListener onClickListener) {
@@ -456,7 +1284,9 @@ public class AppRate {
     }
 
     /**
-     * @param onClickListener A listener to be called back on click actions to the send feedback dialog.
+     * @param onClickListener A listener to be called back on click actions to the send feedback dialog.<br/>
+     *                        It is called on the main thread after the click has been handled, the dialog being already
+     *                        dismissed. Prefer {@link #addEventListener(AppRateEventListener)}, which is called off the main thread.
      * @return This {@link AppRate} object to allow chaining.
      */
     public AppRate setSendFeedbackOnClickListener(OnClickListener onClickListener) {
@@ -469,7 +1299,9 @@ public class AppRate {
     }
 
     /**
-     * @param appRaterEventListener listener to be called back when the app rater launches its first dialog to begin a flow.
+     * @param appRaterEventListener listener to be called back when the app rater launches its first dialog to begin a flow.<br/>
+     *                              It is called on the main thread once the dialog is shown. Prefer
+     *                              {@link #addEventListener(AppRateEventListener)}, which is called off the main thread.
      * @return This {@link AppRate} object to allow chaining.
      */
     public AppRate setAppRaterEventListener(AppRaterEventListener appRaterEventListener) {
@@ -477,53 +1309,80 @@ public class AppRate {
         return this;
     }
 
+    /**
+     * Run an A/B test of prompt strategies. The install is assigned to one of the variants of the experiment once, its settings
+     * override those of this {@link AppRate}, and it is reported to the {@link AppRateMetricsListener} before each decision.
+     *
+     * @param experiment The experiment. Default value is <code>null</code>.
+     * @return This {@link AppRate} object to allow chaining.
+     */
+    public AppRate setExperiment(AppRateExperiment experiment) {
+        mExperiment = experiment;
+        return this;
+    }
+
+    /**
+     * @param metricsListener A listener to be called back with the duration of each phase of AppRate and the outcome of its
+     *                        decision. Default value is <code>null</code>, in which case nothing is measured.
+     * @return This {@link AppRate} object to allow chaining.
+     */
+    public AppRate setMetricsListener(AppRateMetricsListener metricsListener) {
+        mMetricsListener = metricsListener;
+        return this;
+    }
+
+    /**
+     * @param systemTraceEnabled If <code>true</code> each phase of AppRate is wrapped in an {@link android.os.Trace} section,
+     *                           visible in systrace. Requires API 18, ignored on older devices.<br/>
+     *                           Default value is <code>false</code>.
+     * @return This {@link AppRate} object to allow chaining.
+     */
+    public AppRate setSystemTraceEnabled(boolean systemTraceEnabled) {
+        mSystemTraceEnabled = systemTraceEnabled;
+        return this;
+    }
+
     private OnClickListener mDialogOnClickListener = new OnClickListener() {
         @Override
         public void onClick(DialogInterface dialog, int which) {
-            Editor editor = mPreferences.edit();
-
+            postButtonClicked(AppRateEvent.Dialog.RATE, which);
             switch (which) {
                 case DialogInterface.BUTTON_POSITIVE:
-                    try {
-                        mHostActivity.startActivity(new Intent(Intent.ACTION_VIEW, Uri.parse("market://details?id=" + mHostActivity.getPackageName())));
-                    } catch (ActivityNotFoundException e) {
-                        Toast.makeText(mHostActivity, mHostActivity.getString(R.string.toast_play_store_missing_error), Toast.LENGTH_SHORT).show();
-                    }
-                    editor.putBoolean(PrefsContract.PREF_DONT_SHOW_AGAIN, true);
+                    startRatingActivity();
+                    doNotShowDialogAgain();
                     break;
 
                 case DialogInterface.BUTTON_NEGATIVE:
-                    editor.putBoolean(PrefsContract.PREF_DONT_SHOW_AGAIN, true);
+                    doNotShowDialogAgain();
                     break;
 
                 case DialogInterface.BUTTON_NEUTRAL:
-                    editor.putLong(PrefsContract.PREF_DATE_FIRST_LAUNCH, System.currentTimeMillis());
-                    editor.putLong(PrefsContract.PREF_LAUNCH_COUNT, 0);
+                    resetLaunchData();
                     break;
 
                 default:
                     break;
             }
 
-            editor.commit();
             dialog.dismiss();
+            mSession.onFlowFinished();
 
-            if (mClickListener != null) {
-                mClickListener.onClick(dialog, which);
-            }
+            postClick(mClickListener, dialog, which);
         }
     };
 
     private OnClickListener mDoYouLikeAppDialogOnClickListener = new OnClickListener() {
         @Override
         public void onClick(DialogInterface dialog, int which) {
+            postButtonClicked(AppRateEvent.Dialog.DO_YOU_LIKE_APP, which);
+
             // Dismiss the do you like the app dialog
             dialog.dismiss();
 
             switch (which) {
                 case DialogInterface.BUTTON_POSITIVE:
                     // Show the rating dialog
-                    showDialog();
+                    showFlowDialog(AppRateEvent.Dialog.RATE, true);
                     break;
 
                 case DialogInterface.BUTTON_NEGATIVE:
@@ -531,78 +1390,109 @@ public class AppRate {
                     doNotShowDialogAgain();
 
                     // Show the send feedback dialog
-                    showSendFeedbackDialog();
+                    showFlowDialog(AppRateEvent.Dialog.SEND_FEEDBACK, true);
                     break;
 
                 default:
                     break;
             }
 
-            if (mDoYouLikeAppClickListener != null) {
-                mDoYouLikeAppClickListener.onClick(dialog, which);
-            }
+            postClick(mDoYouLikeAppClickListener, dialog, which);
         }
     };
 
     private OnClickListener mSendFeedbackDialogOnClickListener = new OnClickListener() {
         @Override
         public void onClick(DialogInterface dialog, int which) {
-            Editor editor = mPreferences.edit();
+            postButtonClicked(AppRateEvent.Dialog.SEND_FEEDBACK, which);
+            dialog.dismiss();
 
             switch (which) {
                 case DialogInterface.BUTTON_POSITIVE:
-                    SendFeedback sendFeedback = new SendFeedback(mHostActivity);
+                    if (getFeedbackOutbox() != null) {
+                        // The flow goes on with the in-app feedback dialog.
+                        showFlowDialog(AppRateEvent.Dialog.IN_APP_FEEDBACK, true);
+                        break;
+                    }
+                    SendFeedback sendFeedback = new SendFeedback(getHostActivity());
                     sendFeedback.promptForFeedback(mSendFeedbackEmailAddress, mSendFeedbackSubject, mSendFeedbackBody);
-                    break;
-
-                case DialogInterface.BUTTON_NEGATIVE:
-                    // Nothing to do
+                    if (sEventDispatcher.hasListeners()) {
+                        postEvent(AppRateEvent.feedbackSent(AppRateEvent.Dialog.SEND_FEEDBACK));
+                    }
+                    mSession.onFlowFinished();
                     break;
 
                 default:
+                    mSession.onFlowFinished();
                     break;
             }
 
-            editor.commit();
-            dialog.dismiss();
-
-            if (mSendFeedbackClickListener != null) {
-                mSendFeedbackClickListener.onClick(dialog, which);
-            }
+            postClick(mSendFeedbackClickListener, dialog, which);
         }
     };
 
     private OnCancelListener mDialogOnCancelListener = new OnCancelListener() {
         @Override
         public void onCancel(DialogInterface dialog) {
+            postCancelled(AppRateEvent.Dialog.RATE);
             resetLaunchData();
+            mSession.onFlowFinished();
         }
     };
 
+    /**
+     * Call a click listener of the application once the click has been handled, in a later message of the main thread, so that
+     * its code does not delay the dismissal of the dialog nor the next dialog of the flow.
+     */
+    private static void postClick(final OnClickListener listener, final DialogInterface dialog, final int which) {
+        if (listener == null) {
+            return;
+        }
+        AppRateExecutors.postToMainThread(new Runnable() {
+            @Override
+            public void run() {
+                listener.onClick(dialog, which);
+            }
+        });
+    }
+
+    private static void postButtonClicked(AppRateEvent.Dialog dialog, int which) {
+        if (sEventDispatcher.hasListeners()) {
+            postEvent(AppRateEvent.buttonClicked(dialog, which));
+        }
+    }
+
+    private static void postCancelled(AppRateEvent.Dialog dialog) {
+        if (sEventDispatcher.hasListeners()) {
+            postEvent(AppRateEvent.cancelled(dialog));
+        }
+    }
+
     private void resetLaunchData() {
-        Editor editor = mPreferences.edit();
-        editor.putLong(PrefsContract.PREF_DATE_FIRST_LAUNCH, System.currentTimeMillis());
-        editor.putLong(PrefsContract.PREF_LAUNCH_COUNT, 0);
-        editor.commit();
+        mEngine.resetLaunchData();
+        mStore.apply();
     }
 
     private void doNotShowDialogAgain() {
-        Editor editor = mPreferences.edit();
-        editor.putBoolean(PrefsContract.PREF_DONT_SHOW_AGAIN, true);
-        editor.commit();
+        mEngine.doNotShowAgain();
+        mStore.apply();
     }
 
     private OnCancelListener mDoYouLikeAppDialogOnCancelListener = new OnCancelListener() {
         @Override
         public void onCancel(DialogInterface dialog) {
+            postCancelled(AppRateEvent.Dialog.DO_YOU_LIKE_APP);
             resetLaunchData();
+            mSession.onFlowFinished();
         }
     };
 
     private OnCancelListener mSendFeedbackDialogOnCancelListener = new OnCancelListener() {
         @Override
         public void onCancel(DialogInterface dialog) {
+            postCancelled(AppRateEvent.Dialog.SEND_FEEDBACK);
             doNotShowDialogAgain();
+            mSession.onFlowFinished();
         }
     };
 }
\ No newline at end of file
@@ -0,0 +1,114 @@
+package com.octopepper.apprate;
+
+/**
+ * Something that happened in AppRate, delivered to the {@link AppRateEventListener}s.
+ */
+public class AppRateEvent {
+
+    public enum Type {
+        /**
+         * The decision of a session was made, see {@link #getDecision()}.
+         */
+        DECISION,
+        DIALOG_SHOWN,
+        /**
+         * A button of a dialog was clicked, see {@link #getWhich()}.
+         */
+        BUTTON_CLICKED,
+        CANCELLED,
+        /**
+         * The email application was opened to send feedback, or the in-app feedback was written to the outbox.
+         */
+        FEEDBACK_SENT
+    }
+
+    public enum Dialog {
+        RATE,
+        DO_YOU_LIKE_APP,
+        SEND_FEEDBACK,
+        IN_APP_FEEDBACK
+    }
+
+    private final Type mType;
+    private final long mTimeMillis;
+    private final Dialog mDialog;
+    private final int mWhich;
+    private final RatingEligibilityEngine.Decision mDecision;
+    private final String mUnmetCondition;
+
+    private AppRateEvent(Type type, Dialog dialog, int which, RatingEligibilityEngine.Decision decision, String unmetCondition) {
+        mType = type;
+        mTimeMillis = System.currentTimeMillis();
+        mDialog = dialog;
+        mWhich = which;
+        mDecision = decision;
+        mUnmetCondition = unmetCondition;
+    }
+
+    static AppRateEvent decision(RatingEligibilityEngine.Decision decision, String unmetCondition) {
+        return new AppRateEvent(Type.DECISION, null, 0, decision, unmetCondition);
+    }
+
+    static AppRateEvent dialogShown(Dialog dialog) {
+        return new AppRateEvent(Type.DIALOG_SHOWN, dialog, 0, null, null);
+    }
+
+    static AppRateEvent buttonClicked(Dialog dialog, int which) {
+        return new AppRateEvent(Type.BUTTON_CLICKED, dialog, which, null, null);
+    }
+
+    static AppRateEvent cancelled(Dialog dialog) {
+        return new AppRateEvent(Type.CANCELLED, dialog, 0, null, null);
+    }
+
+    static AppRateEvent feedbackSent(Dialog dialog) {
+        return new AppRateEvent(Type.FEEDBACK_SENT, dialog, 0, null, null);
+    }
+
+    public Type getType() {
+        return mType;
+    }
+
+    /**
+     * @return The time of the event, from {@link System#currentTimeMillis()}.
+     */
+    public long getTimeMillis() {
+        return mTimeMillis;
+    }
+
+    /**
+     * @return The dialog of the event, or <code>null</code> for a {@link Type#DECISION}.
+     */
+    public Dialog getDialog() {
+        return mDialog;
+    }
+
+    /**
+     * @return The clicked button of a {@link Type#BUTTON_CLICKED}, as passed to
+     * {@link android.content.DialogInterface.OnClickListener#onClick}, or 0.
+     */
+    public int getWhich() {
+        return mWhich;
+    }
+
+    /**
+     * @return The decision of a {@link Type#DECISION}, or <code>null</code>.
+     */
+    public RatingEligibilityEngine.Decision getDecision() {
+        return mDecision;
+    }
+
+    /**
+     * @return The name of the condition or threshold that is not met by a {@link Type#DECISION}, see
+     * {@link RatingEligibilityEngine#getUnmetCondition()}, or <code>null</code>.
+     */
+    public String getUnmetCondition() {
+        return mUnmetCondition;
+    }
+
+    @Override
+    public String toString() {
+        return "AppRateEvent{" + mType + ", " + (mDialog != null ? mDialog : mDecision)
+                + (mUnmetCondition != null ? ", " + mUnmetCondition : "") + (mWhich != 0 ? ", " + mWhich : "") + "}";
+    }
+}
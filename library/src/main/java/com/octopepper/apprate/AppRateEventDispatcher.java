@@ -0,0 +1,110 @@
+package com.octopepper.apprate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Delivers {@link AppRateEvent}s to the {@link AppRateEventListener}s in batches on an executor.<br/>
+ * Posting an event costs the same whatever the number of listeners: it is put in a bounded queue, and a drain is scheduled if none
+ * is. When the queue is full, because the listeners cannot keep up, new events are dropped.<br/>
+ * A listener that throws does not prevent the other listeners, nor the next batches, from being delivered.
+ */
+class AppRateEventDispatcher {
+
+    /**
+     * Told about a listener that threw, typically to log it.
+     */
+    interface FailureHandler {
+        void onListenerFailed(AppRateEventListener listener, RuntimeException e);
+    }
+
+    static final int DEFAULT_CAPACITY = 64;
+    private static final int MAX_BATCH_SIZE = 16;
+
+    private final BlockingQueue<AppRateEvent> mQueue;
+    private final List<AppRateEventListener> mListeners = new CopyOnWriteArrayList<AppRateEventListener>();
+    private final AtomicBoolean mDrainScheduled = new AtomicBoolean(false);
+    private final FailureHandler mFailureHandler;
+    private volatile Executor mExecutor;
+
+    private final Runnable mDrain = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    /**
+     * @param executor The executor the listeners are called on.
+     * @param capacity The maximum number of events waiting to be delivered.
+     * @param failureHandler Told about each listener that throws.
+     */
+    AppRateEventDispatcher(Executor executor, int capacity, FailureHandler failureHandler) {
+        mExecutor = executor;
+        mFailureHandler = failureHandler;
+        mQueue = new ArrayBlockingQueue<AppRateEvent>(capacity);
+    }
+
+    void setExecutor(Executor executor) {
+        mExecutor = executor;
+    }
+
+    void addListener(AppRateEventListener listener) {
+        mListeners.add(listener);
+    }
+
+    void removeListener(AppRateEventListener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * @return <code>true</code> if at least one listener is registered, so that events are not built for nothing.
+     */
+    boolean hasListeners() {
+        return !mListeners.isEmpty();
+    }
+
+    /**
+     * Queue an event for delivery. Never blocks.
+     *
+     * @param event The event.
+     * @return <code>false</code> if the event was dropped because the queue is full.
+     */
+    boolean post(AppRateEvent event) {
+        boolean queued = mQueue.offer(event);
+        if (mDrainScheduled.compareAndSet(false, true)) {
+            mExecutor.execute(mDrain);
+        }
+        return queued;
+    }
+
+    private void drain() {
+        while (true) {
+            List<AppRateEvent> batch = new ArrayList<AppRateEvent>(MAX_BATCH_SIZE);
+            mQueue.drainTo(batch, MAX_BATCH_SIZE);
+            if (batch.isEmpty()) {
+                mDrainScheduled.set(false);
+                // An event posted after drainTo() did not schedule a drain, deliver it unless another drain took over.
+                if (mQueue.isEmpty() || !mDrainScheduled.compareAndSet(false, true)) {
+                    return;
+                }
+                continue;
+            }
+
+            List<AppRateEvent> events = Collections.unmodifiableList(batch);
+            for (AppRateEventListener listener : mListeners) {
+                try {
+                    listener.onEvents(events);
+                } catch (RuntimeException e) {
+                    mFailureHandler.onListenerFailed(listener, e);
+                }
+            }
+        }
+    }
+}
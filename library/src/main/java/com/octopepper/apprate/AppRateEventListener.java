@@ -0,0 +1,16 @@
+package com.octopepper.apprate;
+
+import java.util.List;
+
+/**
+ * Receives the {@link AppRateEvent}s of the process, registered with {@link AppRate#addEventListener(AppRateEventListener)}.<br/>
+ * Events are delivered in batches on the executor set with {@link AppRate#setEventExecutor(java.util.concurrent.Executor)}, never
+ * from the click handlers of the dialogs, so a slow listener does not delay them.
+ */
+public interface AppRateEventListener {
+
+    /**
+     * @param events The events since the previous batch, oldest first. The list is read only.
+     */
+    void onEvents(List<AppRateEvent> events);
+}
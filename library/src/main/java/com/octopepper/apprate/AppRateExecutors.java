@@ -0,0 +1,102 @@
+package com.octopepper.apprate;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Threads used by AppRate to keep disk and PackageManager work off the main thread.
+ */
+class AppRateExecutors {
+
+    private static final ScheduledExecutorService sBackgroundExecutor =
+            Executors.newSingleThreadScheduledExecutor(newThreadFactory("AppRate-background"));
+    private static final Executor sListenerExecutor = Executors.newSingleThreadExecutor(newThreadFactory("AppRate-listeners"));
+    private static final ScheduledExecutorService sOutboxExecutor =
+            Executors.newSingleThreadScheduledExecutor(newThreadFactory("AppRate-outbox"));
+
+    private static Handler sMainThreadHandler;
+
+    private AppRateExecutors() {
+    }
+
+    /**
+     * @return The single background thread on which AppRate performs its disk and PackageManager work.
+     * Tasks are run in submission order.
+     */
+    static Executor background() {
+        return sBackgroundExecutor;
+    }
+
+    /**
+     * @return The thread the {@link AppRateEventListener}s are called on by default, separate from the background thread so that a
+     * slow listener does not delay the state writes and the decisions.
+     */
+    static Executor listeners() {
+        return sListenerExecutor;
+    }
+
+    /**
+     * @return The thread the in-app feedback is written and delivered on, separate from the background thread so that a slow or
+     * offline {@link FeedbackSender} does not delay the state writes and the decisions.
+     */
+    static ScheduledExecutorService outbox() {
+        return sOutboxExecutor;
+    }
+
+    /**
+     * Run a task on the background thread after a delay.
+     *
+     * @param runnable    The task to run.
+     * @param delayMillis The delay in milliseconds.
+     */
+    static void schedule(Runnable runnable, long delayMillis) {
+        sBackgroundExecutor.schedule(runnable, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Post a task to the main thread.
+     *
+     * @param runnable The task to run.
+     */
+    static void postToMainThread(Runnable runnable) {
+        getMainThreadHandler().post(runnable);
+    }
+
+    /**
+     * @return <code>true</code> if the calling thread is the main thread.
+     */
+    static boolean isMainThread() {
+        return Looper.myLooper() == Looper.getMainLooper();
+    }
+
+    private static ThreadFactory newThreadFactory(final String name) {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    private static synchronized Handler getMainThreadHandler() {
+        if (sMainThreadHandler == null) {
+            sMainThreadHandler = new Handler(Looper.getMainLooper());
+        }
+        return sMainThreadHandler;
+    }
+}
@@ -0,0 +1,188 @@
+package com.octopepper.apprate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * An A/B test of prompt strategies. Each install is assigned to one of the variants by hashing a random install id with the
+ * experiment name, so the assignment is deterministic and independent between experiments.<br/>
+ * The assignment is computed once and cached in the {@link RateStateStore}, later launches only read it back. Variants must not
+ * be reordered or removed while the experiment runs, rename the experiment to start a new one.
+ */
+public class AppRateExperiment {
+
+    private final String mName;
+    private final String mAssignmentKey;
+    private final List<Variant> mVariants = new ArrayList<Variant>();
+    private int mTotalWeight = 0;
+
+    /**
+     * @param name The name of the experiment, reported with the assigned variant.
+     */
+    public AppRateExperiment(String name) {
+        mName = name;
+        mAssignmentKey = PrefsContract.experimentVariantKey(name);
+    }
+
+    /**
+     * @param variant A variant of the experiment.
+     * @return This {@link AppRateExperiment} object to allow chaining.
+     */
+    public AppRateExperiment addVariant(Variant variant) {
+        mVariants.add(variant);
+        mTotalWeight += variant.mWeight;
+        return this;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Assign the install to a variant, or read back the variant it was assigned to.
+     *
+     * @param store The store in which the install id and the assignment are kept. The caller writes it back.
+     * @return The variant of the install.
+     */
+    public Variant assign(RateStateStore store) {
+        if (mVariants.isEmpty()) {
+            throw new IllegalStateException("The experiment " + mName + " has no variant");
+        }
+
+        int index = store.getInt(mAssignmentKey, -1);
+        if (index < 0 || index >= mVariants.size()) {
+            index = variantIndex(bucket(getInstallId(store), mName, mTotalWeight));
+            store.putInt(mAssignmentKey, index);
+        }
+        return mVariants.get(index);
+    }
+
+    /**
+     * @param store The store in which the install id is kept.
+     * @return The random id of this install, created on first use.
+     */
+    static long getInstallId(RateStateStore store) {
+        long installId = store.getLong(PrefsContract.PREF_INSTALL_ID, 0);
+        if (installId == 0) {
+            do {
+                installId = UUID.randomUUID().getLeastSignificantBits();
+            } while (installId == 0);
+            store.putLong(PrefsContract.PREF_INSTALL_ID, installId);
+        }
+        return installId;
+    }
+
+    /**
+     * @param installId      The id of the install.
+     * @param experimentName The name of the experiment.
+     * @param totalWeight    The sum of the weights of the variants.
+     * @return A bucket in [0, totalWeight), uniformly distributed over installs and the same on every device and version.
+     */
+    static int bucket(long installId, String experimentName, int totalWeight) {
+        // String.hashCode() is specified, and the SplitMix64 finalizer spreads it with the install id over all the bits.
+        long hash = installId ^ (experimentName.hashCode() * 0x9E3779B97F4A7C15L);
+        hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+        hash ^= hash >>> 31;
+        return (int) ((hash >>> 1) % totalWeight);
+    }
+
+    private int variantIndex(int bucket) {
+        int index = 0;
+        while (bucket >= mVariants.get(index).mWeight) {
+            bucket -= mVariants.get(index).mWeight;
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * A prompt strategy. Only the settings that are set override those of {@link AppRate}.
+     */
+    public static class Variant {
+
+        private final String mName;
+        private final int mWeight;
+        private Long mMinLaunchesUntilPrompt;
+        private Long mMinDaysUntilPrompt;
+        private Boolean mShowDoYouLikeTheAppFlow;
+
+        /**
+         * @param name The name of the variant, reported when the install is assigned to it.
+         */
+        public Variant(String name) {
+            this(name, 1);
+        }
+
+        /**
+         * @param name   The name of the variant, reported when the install is assigned to it.
+         * @param weight The share of the installs assigned to this variant, relative to the other variants.
+         */
+        public Variant(String name, int weight) {
+            if (weight <= 0) {
+                throw new IllegalArgumentException("The weight of a variant must be positive");
+            }
+            mName = name;
+            mWeight = weight;
+        }
+
+        /**
+         * @param minLaunchesUntilPrompt See {@link AppRate#setMinLaunchesUntilPrompt(long)}.
+         * @return This {@link Variant} object to allow chaining.
+         */
+        public Variant setMinLaunchesUntilPrompt(long minLaunchesUntilPrompt) {
+            mMinLaunchesUntilPrompt = minLaunchesUntilPrompt;
+            return this;
+        }
+
+        /**
+         * @param minDaysUntilPrompt See {@link AppRate#setMinDaysUntilPrompt(long)}.
+         * @return This {@link Variant} object to allow chaining.
+         */
+        public Variant setMinDaysUntilPrompt(long minDaysUntilPrompt) {
+            mMinDaysUntilPrompt = minDaysUntilPrompt;
+            return this;
+        }
+
+        /**
+         * @param showDoYouLikeTheAppFlow <code>true</code> to ask the user if they like the application first, with the feedback
+         *                                address given to {@link AppRate#showDoYouLikeTheAppFlow(String)}.
+         * @return This {@link Variant} object to allow chaining.
+         */
+        public Variant setShowDoYouLikeTheAppFlow(boolean showDoYouLikeTheAppFlow) {
+            mShowDoYouLikeTheAppFlow = showDoYouLikeTheAppFlow;
+            return this;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        /**
+         * @return The overridden minimum number of launches, or <code>null</code>.
+         */
+        public Long getMinLaunchesUntilPrompt() {
+            return mMinLaunchesUntilPrompt;
+        }
+
+        /**
+         * @return The overridden minimum number of days, or <code>null</code>.
+         */
+        public Long getMinDaysUntilPrompt() {
+            return mMinDaysUntilPrompt;
+        }
+
+        /**
+         * @return Whether the do you like the app flow is overridden, or <code>null</code>.
+         */
+        public Boolean getShowDoYouLikeTheAppFlow() {
+            return mShowDoYouLikeTheAppFlow;
+        }
+
+        @Override
+        public String toString() {
+            return mName;
+        }
+    }
+}
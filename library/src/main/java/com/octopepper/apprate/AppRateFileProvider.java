@@ -0,0 +1,10 @@
+package com.octopepper.apprate;
+
+import android.support.v4.content.FileProvider;
+
+/**
+ * Shares the diagnostics of the in-app feedback with other applications. A subclass, so that it does not clash with the
+ * {@link FileProvider} of the application when the manifests are merged.
+ */
+public class AppRateFileProvider extends FileProvider {
+}
@@ -0,0 +1,71 @@
+package com.octopepper.apprate;
+
+/**
+ * Receives the duration of each phase of AppRate, the variant of its experiment and the outcome of its decision, for example to
+ * build latency histograms or to break the decisions down by variant.<br/>
+ * Callbacks are made on the thread running the phase, which is a background thread with {@link AppRate#initAsync()}. They must
+ * be quick and must not throw.
+ */
+public interface AppRateMetricsListener {
+
+    /**
+     * The phases of AppRate that are timed.
+     */
+    enum Phase {
+        /**
+         * The whole decision, from the state load to the eligibility check.
+         */
+        INIT("AppRate.init"),
+        /**
+         * Loading the AppRate state from its storage.
+         */
+        STATE_LOAD("AppRate.stateLoad"),
+        /**
+         * Reading the application version, to check for an upgrade. Part of {@link #ELIGIBILITY}.
+         */
+        UPGRADE_CHECK("AppRate.upgradeCheck"),
+        /**
+         * Checking for an upgrade, then taking the precomputed decision or updating the launch tracking and deciding whether the
+         * dialog should be shown.
+         */
+        ELIGIBILITY("AppRate.eligibility"),
+        /**
+         * Creating and showing the first dialog of the flow.
+         */
+        DIALOG_CREATION("AppRate.dialogCreation");
+
+        private final String mSectionName;
+
+        Phase(String sectionName) {
+            mSectionName = sectionName;
+        }
+
+        /**
+         * @return The name of the {@link android.os.Trace} section of this phase.
+         */
+        public String getSectionName() {
+            return mSectionName;
+        }
+    }
+
+    /**
+     * @param phase         The phase that completed.
+     * @param durationNanos Its duration in nanoseconds.
+     */
+    void onPhaseCompleted(Phase phase, long durationNanos);
+
+    /**
+     * Called before each decision when an experiment is set with {@link AppRate#setExperiment(AppRateExperiment)}.
+     *
+     * @param experiment The experiment.
+     * @param variant    The variant the install is assigned to, whose settings make the decision.
+     */
+    void onVariantAssigned(AppRateExperiment experiment, AppRateExperiment.Variant variant);
+
+    /**
+     * @param decision       The outcome of the decision, with the reason why the dialog is not shown, also when it was precomputed.
+     * @param unmetCondition The name of the condition or threshold that is not met, see
+     *                       {@link RatingEligibilityEngine#getUnmetCondition()}, or <code>null</code>.
+     */
+    void onDecision(RatingEligibilityEngine.Decision decision, String unmetCondition);
+}
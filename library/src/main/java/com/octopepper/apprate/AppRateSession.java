@@ -0,0 +1,187 @@
+package com.octopepper.apprate;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.os.Bundle;
+import android.os.SystemClock;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Coordinates all the {@link AppRate} of the process over a session, which lasts while at least one activity is started.<br/>
+ * Only the first init() of a session counts a launch and makes a decision, concurrent and later ones are no-ops. At most one
+ * dialog flow is on screen at any time, and a flow that was interrupted by its activity being destroyed, for example by a
+ * configuration change, is shown again by the next init() of the session.<br/>
+ * When the session ends, the decision of the next one is prepared on the background thread.<br/>
+ * The time spent in the foreground is measured with {@link SystemClock#elapsedRealtime()} when the first activity starts and when
+ * the last one stops, without any timer, and accumulated in memory until it is taken by the session end task.<br/>
+ * Only the activities seen starting are counted, so that an activity started before the callbacks were registered does not end
+ * the session when it stops. Registering them from {@link Application#onCreate()}, with {@link AppRate#prewarm(Context)}, lets
+ * every activity be counted.
+ */
+class AppRateSession implements Application.ActivityLifecycleCallbacks {
+
+    private static AppRateSession sInstance;
+
+    private final Set<Activity> mStartedActivities = Collections.newSetFromMap(new IdentityHashMap<Activity, Boolean>());
+    private boolean mDecisionInFlight = false;
+    private boolean mDecisionMade = false;
+    private boolean mDialogPending = false;
+    private boolean mDialogShowing = false;
+    private Runnable mSessionEndTask;
+    private long mForegroundSince = 0;
+    private long mForegroundMillis = 0;
+
+    private AppRateSession() {
+    }
+
+    /**
+     * @param context A context.
+     * @return The session of the process, tracking the activity lifecycle from the first call.
+     */
+    static synchronized AppRateSession get(Context context) {
+        if (sInstance == null) {
+            sInstance = new AppRateSession();
+            Context applicationContext = context.getApplicationContext();
+            if (applicationContext instanceof Application) {
+                ((Application) applicationContext).registerActivityLifecycleCallbacks(sInstance);
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * Forget the session, so that the next call to {@link #get(Context)} starts tracking the activities of a new application. For
+     * tests only.
+     */
+    static synchronized void reset() {
+        sInstance = null;
+    }
+
+    /**
+     * @return <code>true</code> if the caller must make the decision of this session, in which case it must call
+     * {@link #endDecision(boolean)}. <code>false</code> if it has already been made or is being made.
+     */
+    synchronized boolean beginDecision() {
+        if (mDecisionMade || mDecisionInFlight) {
+            return false;
+        }
+        mDecisionInFlight = true;
+        return true;
+    }
+
+    /**
+     * @param showDialog The decision of this session.
+     */
+    synchronized void endDecision(boolean showDialog) {
+        mDecisionInFlight = false;
+        mDecisionMade = true;
+        mDialogPending = showDialog;
+    }
+
+    /**
+     * @return <code>true</code> if the dialog was decided in this session but the user has not answered it, and no flow is on screen.
+     */
+    synchronized boolean isDialogPending() {
+        return mDialogPending && !mDialogShowing;
+    }
+
+    /**
+     * @return <code>true</code> if the caller may show the first dialog of a flow, in which case the flow must end with
+     * {@link #onFlowFinished()} or {@link #onFlowDetached()}.
+     */
+    synchronized boolean claimDialog() {
+        if (mDialogShowing) {
+            return false;
+        }
+        mDialogShowing = true;
+        return true;
+    }
+
+    /**
+     * The user answered the flow.
+     */
+    synchronized void onFlowFinished() {
+        mDialogShowing = false;
+        mDialogPending = false;
+    }
+
+    /**
+     * The flow was dismissed without an answer, because its activity went away. It may be shown again in this session.
+     */
+    synchronized void onFlowDetached() {
+        mDialogShowing = false;
+    }
+
+    /**
+     * @param sessionEndTask The task run on the background thread when this session ends, replacing any previously set one.
+     */
+    synchronized void setSessionEndTask(Runnable sessionEndTask) {
+        mSessionEndTask = sessionEndTask;
+    }
+
+    /**
+     * @return The time spent in the foreground by the sessions that have ended since the last call, in milliseconds.
+     */
+    synchronized long takeForegroundMillis() {
+        long foregroundMillis = mForegroundMillis;
+        mForegroundMillis = 0;
+        return foregroundMillis;
+    }
+
+    @Override
+    public synchronized void onActivityStarted(Activity activity) {
+        // Still set if the last activity was only restarted for a configuration change.
+        if (mForegroundSince == 0) {
+            mForegroundSince = SystemClock.elapsedRealtime();
+        }
+        mStartedActivities.add(activity);
+    }
+
+    @Override
+    public synchronized void onActivityStopped(Activity activity) {
+        // An activity started before the callbacks were registered was never counted.
+        if (!mStartedActivities.remove(activity)) {
+            return;
+        }
+
+        // The application went to the background, the next init() starts a new session.
+        if (mStartedActivities.isEmpty() && !activity.isChangingConfigurations()) {
+            mDecisionMade = false;
+            mDialogPending = false;
+            if (mForegroundSince != 0) {
+                mForegroundMillis += SystemClock.elapsedRealtime() - mForegroundSince;
+                mForegroundSince = 0;
+            }
+            if (mSessionEndTask != null) {
+                AppRateExecutors.background().execute(mSessionEndTask);
+                mSessionEndTask = null;
+            }
+        }
+    }
+
+    @Override
+    public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+    }
+
+    @Override
+    public void onActivityResumed(Activity activity) {
+    }
+
+    @Override
+    public void onActivityPaused(Activity activity) {
+    }
+
+    @Override
+    public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+    }
+
+    @Override
+    public synchronized void onActivityDestroyed(Activity activity) {
+        // Always stopped first, unless it was finished before being started.
+        mStartedActivities.remove(activity);
+    }
+}
@@ -0,0 +1,18 @@
+package com.octopepper.apprate;
+
+/**
+ * A {@link RateStateStore} whose counters are incremented atomically, even when the store is shared by several processes.<br/>
+ * The launch and event counters are incremented with {@link #addLong(String, long)} when the store implements it, rather than read
+ * then written back, so that no increment is lost.
+ */
+public interface AtomicRateStateStore extends RateStateStore {
+
+    /**
+     * Atomically add to a long value, or set it if absent.
+     *
+     * @param key   The key of the value.
+     * @param delta The amount to add.
+     * @return The new value.
+     */
+    long addLong(String key, long delta);
+}
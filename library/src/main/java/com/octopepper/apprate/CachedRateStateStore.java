@@ -0,0 +1,147 @@
+package com.octopepper.apprate;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Base class for a {@link RateStateStore} that keeps all of its values in memory and writes them back as a whole.<br/>
+ * The values are loaded the first time they are needed. Mutations only mark the store as dirty, and every write back persists
+ * the latest snapshot, so any number of mutations followed by {@link #apply()} cost at most one write.
+ */
+public abstract class CachedRateStateStore implements RateStateStore {
+
+    private final Executor mWriteExecutor;
+    private final Object mWriteLock = new Object();
+    private Map<String, Object> mValues;
+    private boolean mDirty = false;
+    private boolean mWriteScheduled = false;
+
+    /**
+     * @param writeExecutor The executor on which {@link #apply()} writes the values back.
+     */
+    protected CachedRateStateStore(Executor writeExecutor) {
+        mWriteExecutor = writeExecutor;
+    }
+
+    /**
+     * Load the persisted values. Called once, on the first access to the store.
+     *
+     * @return The persisted values, boxed as {@link Boolean}, {@link Integer} or {@link Long}.
+     */
+    protected abstract Map<String, Object> load();
+
+    /**
+     * Persist all the values, replacing the previously persisted ones.
+     *
+     * @param values A snapshot of the values, boxed as {@link Boolean}, {@link Integer} or {@link Long}.
+     * @return <code>true</code> if the values were successfully written.
+     */
+    protected abstract boolean write(Map<String, Object> values);
+
+    @Override
+    public synchronized void preload() {
+        values();
+    }
+
+    @Override
+    public synchronized boolean getBoolean(String key, boolean defaultValue) {
+        Object value = values().get(key);
+        return value instanceof Boolean ? (Boolean) value : defaultValue;
+    }
+
+    @Override
+    public synchronized int getInt(String key, int defaultValue) {
+        Object value = values().get(key);
+        return value instanceof Integer ? (Integer) value : defaultValue;
+    }
+
+    @Override
+    public synchronized long getLong(String key, long defaultValue) {
+        Object value = values().get(key);
+        return value instanceof Long ? (Long) value : defaultValue;
+    }
+
+    @Override
+    public RateStateStore putBoolean(String key, boolean value) {
+        return put(key, value);
+    }
+
+    @Override
+    public RateStateStore putInt(String key, int value) {
+        return put(key, value);
+    }
+
+    @Override
+    public RateStateStore putLong(String key, long value) {
+        return put(key, value);
+    }
+
+    @Override
+    public synchronized RateStateStore clear() {
+        if (!values().isEmpty()) {
+            mValues.clear();
+            mDirty = true;
+        }
+        return this;
+    }
+
+    @Override
+    public void apply() {
+        synchronized (this) {
+            if (!mDirty || mWriteScheduled) {
+                return;
+            }
+            mWriteScheduled = true;
+        }
+
+        mWriteExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                writeBack();
+            }
+        });
+    }
+
+    @Override
+    public boolean commit() {
+        return writeBack();
+    }
+
+    private synchronized RateStateStore put(String key, Object value) {
+        Object previous = values().put(key, value);
+        if (!value.equals(previous)) {
+            mDirty = true;
+        }
+        return this;
+    }
+
+    private Map<String, Object> values() {
+        if (mValues == null) {
+            mValues = new HashMap<String, Object>(load());
+        }
+        return mValues;
+    }
+
+    private boolean writeBack() {
+        synchronized (mWriteLock) {
+            Map<String, Object> snapshot;
+            synchronized (this) {
+                mWriteScheduled = false;
+                if (!mDirty) {
+                    return true;
+                }
+                mDirty = false;
+                snapshot = new HashMap<String, Object>(mValues);
+            }
+
+            boolean written = write(snapshot);
+            if (!written) {
+                synchronized (this) {
+                    mDirty = true;
+                }
+            }
+            return written;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.octopepper.apprate;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The times of the last {@link #CAPACITY} crashes, in a fixed-size ring buffer.<br/>
+ * The buffer is a small memory-mapped file mapped ahead of time, so recording a crash from the uncaught exception handler is a
+ * few stores into memory, without allocation. The page belongs to the kernel page cache, so the crash is persisted even if the
+ * process is killed right after.
+ */
+class CrashLog implements RatingEligibilityEngine.CrashHistory {
+
+    static final String FILE_NAME = "apprate_crash_log";
+
+    /**
+     * The number of crashes remembered.
+     */
+    static final int CAPACITY = 8;
+
+    // The slot of the next crash and the number of crashes recorded, then the crash times.
+    private static final int NEXT_OFFSET = 0;
+    private static final int COUNT_OFFSET = 4;
+    private static final int TIMES_OFFSET = 8;
+    private static final int SIZE = TIMES_OFFSET + CAPACITY * 8;
+
+    private final ByteBuffer mBuffer;
+
+    CrashLog(ByteBuffer buffer) {
+        mBuffer = buffer;
+    }
+
+    /**
+     * @param file The file holding the crash log, created if needed.
+     * @return The crash log mapped from the file.
+     * @throws IOException If the file could not be mapped.
+     */
+    static CrashLog open(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            // The mapping stays valid once the file is closed.
+            return new CrashLog(randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, SIZE));
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Record a crash. Safe to call from a dying thread: it neither allocates nor blocks.
+     *
+     * @param timeMillis The time of the crash.
+     */
+    void record(long timeMillis) {
+        int next = slot(mBuffer.getInt(NEXT_OFFSET));
+        mBuffer.putLong(TIMES_OFFSET + next * 8, timeMillis);
+        mBuffer.putInt(NEXT_OFFSET, slot(next + 1));
+        int count = mBuffer.getInt(COUNT_OFFSET);
+        if (count < CAPACITY) {
+            mBuffer.putInt(COUNT_OFFSET, count + 1);
+        }
+    }
+
+    /**
+     * @param n The number of more recent crashes, 0 for the last crash.
+     * @return The time of the crash, or 0 if fewer crashes have been recorded.
+     */
+    @Override
+    public long getCrashTime(int n) {
+        int count = mBuffer.getInt(COUNT_OFFSET);
+        if (n < 0 || n >= Math.min(count, CAPACITY)) {
+            return 0;
+        }
+        return mBuffer.getLong(TIMES_OFFSET + slot(mBuffer.getInt(NEXT_OFFSET) - 1 - n) * 8);
+    }
+
+    /**
+     * Forget all the crashes.
+     */
+    void clear() {
+        mBuffer.putInt(NEXT_OFFSET, 0);
+        mBuffer.putInt(COUNT_OFFSET, 0);
+    }
+
+    private static int slot(int index) {
+        // Also guards against a corrupted file.
+        int slot = index % CAPACITY;
+        return slot < 0 ? slot + CAPACITY : slot;
+    }
+}
@@ -0,0 +1,76 @@
+package com.octopepper.apprate;
+
+import android.content.Context;
+
+import java.util.Locale;
+
+/**
+ * The texts of the default dialogs, resolved once for the current locale and shared by every {@link AppRate}.<br/>
+ * Texts without arguments keep their styling.
+ */
+class DefaultDialogContents {
+
+    private static volatile DefaultDialogContents sInstance;
+
+    private final Locale mLocale;
+    private final DialogContent mRateDialog;
+    private final DialogContent mDoYouLikeAppDialog;
+    private final DialogContent mSendFeedbackDialog;
+
+    private DefaultDialogContents(Context context, Locale locale) {
+        String applicationName = AppInfo.get(context).getName();
+
+        mLocale = locale;
+        mRateDialog = new DialogContent(
+                context.getString(R.string.dialog_title, applicationName),
+                context.getString(R.string.dialog_message, applicationName),
+                context.getText(R.string.dialog_positive_button),
+                context.getText(R.string.dialog_neutral_button),
+                context.getText(R.string.dialog_negative_button));
+        mDoYouLikeAppDialog = new DialogContent(
+                context.getString(R.string.like_app_dialog_title, applicationName),
+                context.getString(R.string.like_app_dialog_message, applicationName),
+                context.getText(R.string.like_app_dialog_positive_button),
+                null,
+                context.getText(R.string.like_app_dialog_negative_button));
+        mSendFeedbackDialog = new DialogContent(
+                context.getString(R.string.send_feedback_dialog_title, applicationName),
+                context.getString(R.string.send_feedback_dialog_message, applicationName),
+                context.getText(R.string.send_feedback_dialog_positive_button),
+                null,
+                context.getText(R.string.send_feedback_dialog_negative_button));
+    }
+
+    /**
+     * @param context A context, whose locale the texts are resolved for.
+     * @return The texts of the default dialogs, resolved again only if the locale has changed.
+     */
+    static DefaultDialogContents get(Context context) {
+        Locale locale = context.getResources().getConfiguration().locale;
+        DefaultDialogContents instance = sInstance;
+        if (instance == null || !instance.mLocale.equals(locale)) {
+            instance = new DefaultDialogContents(context, locale);
+            sInstance = instance;
+        }
+        return instance;
+    }
+
+    /**
+     * Forget the texts, so that the next call to {@link #get(Context)} resolves them again. For tests only.
+     */
+    static void reset() {
+        sInstance = null;
+    }
+
+    DialogContent getRateDialog() {
+        return mRateDialog;
+    }
+
+    DialogContent getDoYouLikeAppDialog() {
+        return mDoYouLikeAppDialog;
+    }
+
+    DialogContent getSendFeedbackDialog() {
+        return mSendFeedbackDialog;
+    }
+}
@@ -0,0 +1,49 @@
+package com.octopepper.apprate;
+
+/**
+ * The texts of a dialog of the flow. They may be styled.
+ */
+public class DialogContent {
+
+    private final CharSequence mTitle;
+    private final CharSequence mMessage;
+    private final CharSequence mPositiveButton;
+    private final CharSequence mNeutralButton;
+    private final CharSequence mNegativeButton;
+
+    /**
+     * @param title          The title.
+     * @param message        The message.
+     * @param positiveButton The text of the positive button.
+     * @param neutralButton  The text of the neutral button, or <code>null</code> if the dialog has none.
+     * @param negativeButton The text of the negative button.
+     */
+    public DialogContent(CharSequence title, CharSequence message, CharSequence positiveButton, CharSequence neutralButton,
+                         CharSequence negativeButton) {
+        mTitle = title;
+        mMessage = message;
+        mPositiveButton = positiveButton;
+        mNeutralButton = neutralButton;
+        mNegativeButton = negativeButton;
+    }
+
+    public CharSequence getTitle() {
+        return mTitle;
+    }
+
+    public CharSequence getMessage() {
+        return mMessage;
+    }
+
+    public CharSequence getPositiveButton() {
+        return mPositiveButton;
+    }
+
+    public CharSequence getNeutralButton() {
+        return mNeutralButton;
+    }
+
+    public CharSequence getNegativeButton() {
+        return mNegativeButton;
+    }
+}
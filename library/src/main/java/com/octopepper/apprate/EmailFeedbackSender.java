@@ -0,0 +1,63 @@
+package com.octopepper.apprate;
+
+import android.content.ActivityNotFoundException;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.support.v4.content.FileProvider;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A {@link FeedbackSender} that hands the feedback to an email application, with the diagnostics attached through a
+ * {@link FileProvider}.<br/>
+ * The email application is opened right after the user sends the feedback. Without one, the feedback is dropped rather than
+ * opened later when the user does not expect it.
+ */
+public class EmailFeedbackSender implements InteractiveFeedbackSender {
+
+    private static final String TAG = EmailFeedbackSender.class.getSimpleName();
+
+    private static final String AUTHORITY_SUFFIX = ".apprate.fileprovider";
+
+    private final String mEmailAddress;
+    private final String mSubject;
+
+    /**
+     * @param emailAddress The address the feedback is sent to.
+     * @param subject      The subject of the email.
+     */
+    public EmailFeedbackSender(String emailAddress, String subject) {
+        mEmailAddress = emailAddress;
+        mSubject = subject;
+    }
+
+    /**
+     * @param context A context.
+     * @param file    A file of the feedback outbox.
+     * @return A content URI other applications can be granted to read the file through.
+     */
+    public static Uri getUriForFile(Context context, File file) {
+        return FileProvider.getUriForFile(context, context.getPackageName() + AUTHORITY_SUFFIX, file);
+    }
+
+    @Override
+    public void send(Context context, Feedback feedback) throws IOException {
+        Intent intent = new Intent(Intent.ACTION_SEND)
+                .setType("message/rfc822")
+                .putExtra(Intent.EXTRA_EMAIL, new String[]{mEmailAddress})
+                .putExtra(Intent.EXTRA_SUBJECT, mSubject)
+                .putExtra(Intent.EXTRA_TEXT, feedback.getMessage())
+                .putExtra(Intent.EXTRA_STREAM, getUriForFile(context, feedback.getDiagnosticsFile()))
+                .addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+
+        try {
+            context.startActivity(Intent.createChooser(intent, context.getString(R.string.send_email))
+                    .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK));
+        } catch (ActivityNotFoundException e) {
+            Log.e(TAG, "No email application, dropping feedback " + feedback.getId());
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.octopepper.apprate;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts significant events in memory and adds them to a {@link RateStateStore} in batches.<br/>
+ * Recording an event that has already been seen is lock free and does not allocate, so it can be done from hot code paths on any
+ * thread.
+ */
+class EventCounters {
+
+    /**
+     * Asked to call {@link #flushTo(RateStateStore)} a little later, when events have been recorded since the last flush.
+     */
+    interface FlushScheduler {
+        void scheduleFlush();
+    }
+
+    private final ConcurrentMap<String, Counter> mCounters = new ConcurrentHashMap<String, Counter>();
+    private final AtomicBoolean mFlushScheduled = new AtomicBoolean(false);
+    private final FlushScheduler mFlushScheduler;
+
+    EventCounters(FlushScheduler flushScheduler) {
+        mFlushScheduler = flushScheduler;
+    }
+
+    /**
+     * @param event The name of the event that occurred.
+     */
+    void record(String event) {
+        Counter counter = mCounters.get(event);
+        if (counter == null) {
+            Counter newCounter = new Counter(PrefsContract.eventCountKey(event));
+            counter = mCounters.putIfAbsent(event, newCounter);
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+        counter.mPending.incrementAndGet();
+
+        if (!mFlushScheduled.get() && mFlushScheduled.compareAndSet(false, true)) {
+            mFlushScheduler.scheduleFlush();
+        }
+    }
+
+    /**
+     * Add the events recorded since the last flush to the counts in the store. The store is not written back.
+     *
+     * @param store The store holding the event counts.
+     * @return <code>true</code> if the store was modified.
+     */
+    synchronized boolean flushTo(RateStateStore store) {
+        mFlushScheduled.set(false);
+
+        boolean modified = false;
+        for (Counter counter : mCounters.values()) {
+            long pending = counter.mPending.getAndSet(0);
+            if (pending != 0) {
+                RatingEligibilityEngine.addLong(store, counter.mKey, pending);
+                modified = true;
+            }
+        }
+        return modified;
+    }
+
+    private static class Counter {
+        private final String mKey;
+        private final AtomicLong mPending = new AtomicLong();
+
+        private Counter(String key) {
+            mKey = key;
+        }
+    }
+}
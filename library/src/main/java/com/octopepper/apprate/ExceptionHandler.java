@@ -1,7 +1,6 @@
 package com.octopepper.apprate;
 
 import android.content.Context;
-import android.content.SharedPreferences;
 
 import java.lang.Thread.UncaughtExceptionHandler;
 
@@ -9,15 +8,20 @@ public class ExceptionHandler implements UncaughtExceptionHandler {
 
     private UncaughtExceptionHandler mDefaultExceptionHandler;
 
-    private SharedPreferences mPreferences;
+    private Context mContext;
 
     public ExceptionHandler(UncaughtExceptionHandler uncaughtExceptionHandler, Context context) {
-        mPreferences = context.getSharedPreferences(PrefsContract.SHARED_PREFS_NAME, Context.MODE_PRIVATE);
+        mContext = context.getApplicationContext();
         mDefaultExceptionHandler = uncaughtExceptionHandler;
     }
 
     public void uncaughtException(Thread thread, Throwable throwable) {
-        mPreferences.edit().putBoolean(PrefsContract.PREF_APP_HAS_CRASHED, true).commit();
+        // A few writes into the page mapped by AppRate.prewarm() or the decision, read back by the next init(). The log is only
+        // opened here if neither did.
+        CrashLog crashLog = AppRate.getCrashLog(mContext);
+        if (crashLog != null) {
+            crashLog.record(System.currentTimeMillis());
+        }
         mDefaultExceptionHandler.uncaughtException(thread, throwable);
     }
 
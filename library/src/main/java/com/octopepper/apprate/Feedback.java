@@ -0,0 +1,47 @@
+package com.octopepper.apprate;
+
+import java.io.File;
+
+/**
+ * A feedback written by the user in the in-app feedback dialog, waiting in the outbox to be sent.
+ */
+public class Feedback {
+
+    private final String mId;
+    private final long mCreatedAt;
+    private final String mMessage;
+    private final File mDiagnosticsFile;
+
+    /**
+     * @param id              The identifier of the feedback in the outbox.
+     * @param createdAt       The time the feedback was written.
+     * @param message         The text written by the user.
+     * @param diagnosticsFile The GZIP compressed diagnostics, in a file that can be shared with
+     *                        {@link EmailFeedbackSender#getUriForFile(android.content.Context, File)}.
+     */
+    public Feedback(String id, long createdAt, String message, File diagnosticsFile) {
+        mId = id;
+        mCreatedAt = createdAt;
+        mMessage = message;
+        mDiagnosticsFile = diagnosticsFile;
+    }
+
+    public String getId() {
+        return mId;
+    }
+
+    public long getCreatedAt() {
+        return mCreatedAt;
+    }
+
+    public String getMessage() {
+        return mMessage;
+    }
+
+    /**
+     * @return The GZIP compressed text file with the device, Android and application versions, and the recent log if enabled.
+     */
+    public File getDiagnosticsFile() {
+        return mDiagnosticsFile;
+    }
+}
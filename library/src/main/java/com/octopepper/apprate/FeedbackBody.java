@@ -0,0 +1,56 @@
+package com.octopepper.apprate;
+
+/**
+ * Builds the default body of the feedback email from already resolved strings.
+ */
+class FeedbackBody {
+
+    private static final String SEPARATOR = "\n\n\n\n------------------------------------\n\n";
+
+    private FeedbackBody() {
+    }
+
+    /**
+     * @param header             The line asking the user to write above it.
+     * @param deviceLine         The line describing the device.
+     * @param androidVersionLine The line describing the Android version.
+     * @param appVersionLine     The line describing the application version.
+     * @return The body of the feedback email.
+     */
+    static String build(String header, String deviceLine, String androidVersionLine, String appVersionLine) {
+        StringBuilder body = new StringBuilder(SEPARATOR.length() + header.length() + deviceLine.length()
+                + androidVersionLine.length() + appVersionLine.length() + 6);
+        body.append(SEPARATOR);
+        body.append(header);
+        body.append("\n\n");
+        body.append('\n').append(deviceLine);
+        body.append('\n').append(androidVersionLine);
+        body.append('\n').append(appVersionLine);
+        return body.toString();
+    }
+
+    /**
+     * @param manufacturer The device manufacturer.
+     * @param model        The device model.
+     * @return A readable name for the device.
+     */
+    static String deviceName(String manufacturer, String model) {
+        if (model.startsWith(manufacturer)) {
+            return capitalize(model);
+        } else {
+            return capitalize(manufacturer) + " " + model;
+        }
+    }
+
+    private static String capitalize(String s) {
+        if (s == null || s.length() == 0) {
+            return "";
+        }
+        char first = s.charAt(0);
+        if (Character.isUpperCase(first)) {
+            return s;
+        } else {
+            return Character.toUpperCase(first) + s.substring(1);
+        }
+    }
+}
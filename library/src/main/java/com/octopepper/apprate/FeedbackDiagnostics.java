@@ -0,0 +1,96 @@
+package com.octopepper.apprate;
+
+import android.content.Context;
+import android.os.Build;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The diagnostics attached to an in-app feedback: device, Android and application versions, and optionally the end of the log of
+ * the application. They are streamed to a GZIP compressed file rather than built in memory.
+ */
+class FeedbackDiagnostics {
+
+    private static final String CHARSET = "UTF-8";
+
+    private final String mDeviceLine;
+    private final String mAndroidVersionLine;
+    private final String mAppVersionLine;
+    private final int mLogTailLines;
+
+    private FeedbackDiagnostics(String deviceLine, String androidVersionLine, String appVersionLine, int logTailLines) {
+        mDeviceLine = deviceLine;
+        mAndroidVersionLine = androidVersionLine;
+        mAppVersionLine = appVersionLine;
+        mLogTailLines = logTailLines;
+    }
+
+    /**
+     * @param context      A context.
+     * @param logTailLines The number of lines of the log of the application to include, 0 for none.
+     * @return The diagnostics of the running application.
+     */
+    static FeedbackDiagnostics collect(Context context, int logTailLines) {
+        return new FeedbackDiagnostics(
+                context.getString(R.string.email_heading_android_device, FeedbackBody.deviceName(Build.MANUFACTURER, Build.MODEL)),
+                context.getString(R.string.email_heading_android_version, Build.VERSION.RELEASE),
+                context.getString(R.string.email_heading_app_version, AppInfo.get(context).getVersionName()),
+                logTailLines);
+    }
+
+    /**
+     * @param file The file to write the compressed diagnostics to.
+     * @throws IOException If the file could not be written.
+     */
+    void writeTo(File file) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(file)), CHARSET));
+        try {
+            writer.write(mDeviceLine);
+            writer.write('\n');
+            writer.write(mAndroidVersionLine);
+            writer.write('\n');
+            writer.write(mAppVersionLine);
+            writer.write('\n');
+            if (mLogTailLines > 0) {
+                writer.write('\n');
+                writeLogTail(writer);
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Copy the end of the log line by line. Since Jelly Bean, an application can only read its own log.
+     */
+    private void writeLogTail(Writer writer) throws IOException {
+        Process process;
+        try {
+            process = Runtime.getRuntime().exec(new String[]{"logcat", "-d", "-v", "time", "-t", String.valueOf(mLogTailLines)});
+        } catch (IOException e) {
+            writer.write("Log unavailable: " + e.getMessage());
+            writer.write('\n');
+            return;
+        }
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), CHARSET));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        } finally {
+            reader.close();
+            process.destroy();
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package com.octopepper.apprate;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The in-app feedback waiting to be delivered by a {@link FeedbackSender}, kept in files so that it survives the process.<br/>
+ * All the work is done on a single thread of its own, one task at a time. Failed deliveries are retried with an exponential
+ * backoff, and at the next launch, where the files left by an interrupted write are also deleted. An
+ * {@link InteractiveFeedbackSender} is only given the feedback the user has just sent.
+ */
+class FeedbackOutbox {
+
+    private static final String TAG = FeedbackOutbox.class.getSimpleName();
+
+    static final String DIRECTORY_NAME = "apprate_feedback";
+    private static final String OUTBOX_DIRECTORY_NAME = "outbox";
+    private static final String SENT_DIRECTORY_NAME = "sent";
+    private static final String MESSAGE_SUFFIX = ".txt";
+    private static final String DIAGNOSTICS_SUFFIX = ".gz";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String CHARSET = "UTF-8";
+
+    private static final int MAX_PENDING = 20;
+    private static final int MAX_SENT = 5;
+    private static final long INITIAL_RETRY_DELAY = 30 * 1000L;
+    private static final long MAX_RETRY_DELAY = 60 * 60 * 1000L;
+
+    private final Context mContext;
+    private final FeedbackSender mSender;
+    private final ScheduledExecutorService mExecutor;
+    // Resolved on the background thread, as getFilesDir() may create the files directory.
+    private File mOutboxDirectory;
+    private File mSentDirectory;
+    private int mFailedAttempts = 0;
+    private boolean mRetryScheduled = false;
+
+    private final Runnable mRetry = new Runnable() {
+        @Override
+        public void run() {
+            mRetryScheduled = false;
+            deliver();
+        }
+    };
+
+    /**
+     * @param context The application context.
+     * @param sender   The sender the feedback is delivered with.
+     * @param executor The single thread all the work is done on.
+     */
+    FeedbackOutbox(Context context, FeedbackSender sender, ScheduledExecutorService executor) {
+        mContext = context;
+        mSender = sender;
+        mExecutor = executor;
+    }
+
+    /**
+     * Write a feedback to the outbox, then try to deliver it.
+     *
+     * @param message     The text written by the user.
+     * @param diagnostics The diagnostics to attach.
+     */
+    void enqueue(final String message, final FeedbackDiagnostics diagnostics) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                String id;
+                try {
+                    id = write(message, diagnostics);
+                } catch (IOException e) {
+                    Log.e(TAG, "Unable to write feedback", e);
+                    return;
+                }
+                trim(mOutboxDirectory, MESSAGE_SUFFIX, MAX_PENDING);
+                if (mSender instanceof InteractiveFeedbackSender) {
+                    deliver(new File(mOutboxDirectory, id + MESSAGE_SUFFIX));
+                    trim(mSentDirectory, DIAGNOSTICS_SUFFIX, MAX_SENT);
+                } else {
+                    deliver();
+                }
+            }
+        });
+    }
+
+    /**
+     * Delete the files left by a write that was interrupted, then try to deliver the feedback left in the outbox by previous
+     * launches. Without a user action, the feedback of an {@link InteractiveFeedbackSender} is dropped instead.
+     */
+    void deliverPending() {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                sweep();
+                if (!(mSender instanceof InteractiveFeedbackSender)) {
+                    deliver();
+                    return;
+                }
+                for (File messageFile : list(mOutboxDirectory, MESSAGE_SUFFIX)) {
+                    Log.d(TAG, "Dropping feedback " + messageFile.getName() + " not sent by the user's last action.");
+                    delete(messageFile);
+                }
+            }
+        });
+    }
+
+    private void resolveDirectories() {
+        if (mOutboxDirectory == null) {
+            File directory = new File(mContext.getFilesDir(), DIRECTORY_NAME);
+            mOutboxDirectory = new File(directory, OUTBOX_DIRECTORY_NAME);
+            mSentDirectory = new File(directory, SENT_DIRECTORY_NAME);
+        }
+    }
+
+    /**
+     * @return The id of the feedback.
+     */
+    private String write(String message, FeedbackDiagnostics diagnostics) throws IOException {
+        resolveDirectories();
+        if (!mOutboxDirectory.isDirectory() && !mOutboxDirectory.mkdirs()) {
+            throw new IOException("Unable to create " + mOutboxDirectory);
+        }
+
+        // Named after their creation time, so that they sort oldest first.
+        long createdAt = System.currentTimeMillis();
+        while (new File(mOutboxDirectory, id(createdAt) + MESSAGE_SUFFIX).exists()) {
+            createdAt++;
+        }
+        String id = id(createdAt);
+
+        diagnostics.writeTo(new File(mOutboxDirectory, id + DIAGNOSTICS_SUFFIX));
+
+        // The message is written last and renamed into place: its presence marks a complete feedback.
+        File tempFile = new File(mOutboxDirectory, id + MESSAGE_SUFFIX + TEMP_SUFFIX);
+        OutputStream out = new FileOutputStream(tempFile);
+        try {
+            out.write(message.getBytes(CHARSET));
+        } finally {
+            out.close();
+        }
+        if (!tempFile.renameTo(new File(mOutboxDirectory, id + MESSAGE_SUFFIX))) {
+            throw new IOException("Unable to write feedback " + id);
+        }
+        return id;
+    }
+
+    /**
+     * Delete the temporary messages, and the diagnostics without a message, left by a write that was interrupted.
+     */
+    private void sweep() {
+        resolveDirectories();
+        for (File file : list(mOutboxDirectory, TEMP_SUFFIX)) {
+            file.delete();
+        }
+        for (File diagnosticsFile : list(mOutboxDirectory, DIAGNOSTICS_SUFFIX)) {
+            String id = diagnosticsFile.getName().substring(0, diagnosticsFile.getName().length() - DIAGNOSTICS_SUFFIX.length());
+            if (!new File(mOutboxDirectory, id + MESSAGE_SUFFIX).exists()) {
+                Log.d(TAG, "Deleting the diagnostics of the incomplete feedback " + id);
+                diagnosticsFile.delete();
+            }
+        }
+    }
+
+    private void deliver() {
+        resolveDirectories();
+        for (File messageFile : list(mOutboxDirectory, MESSAGE_SUFFIX)) {
+            if (!deliver(messageFile)) {
+                return;
+            }
+        }
+        trim(mSentDirectory, DIAGNOSTICS_SUFFIX, MAX_SENT);
+    }
+
+    /**
+     * @return <code>false</code> if the feedback could not be sent, in which case a retry is scheduled unless the sender is
+     * interactive.
+     */
+    private boolean deliver(File messageFile) {
+        String id = messageFile.getName().substring(0, messageFile.getName().length() - MESSAGE_SUFFIX.length());
+        File diagnosticsFile = new File(mOutboxDirectory, id + DIAGNOSTICS_SUFFIX);
+        boolean interactive = mSender instanceof InteractiveFeedbackSender;
+        if (interactive) {
+            // The application it opens reads the diagnostics after send() returns: they are shared from where they are kept.
+            diagnosticsFile = moveToSent(diagnosticsFile, id);
+        }
+
+        try {
+            mSender.send(mContext, new Feedback(id, Long.parseLong(id), read(messageFile), diagnosticsFile));
+        } catch (IOException e) {
+            if (interactive) {
+                Log.d(TAG, "Unable to send feedback " + id, e);
+                return false;
+            }
+            mFailedAttempts++;
+            scheduleRetry();
+            Log.d(TAG, "Unable to send feedback " + id + ", attempt " + mFailedAttempts, e);
+            return false;
+        }
+        mFailedAttempts = 0;
+
+        if (!interactive) {
+            moveToSent(diagnosticsFile, id);
+        }
+        delete(messageFile);
+        Log.d(TAG, "Sent feedback " + id);
+        return true;
+    }
+
+    /**
+     * Move diagnostics to the sent feedback, where those of the last ones are kept until {@link #trim(File, String, int)}.
+     *
+     * @return The moved file, or the given one if it could not be moved.
+     */
+    private File moveToSent(File diagnosticsFile, String id) {
+        File sentDiagnosticsFile = new File(mSentDirectory, id + DIAGNOSTICS_SUFFIX);
+        if ((mSentDirectory.isDirectory() || mSentDirectory.mkdirs()) && diagnosticsFile.renameTo(sentDiagnosticsFile)) {
+            return sentDiagnosticsFile;
+        }
+        return diagnosticsFile;
+    }
+
+    /**
+     * Delete a feedback of the outbox and its diagnostics.
+     */
+    private void delete(File messageFile) {
+        String id = messageFile.getName().substring(0, messageFile.getName().length() - MESSAGE_SUFFIX.length());
+        new File(mOutboxDirectory, id + DIAGNOSTICS_SUFFIX).delete();
+        messageFile.delete();
+    }
+
+    private void scheduleRetry() {
+        if (mRetryScheduled) {
+            return;
+        }
+        mRetryScheduled = true;
+        long delay = INITIAL_RETRY_DELAY << Math.min(mFailedAttempts - 1, 7);
+        mExecutor.schedule(mRetry, Math.min(delay, MAX_RETRY_DELAY), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Delete the oldest files with the given suffix, and the files that go with them, beyond a maximum number.
+     */
+    private static void trim(File directory, String suffix, int max) {
+        File[] files = list(directory, suffix);
+        for (int i = 0; i < files.length - max; i++) {
+            String id = files[i].getName().substring(0, files[i].getName().length() - suffix.length());
+            new File(directory, id + MESSAGE_SUFFIX).delete();
+            new File(directory, id + DIAGNOSTICS_SUFFIX).delete();
+        }
+    }
+
+    private static File[] list(File directory, final String suffix) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return new File[0];
+        }
+
+        int count = 0;
+        for (File file : files) {
+            if (file.getName().endsWith(suffix)) {
+                files[count++] = file;
+            }
+        }
+        files = Arrays.copyOf(files, count);
+        Arrays.sort(files);
+        return files;
+    }
+
+    private static String read(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) file.length());
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toString(CHARSET);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String id(long createdAt) {
+        // Zero padded so that the names sort by time.
+        return String.format(Locale.US, "%019d", createdAt);
+    }
+}
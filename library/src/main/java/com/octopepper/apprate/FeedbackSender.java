@@ -0,0 +1,23 @@
+package com.octopepper.apprate;
+
+import android.content.Context;
+
+import java.io.IOException;
+
+/**
+ * Delivers the feedback of the in-app feedback dialog, for example to a backend. Set with
+ * {@link AppRate#setFeedbackSender(Context, FeedbackSender)}.
+ */
+public interface FeedbackSender {
+
+    /**
+     * Called on the AppRate outbox thread, one feedback at a time, oldest first. An {@link InteractiveFeedbackSender} is only called
+     * right after the user sent the feedback.
+     *
+     * @param context  The application context.
+     * @param feedback The feedback to deliver. Its diagnostics file stays readable for a while after this returns, so that it can
+     *                 be attached to an email.
+     * @throws IOException If the feedback could not be delivered, it is kept in the outbox and sent again later.
+     */
+    void send(Context context, Feedback feedback) throws IOException;
+}
@@ -0,0 +1,314 @@
+package com.octopepper.apprate;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The default {@link RateStateStore}, backed by a compact versioned binary record.<br/>
+ * The {@link PrefsContract} keys have a fixed place in the record, so it is only a few dozen bytes, read with a single read and
+ * written with a single write to a temporary file that then atomically replaces the previous one. Other keys follow the fixed part.
+ * <p/>
+ * The first time it is loaded, and whenever the record is corrupt, the state of previous versions of AppRate is imported from the
+ * {@link PrefsContract#SHARED_PREFS_NAME} shared preferences.
+ */
+public class FileRateStateStore extends CachedRateStateStore {
+
+    private static final String TAG = FileRateStateStore.class.getSimpleName();
+
+    public static final String FILE_NAME = "apprate_state";
+
+    private static final int MAGIC = 0x41525354;
+    private static final byte VERSION = 1;
+
+    // Presence bits of the fixed part.
+    private static final int HAS_APP_HAS_CRASHED = 1;
+    private static final int HAS_DONT_SHOW_AGAIN = 1 << 1;
+    private static final int HAS_DONT_SHOW_IF_CRASHED = 1 << 2;
+    private static final int HAS_DATE_FIRST_LAUNCH = 1 << 3;
+    private static final int HAS_LAUNCH_COUNT = 1 << 4;
+    private static final int HAS_APP_VERSION_CODE = 1 << 5;
+
+    // Values of the boolean keys of the fixed part.
+    private static final int APP_HAS_CRASHED = 1;
+    private static final int DONT_SHOW_AGAIN = 1 << 1;
+    private static final int DONT_SHOW_IF_CRASHED = 1 << 2;
+
+    /**
+     * The key of the sticky crash flag of previous versions, which has a place in the fixed part. It is read until
+     * {@link AppRate} migrates it to the crash log, and no longer written once cleared.
+     */
+    private static final String LEGACY_APP_HAS_CRASHED = "pref_app_has_crashed";
+
+    private static final byte TYPE_BOOLEAN = 'Z';
+    private static final byte TYPE_INT = 'I';
+    private static final byte TYPE_LONG = 'J';
+
+    private final Context mContext;
+    private File mFile;
+    private SharedPreferences mLegacyPreferences;
+
+    /**
+     * @param context A context. The files directory and the shared preferences are only resolved by the first load, which does not
+     *                happen on the main thread with {@link AppRate#initAsync()} or {@link AppRate#prewarm(Context)}.
+     */
+    public FileRateStateStore(Context context) {
+        super(AppRateExecutors.background());
+        mContext = context.getApplicationContext();
+    }
+
+    /**
+     * @param file The file the values are stored in.
+     */
+    public FileRateStateStore(File file) {
+        super(AppRateExecutors.background());
+        mContext = null;
+        mFile = file;
+    }
+
+    @Override
+    protected Map<String, Object> load() {
+        if (mFile == null) {
+            mFile = new File(mContext.getFilesDir(), FILE_NAME);
+            mLegacyPreferences = mContext.getSharedPreferences(PrefsContract.SHARED_PREFS_NAME, Context.MODE_PRIVATE);
+        }
+        if (!mFile.exists()) {
+            return importLegacyPreferences();
+        }
+
+        Map<String, Object> values = new HashMap<String, Object>();
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new ByteArrayInputStream(readFully(mFile)));
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not an AppRate state record");
+            }
+            readRecord(in, in.readByte(), values);
+        } catch (IOException e) {
+            // A record without its header or of an unknown version is as corrupt as a truncated one.
+            Log.e(TAG, "Unable to read AppRate state, importing it again", e);
+            return importLegacyPreferences();
+        } finally {
+            closeQuietly(in);
+        }
+        return values;
+    }
+
+    /**
+     * Called after {@link #load()}, which has resolved the file.
+     */
+    @Override
+    protected boolean write(Map<String, Object> values) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            writeRecord(out, values);
+        } catch (IOException e) {
+            // Cannot happen when writing to memory.
+            return false;
+        }
+
+        File tempFile = new File(mFile.getPath() + ".tmp");
+        FileOutputStream fileOut = null;
+        try {
+            fileOut = new FileOutputStream(tempFile);
+            fileOut.write(bytes.toByteArray());
+            fileOut.getFD().sync();
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to write AppRate state", e);
+            return false;
+        } finally {
+            closeQuietly(fileOut);
+        }
+
+        if (!tempFile.renameTo(mFile)) {
+            Log.e(TAG, "Unable to replace AppRate state file");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Import the shared preferences of previous versions of AppRate into a new record, then clear them. Without shared preferences
+     * to import, the state starts from scratch.
+     */
+    private Map<String, Object> importLegacyPreferences() {
+        Map<String, Object> values = new HashMap<String, Object>();
+        if (mLegacyPreferences == null) {
+            return values;
+        }
+
+        for (Map.Entry<String, ?> entry : mLegacyPreferences.getAll().entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof Boolean || value instanceof Integer || value instanceof Long) {
+                values.put(entry.getKey(), value);
+            }
+        }
+
+        if (!values.isEmpty() && write(values)) {
+            Log.d(TAG, "Imported AppRate shared preferences.");
+            mLegacyPreferences.edit().clear().commit();
+        }
+        return values;
+    }
+
+    private static void readRecord(DataInputStream in, byte version, Map<String, Object> values) throws IOException {
+        if (version != VERSION) {
+            throw new IOException("Unknown AppRate state version " + version);
+        }
+
+        int presence = in.readUnsignedByte();
+        int flags = in.readUnsignedByte();
+        long dateFirstLaunch = in.readLong();
+        long launchCount = in.readLong();
+        int appVersionCode = in.readInt();
+
+        if ((presence & HAS_APP_HAS_CRASHED) != 0) {
+            values.put(LEGACY_APP_HAS_CRASHED, (flags & APP_HAS_CRASHED) != 0);
+        }
+        if ((presence & HAS_DONT_SHOW_AGAIN) != 0) {
+            values.put(PrefsContract.PREF_DONT_SHOW_AGAIN, (flags & DONT_SHOW_AGAIN) != 0);
+        }
+        if ((presence & HAS_DONT_SHOW_IF_CRASHED) != 0) {
+            values.put(PrefsContract.PREF_DONT_SHOW_IF_CRASHED, (flags & DONT_SHOW_IF_CRASHED) != 0);
+        }
+        if ((presence & HAS_DATE_FIRST_LAUNCH) != 0) {
+            values.put(PrefsContract.PREF_DATE_FIRST_LAUNCH, dateFirstLaunch);
+        }
+        if ((presence & HAS_LAUNCH_COUNT) != 0) {
+            values.put(PrefsContract.PREF_LAUNCH_COUNT, launchCount);
+        }
+        if ((presence & HAS_APP_VERSION_CODE) != 0) {
+            values.put(PrefsContract.PREF_APP_VERSION_CODE, appVersionCode);
+        }
+
+        readValues(in, values);
+    }
+
+    private static void writeRecord(DataOutputStream out, Map<String, Object> values) throws IOException {
+        Map<String, Object> others = new HashMap<String, Object>(values);
+        int presence = 0;
+        int flags = 0;
+
+        Object value = others.remove(LEGACY_APP_HAS_CRASHED);
+        if (Boolean.TRUE.equals(value)) {
+            presence |= HAS_APP_HAS_CRASHED;
+            flags |= APP_HAS_CRASHED;
+        }
+        value = others.remove(PrefsContract.PREF_DONT_SHOW_AGAIN);
+        if (value instanceof Boolean) {
+            presence |= HAS_DONT_SHOW_AGAIN;
+            flags |= (Boolean) value ? DONT_SHOW_AGAIN : 0;
+        }
+        value = others.remove(PrefsContract.PREF_DONT_SHOW_IF_CRASHED);
+        if (value instanceof Boolean) {
+            presence |= HAS_DONT_SHOW_IF_CRASHED;
+            flags |= (Boolean) value ? DONT_SHOW_IF_CRASHED : 0;
+        }
+        long dateFirstLaunch = 0;
+        value = others.remove(PrefsContract.PREF_DATE_FIRST_LAUNCH);
+        if (value instanceof Long) {
+            presence |= HAS_DATE_FIRST_LAUNCH;
+            dateFirstLaunch = (Long) value;
+        }
+        long launchCount = 0;
+        value = others.remove(PrefsContract.PREF_LAUNCH_COUNT);
+        if (value instanceof Long) {
+            presence |= HAS_LAUNCH_COUNT;
+            launchCount = (Long) value;
+        }
+        int appVersionCode = 0;
+        value = others.remove(PrefsContract.PREF_APP_VERSION_CODE);
+        if (value instanceof Integer) {
+            presence |= HAS_APP_VERSION_CODE;
+            appVersionCode = (Integer) value;
+        }
+
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeByte(presence);
+        out.writeByte(flags);
+        out.writeLong(dateFirstLaunch);
+        out.writeLong(launchCount);
+        out.writeInt(appVersionCode);
+        writeValues(out, others);
+    }
+
+    private static void readValues(DataInputStream in, Map<String, Object> values) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String key = in.readUTF();
+            byte type = in.readByte();
+            switch (type) {
+                case TYPE_BOOLEAN:
+                    values.put(key, in.readBoolean());
+                    break;
+                case TYPE_INT:
+                    values.put(key, in.readInt());
+                    break;
+                case TYPE_LONG:
+                    values.put(key, in.readLong());
+                    break;
+                default:
+                    throw new IOException("Unknown value type " + type);
+            }
+        }
+    }
+
+    private static void writeValues(DataOutputStream out, Map<String, Object> values) throws IOException {
+        out.writeInt(values.size());
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            Object value = entry.getValue();
+            out.writeUTF(entry.getKey());
+            if (value instanceof Boolean) {
+                out.writeByte(TYPE_BOOLEAN);
+                out.writeBoolean((Boolean) value);
+            } else if (value instanceof Integer) {
+                out.writeByte(TYPE_INT);
+                out.writeInt((Integer) value);
+            } else {
+                out.writeByte(TYPE_LONG);
+                out.writeLong((Long) value);
+            }
+        }
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            byte[] bytes = new byte[(int) file.length()];
+            int offset = 0;
+            while (offset < bytes.length) {
+                int read = in.read(bytes, offset, bytes.length - offset);
+                if (read < 0) {
+                    throw new IOException("Unexpected end of file");
+                }
+                offset += read;
+            }
+            return bytes;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.octopepper.apprate;
+
+import android.app.Activity;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.util.Log;
+import android.view.View;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Shows a dialog once the host activity has drawn its first frame and the main thread has become idle, so that inflating the
+ * dialog does not compete with the first content draw.
+ */
+class IdleDialogScheduler {
+
+    private static final String TAG = IdleDialogScheduler.class.getSimpleName();
+
+    private IdleDialogScheduler() {
+    }
+
+    /**
+     * Must be called on the main thread.
+     *
+     * @param activity       The activity the dialog is shown on. It is only weakly referenced.
+     * @param showDialog     Shows the dialog. Not run if the activity is finishing by then.
+     * @param maxDelayMillis The maximum delay after which the dialog is shown even if the main thread never became idle.
+     * @return The pending dialog, which can be cancelled.
+     */
+    static PendingDialog schedule(Activity activity, Runnable showDialog, long maxDelayMillis) {
+        PendingDialog pendingDialog = new PendingDialog(activity, showDialog);
+        pendingDialog.schedule(activity.getWindow().getDecorView(), maxDelayMillis);
+        return pendingDialog;
+    }
+
+    static class PendingDialog implements MessageQueue.IdleHandler, Runnable {
+
+        private final Handler mHandler = new Handler(Looper.getMainLooper());
+        private final WeakReference<Activity> mActivity;
+        private Runnable mShowDialog;
+
+        private PendingDialog(Activity activity, Runnable showDialog) {
+            mActivity = new WeakReference<Activity>(activity);
+            mShowDialog = showDialog;
+        }
+
+        private void schedule(View decorView, long maxDelayMillis) {
+            mHandler.postDelayed(this, maxDelayMillis);
+
+            // Runs during the first traversal of the window, the message posted from there runs once that frame is drawn.
+            decorView.post(new Runnable() {
+                @Override
+                public void run() {
+                    mHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (mShowDialog != null) {
+                                Looper.myQueue().addIdleHandler(PendingDialog.this);
+                            }
+                        }
+                    });
+                }
+            });
+        }
+
+        /**
+         * Drop the dialog if it has not been shown yet.
+         */
+        void cancel() {
+            mShowDialog = null;
+            mHandler.removeCallbacks(this);
+            Looper.myQueue().removeIdleHandler(this);
+        }
+
+        @Override
+        public boolean queueIdle() {
+            show();
+            return false;
+        }
+
+        /**
+         * The maximum delay has elapsed.
+         */
+        @Override
+        public void run() {
+            show();
+        }
+
+        private void show() {
+            Runnable showDialog = mShowDialog;
+            cancel();
+            if (showDialog == null) {
+                return;
+            }
+
+            Activity activity = mActivity.get();
+            if (activity == null || activity.isFinishing()) {
+                Log.d(TAG, "Host activity is gone, dropping the dialog.");
+                return;
+            }
+            showDialog.run();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.octopepper.apprate;
+
+import android.content.Context;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link FeedbackSender} that only keeps the messages it is given, for tests and development builds. It can be made to fail
+ * to exercise the retries.
+ */
+public class InMemoryFeedbackSender implements FeedbackSender {
+
+    private final List<String> mSentMessages = new ArrayList<String>();
+    private boolean mAvailable = true;
+
+    @Override
+    public synchronized void send(Context context, Feedback feedback) throws IOException {
+        if (!mAvailable) {
+            throw new IOException("Feedback sender unavailable");
+        }
+        mSentMessages.add(feedback.getMessage());
+    }
+
+    /**
+     * @param available If <code>false</code> every send fails, as when the device is offline.
+     */
+    public synchronized void setAvailable(boolean available) {
+        mAvailable = available;
+    }
+
+    /**
+     * @return The messages sent so far, oldest first.
+     */
+    public synchronized List<String> getSentMessages() {
+        return new ArrayList<String>(mSentMessages);
+    }
+}
@@ -0,0 +1,67 @@
+package com.octopepper.apprate;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A {@link RateStateStore} that is never persisted, for tests, benchmarks and simulations.
+ */
+public class InMemoryRateStateStore implements RateStateStore {
+
+    private final Map<String, Object> mValues = new HashMap<String, Object>();
+
+    @Override
+    public void preload() {
+    }
+
+    @Override
+    public synchronized boolean getBoolean(String key, boolean defaultValue) {
+        Object value = mValues.get(key);
+        return value instanceof Boolean ? (Boolean) value : defaultValue;
+    }
+
+    @Override
+    public synchronized int getInt(String key, int defaultValue) {
+        Object value = mValues.get(key);
+        return value instanceof Integer ? (Integer) value : defaultValue;
+    }
+
+    @Override
+    public synchronized long getLong(String key, long defaultValue) {
+        Object value = mValues.get(key);
+        return value instanceof Long ? (Long) value : defaultValue;
+    }
+
+    @Override
+    public synchronized RateStateStore putBoolean(String key, boolean value) {
+        mValues.put(key, value);
+        return this;
+    }
+
+    @Override
+    public synchronized RateStateStore putInt(String key, int value) {
+        mValues.put(key, value);
+        return this;
+    }
+
+    @Override
+    public synchronized RateStateStore putLong(String key, long value) {
+        mValues.put(key, value);
+        return this;
+    }
+
+    @Override
+    public synchronized RateStateStore clear() {
+        mValues.clear();
+        return this;
+    }
+
+    @Override
+    public void apply() {
+    }
+
+    @Override
+    public boolean commit() {
+        return true;
+    }
+}
@@ -0,0 +1,10 @@
+package com.octopepper.apprate;
+
+/**
+ * A {@link FeedbackSender} that opens an application the user interacts with, such as an email application.<br/>
+ * It is only called right after the user sends a feedback, for that feedback, and a failed delivery is not retried. The feedback
+ * left in the outbox by a previous launch is dropped rather than opened when the user does not expect it, typically when the
+ * application starts.
+ */
+public interface InteractiveFeedbackSender extends FeedbackSender {
+}
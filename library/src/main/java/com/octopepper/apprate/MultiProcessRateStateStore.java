@@ -0,0 +1,378 @@
+package com.octopepper.apprate;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A {@link RateStateStore} shared by all the processes of the application, for apps that call {@link AppRate} from several
+ * processes, e.g. a main process and a <code>:remote</code> service.<br/>
+ * The values live in a small memory-mapped file, so every process reads the current values without reloading anything, and the
+ * launch and event counters are incremented atomically across processes with {@link #addLong(String, long)}. Reads are lock-free.
+ * Writes take a lock on the file, increments included: they are not lock-free on Android, which cannot compare-and-set mapped
+ * memory.
+ * <p/>
+ * The mutations made with the <code>put</code> methods and {@link #clear()} are kept in memory, where this process reads them, until
+ * {@link #apply()} writes them to the file on the AppRate background thread, or {@link #commit()} on the calling thread. The other
+ * processes see them once written. {@link #addLong(String, long)} writes to the file at once, after the pending mutations.
+ * <p/>
+ * The file holds {@link SharedStateFile#SLOTS} values. The first time it is created, the state of the default
+ * {@link FileRateStateStore} is imported into it. When it is full, the values of the new keys are only kept in memory by the
+ * process that wrote them, an error is logged and {@link #commit()} returns <code>false</code>.
+ * <p/>
+ * Use a single instance per process.
+ */
+public class MultiProcessRateStateStore implements AtomicRateStateStore {
+
+    private static final String TAG = MultiProcessRateStateStore.class.getSimpleName();
+
+    public static final String FILE_NAME = "apprate_shared_state";
+
+    private final Context mContext;
+    private File mFile;
+    private volatile SharedStateFile mSharedFile;
+    private volatile RateStateStore mFallback;
+    // The values of the keys that did not fit in the file.
+    private final RateStateStore mOverflow = new InMemoryRateStateStore();
+    private final Set<String> mOverflowKeys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    // The mutations not written to the file yet, boxed as Boolean, Integer or Long.
+    private final ConcurrentMap<String, Object> mPending = new ConcurrentHashMap<String, Object>();
+    private final Object mWriteLock = new Object();
+    private volatile boolean mClearPending = false;
+    private int mClearCount = 0;
+    private boolean mWriteScheduled = false;
+
+    /**
+     * @param context A context. The file is only opened by the first access, which does not happen on the main thread with
+     *                {@link AppRate#initAsync()} or {@link AppRate#prewarm(Context)}.
+     */
+    public MultiProcessRateStateStore(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    /**
+     * @param file The file the values are shared in. Nothing is imported into it.
+     */
+    public MultiProcessRateStateStore(File file) {
+        mContext = null;
+        mFile = file;
+    }
+
+    @Override
+    public void preload() {
+        sharedFile();
+    }
+
+    @Override
+    public boolean getBoolean(String key, boolean defaultValue) {
+        Object value = mPending.get(key);
+        if (value != null) {
+            return value instanceof Boolean ? (Boolean) value : defaultValue;
+        }
+        if (mClearPending && !isOverflow(key)) {
+            return defaultValue;
+        }
+        SharedStateFile sharedFile = sharedFile();
+        if (sharedFile == null) {
+            return mFallback.getBoolean(key, defaultValue);
+        }
+        if (isOverflow(key)) {
+            return mOverflow.getBoolean(key, defaultValue);
+        }
+        try {
+            return sharedFile.get(key, SharedStateFile.TYPE_BOOLEAN, defaultValue ? 1 : 0) != 0;
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to read AppRate shared state", e);
+            return defaultValue;
+        }
+    }
+
+    @Override
+    public int getInt(String key, int defaultValue) {
+        Object value = mPending.get(key);
+        if (value != null) {
+            return value instanceof Integer ? (Integer) value : defaultValue;
+        }
+        if (mClearPending && !isOverflow(key)) {
+            return defaultValue;
+        }
+        SharedStateFile sharedFile = sharedFile();
+        if (sharedFile == null) {
+            return mFallback.getInt(key, defaultValue);
+        }
+        if (isOverflow(key)) {
+            return mOverflow.getInt(key, defaultValue);
+        }
+        try {
+            return (int) sharedFile.get(key, SharedStateFile.TYPE_INT, defaultValue);
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to read AppRate shared state", e);
+            return defaultValue;
+        }
+    }
+
+    @Override
+    public long getLong(String key, long defaultValue) {
+        Object value = mPending.get(key);
+        if (value != null) {
+            return value instanceof Long ? (Long) value : defaultValue;
+        }
+        if (mClearPending && !isOverflow(key)) {
+            return defaultValue;
+        }
+        SharedStateFile sharedFile = sharedFile();
+        if (sharedFile == null) {
+            return mFallback.getLong(key, defaultValue);
+        }
+        if (isOverflow(key)) {
+            return mOverflow.getLong(key, defaultValue);
+        }
+        try {
+            return sharedFile.get(key, SharedStateFile.TYPE_LONG, defaultValue);
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to read AppRate shared state", e);
+            return defaultValue;
+        }
+    }
+
+    @Override
+    public RateStateStore putBoolean(String key, boolean value) {
+        put(key, value);
+        return this;
+    }
+
+    @Override
+    public RateStateStore putInt(String key, int value) {
+        put(key, value);
+        return this;
+    }
+
+    @Override
+    public RateStateStore putLong(String key, long value) {
+        put(key, value);
+        return this;
+    }
+
+    /**
+     * Write the pending mutations if they touch the value, then add to it in the file, under its lock.
+     */
+    @Override
+    public long addLong(String key, long delta) {
+        if (mClearPending || mPending.containsKey(key)) {
+            writeBack();
+        }
+        SharedStateFile sharedFile = sharedFile();
+        if (sharedFile == null) {
+            return addInMemory(mFallback, key, delta);
+        }
+        if (isOverflow(key)) {
+            return addInMemory(mOverflow, key, delta);
+        }
+        try {
+            return sharedFile.add(key, delta);
+        } catch (SharedStateFile.FullException e) {
+            overflow(key, 0L, e);
+            return addInMemory(mOverflow, key, delta);
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to update AppRate shared state", e);
+            return getLong(key, 0);
+        }
+    }
+
+    @Override
+    public synchronized RateStateStore clear() {
+        mPending.clear();
+        mOverflow.clear();
+        mOverflowKeys.clear();
+        mClearPending = true;
+        mClearCount++;
+        return this;
+    }
+
+    @Override
+    public void apply() {
+        synchronized (this) {
+            if ((mPending.isEmpty() && !mClearPending) || mWriteScheduled) {
+                return;
+            }
+            mWriteScheduled = true;
+        }
+
+        AppRateExecutors.background().execute(new Runnable() {
+            @Override
+            public void run() {
+                writeBack();
+            }
+        });
+    }
+
+    /**
+     * Write the pending mutations and force the page to the storage, synchronously.
+     *
+     * @return <code>false</code> if the file could not be mapped or written, or if it is full and some values are only kept in
+     * memory.
+     */
+    @Override
+    public boolean commit() {
+        boolean written = writeBack();
+        SharedStateFile sharedFile = sharedFile();
+        if (sharedFile == null) {
+            return false;
+        }
+        sharedFile.force();
+        return written && mOverflowKeys.isEmpty();
+    }
+
+    private synchronized void put(String key, Object value) {
+        if (isOverflow(key)) {
+            putInMemory(mOverflow, key, value);
+        } else {
+            mPending.put(key, value);
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the pending mutations were written, to the file or to {@link #mFallback}.
+     */
+    private boolean writeBack() {
+        synchronized (mWriteLock) {
+            Map<String, Object> snapshot;
+            boolean clear;
+            int clearCount;
+            synchronized (this) {
+                mWriteScheduled = false;
+                if (mPending.isEmpty() && !mClearPending) {
+                    return true;
+                }
+                snapshot = new HashMap<String, Object>(mPending);
+                clear = mClearPending;
+                clearCount = mClearCount;
+            }
+
+            boolean written = write(snapshot, clear);
+            if (written) {
+                synchronized (this) {
+                    // Unless cleared meanwhile, the values put again since the snapshot are still pending.
+                    if (mClearCount == clearCount) {
+                        mClearPending = false;
+                        for (Map.Entry<String, Object> entry : snapshot.entrySet()) {
+                            mPending.remove(entry.getKey(), entry.getValue());
+                        }
+                    }
+                }
+            }
+            return written;
+        }
+    }
+
+    private boolean write(Map<String, Object> values, boolean clear) {
+        SharedStateFile sharedFile = sharedFile();
+        if (sharedFile == null) {
+            if (clear) {
+                mFallback.clear();
+            }
+            for (Map.Entry<String, Object> entry : values.entrySet()) {
+                putInMemory(mFallback, entry.getKey(), entry.getValue());
+            }
+            return true;
+        }
+
+        try {
+            if (clear) {
+                sharedFile.clear();
+            }
+            try {
+                sharedFile.putAll(values);
+            } catch (SharedStateFile.FullException e) {
+                // Written again one by one, to find the values that did not fit.
+                for (Map.Entry<String, Object> entry : values.entrySet()) {
+                    try {
+                        sharedFile.putAll(Collections.singletonMap(entry.getKey(), entry.getValue()));
+                    } catch (SharedStateFile.FullException full) {
+                        overflow(entry.getKey(), entry.getValue(), full);
+                    }
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to write AppRate shared state", e);
+            return false;
+        }
+    }
+
+    private boolean isOverflow(String key) {
+        return !mOverflowKeys.isEmpty() && mOverflowKeys.contains(key);
+    }
+
+    private void overflow(String key, Object value, SharedStateFile.FullException e) {
+        Log.e(TAG, "Keeping " + key + " in memory only", e);
+        putInMemory(mOverflow, key, value);
+        mOverflowKeys.add(key);
+    }
+
+    private static void putInMemory(RateStateStore store, String key, Object value) {
+        if (value instanceof Boolean) {
+            store.putBoolean(key, (Boolean) value);
+        } else if (value instanceof Integer) {
+            store.putInt(key, (Integer) value);
+        } else if (value instanceof Long) {
+            store.putLong(key, (Long) value);
+        }
+    }
+
+    private static long addInMemory(RateStateStore store, String key, long delta) {
+        synchronized (store) {
+            long value = store.getLong(key, 0) + delta;
+            store.putLong(key, value);
+            return value;
+        }
+    }
+
+    /**
+     * @return The mapped file, opened by the first call, or <code>null</code> if it could not be, the values then being kept in
+     * memory by {@link #mFallback} for the lifetime of the process.
+     */
+    private SharedStateFile sharedFile() {
+        SharedStateFile sharedFile = mSharedFile;
+        if (sharedFile != null) {
+            return sharedFile;
+        }
+        return openSharedFile();
+    }
+
+    private synchronized SharedStateFile openSharedFile() {
+        if (mSharedFile != null || mFallback != null) {
+            return mSharedFile;
+        }
+
+        if (mFile == null) {
+            mFile = new File(mContext.getFilesDir(), FILE_NAME);
+        }
+        SharedStateFile sharedFile;
+        try {
+            sharedFile = SharedStateFile.open(mFile);
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to map AppRate shared state, keeping it in memory", e);
+            mFallback = new InMemoryRateStateStore();
+            return null;
+        }
+
+        if (sharedFile.isCreated() && mContext != null) {
+            try {
+                sharedFile.putAll(new FileRateStateStore(mContext).load());
+            } catch (IOException e) {
+                Log.e(TAG, "Unable to import AppRate state", e);
+            }
+        }
+        mSharedFile = sharedFile;
+        return sharedFile;
+    }
+}
@@ -4,11 +4,47 @@ public class PrefsContract {
 
     public static final String SHARED_PREFS_NAME = "prefs_apprate";
 
+    /**
+     * @deprecated Crashes are now recorded with their time in a separate crash log, this sticky flag is no longer read.
+     */
+    @Deprecated
     public static final String PREF_APP_HAS_CRASHED = "pref_app_has_crashed";
     public static final String PREF_DATE_FIRST_LAUNCH = "pref_date_first_launch";
     public static final String PREF_LAUNCH_COUNT = "pref_launch_count";
     public static final String PREF_DONT_SHOW_AGAIN = "pref_dont_show_again";
     public static final String PREF_DONT_SHOW_IF_CRASHED = "pref_dont_show_if_crashed";
     public static final String PREF_APP_VERSION_CODE = "pref_app_version_code";
+    public static final String PREF_PROMPT_AT = "pref_prompt_at";
+    public static final String PREF_PROMPT_SUPPRESSION = "pref_prompt_suppression";
+    public static final String PREF_PROMPT_UNMET_CONDITION = "pref_prompt_unmet_condition";
+    public static final String PREF_INSTALL_ID = "pref_install_id";
+    public static final String PREF_FOREGROUND_MILLIS = "pref_foreground_millis";
+    public static final String PREF_EVENT_COUNT_PREFIX = "pref_event_count_";
+    public static final String PREF_EXPERIMENT_VARIANT_PREFIX = "pref_experiment_variant_";
+    public static final String PREF_CONDITION_MET_PREFIX = "pref_condition_met_";
+
+    /**
+     * @param event The name of a significant event.
+     * @return The key of the number of times the event occurred.
+     */
+    public static String eventCountKey(String event) {
+        return PREF_EVENT_COUNT_PREFIX + event;
+    }
+
+    /**
+     * @param experiment The name of an {@link AppRateExperiment}.
+     * @return The key of the index of the variant the install is assigned to.
+     */
+    public static String experimentVariantKey(String experiment) {
+        return PREF_EXPERIMENT_VARIANT_PREFIX + experiment;
+    }
+
+    /**
+     * @param condition The name of a cacheable {@link PromptCondition}.
+     * @return The key of whether the condition has been met.
+     */
+    public static String conditionMetKey(String condition) {
+        return PREF_CONDITION_MET_PREFIX + condition;
+    }
 
 }
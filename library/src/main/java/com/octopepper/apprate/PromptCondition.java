@@ -0,0 +1,51 @@
+package com.octopepper.apprate;
+
+/**
+ * A condition that must be met for the rate dialog to be shown, in addition to the launch, day, event and foreground time thresholds,
+ * for example a remote flag or a state of the application.<br/>
+ * The conditions are evaluated from the cheapest to the most expensive, and the evaluation stops at the first one that is not met.
+ * They are evaluated on a background thread, when a launch may show the dialog and when the application goes to the background to
+ * precompute the decision of the next launch. A condition that becomes met in between is seen by the next precomputation.
+ */
+public interface PromptCondition {
+
+    /**
+     * The cost of a condition that only reads its own fields or arguments.
+     */
+    int COST_MEMORY = 0;
+
+    /**
+     * The cost of a condition that reads the AppRate state.
+     */
+    int COST_STATE = 10;
+
+    /**
+     * The cost of a condition that reads files, queries a system service or another process.
+     */
+    int COST_EXPENSIVE = 100;
+
+    /**
+     * @return The name of the condition, unique among the conditions of an {@link AppRate}. A condition replaces the one of the same
+     * name. The name of a cacheable condition must change when what it checks changes.
+     */
+    String getName();
+
+    /**
+     * @return The relative cost of {@link #isMet(RateStateStore, long)}, for example {@link #COST_STATE}.
+     */
+    int getCost();
+
+    /**
+     * @return <code>true</code> if once met, the condition stays met until the tracking is restarted, after the user asked to be
+     * reminded later or the application was upgraded with resetOnAppUpgrade. It is then only evaluated until it is met, the result
+     * being remembered in the AppRate state.
+     */
+    boolean isCacheable();
+
+    /**
+     * @param store       The AppRate state.
+     * @param launchCount The number of launches counted by the time the dialog would be shown.
+     * @return <code>true</code> if the condition is met.
+     */
+    boolean isMet(RateStateStore store, long launchCount);
+}
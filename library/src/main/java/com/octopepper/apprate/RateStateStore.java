@@ -0,0 +1,46 @@
+package com.octopepper.apprate;
+
+/**
+ * Storage for the AppRate tracking state, keyed by the {@link PrefsContract} keys.<br/>
+ * Reads are served from memory. Mutations are only persisted by {@link #apply()} or {@link #commit()}, so that several mutations
+ * cost a single write.
+ */
+public interface RateStateStore {
+
+    /**
+     * Load the values now if they are not loaded yet, so that the next read does not block on the storage.
+     */
+    void preload();
+
+    boolean getBoolean(String key, boolean defaultValue);
+
+    int getInt(String key, int defaultValue);
+
+    long getLong(String key, long defaultValue);
+
+    RateStateStore putBoolean(String key, boolean value);
+
+    RateStateStore putInt(String key, int value);
+
+    RateStateStore putLong(String key, long value);
+
+    /**
+     * Remove all the values.
+     *
+     * @return This {@link RateStateStore} object to allow chaining.
+     */
+    RateStateStore clear();
+
+    /**
+     * Schedule the pending mutations to be written back on a background thread.<br/>
+     * Calls made while a write back is already scheduled are coalesced into it.
+     */
+    void apply();
+
+    /**
+     * Write the pending mutations back synchronously.
+     *
+     * @return <code>true</code> if the values were successfully written.
+     */
+    boolean commit();
+}
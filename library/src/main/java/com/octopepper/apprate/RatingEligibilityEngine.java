@@ -0,0 +1,620 @@
+package com.octopepper.apprate;
+
+/**
+ * Decides whether the rate dialog should be shown, from the AppRate state and the configured thresholds.<br/>
+ * The dialog is never shown before a time precomputed from the days since the first launch, the crashes and whether the user declined,
+ * so that the usual not yet eligible launch is a single comparison. After that time, the launch, event and foreground time thresholds
+ * and the custom {@link PromptCondition}s are evaluated from the cheapest to the most expensive, up to the first that is not met.<br/>
+ * {@link #onSessionStart(SessionHost)} and {@link #onSessionEnd(SessionHost, boolean, long)} are the sequence AppRate runs over a
+ * session, so that the simulator replays users exactly as AppRate would decide for them.<br/>
+ * It has no dependency on Android, so the decision can be measured and tested on the JVM with any {@link RateStateStore} and
+ * {@link Clock}. The engine only mutates the store, writing it back is left to the caller.<br/>
+ * Its methods are synchronized, so that the precomputation on a background thread and the answers to the dialog on the main thread
+ * are applied one after the other.
+ */
+public class RatingEligibilityEngine {
+
+    public static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000L;
+
+    private static final long NEVER = Long.MAX_VALUE;
+    private static final long UNKNOWN = Long.MIN_VALUE;
+    private static final long PROMPT_AT_UNKNOWN = -1;
+
+    /**
+     * A source of the current time.
+     */
+    public interface Clock {
+        long currentTimeMillis();
+    }
+
+    /**
+     * The times of the last crashes of the application.
+     */
+    public interface CrashHistory {
+        /**
+         * @param n The number of more recent crashes, 0 for the last crash.
+         * @return The time of the crash, or 0 if fewer crashes are known.
+         */
+        long getCrashTime(int n);
+    }
+
+    /**
+     * What a session needs from the application it runs in.
+     */
+    public interface SessionHost {
+        /**
+         * @return The version code of the running application.
+         */
+        int getVersionCode();
+
+        /**
+         * The tracking has been reset after an upgrade, the crashes must be forgotten too.
+         */
+        void onTrackingReset();
+
+        /**
+         * Called before the criteria are evaluated, to bring the crash history and the counters of the significant events up to
+         * date in the store.
+         */
+        void beforeEvaluation();
+    }
+
+    public static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    /**
+     * The outcome of {@link #onLaunch()}, with the reason why the dialog is not shown.<br/>
+     * Each decision has a stable code, under which the reason precomputed by {@link #precomputeNextLaunch(boolean)} is stored.
+     */
+    public enum Decision {
+        SHOW(0),
+        NOT_ENOUGH_LAUNCHES(1),
+        NOT_ENOUGH_DAYS(2),
+        NOT_ENOUGH_EVENTS(3),
+        NOT_ENOUGH_FOREGROUND_TIME(4),
+        /**
+         * A {@link PromptCondition} added with {@link #addCondition(PromptCondition)} is not met.
+         */
+        CONDITION_NOT_MET(5),
+        SUPPRESSED_DONT_SHOW_AGAIN(6),
+        SUPPRESSED_CRASHED(7),
+        /**
+         * Not shown, as precomputed by {@link #precomputeNextLaunch(boolean)} by a version of AppRate that did not store the reason.
+         */
+        PRECOMPUTED_NOT_ELIGIBLE(8);
+
+        private final int mCode;
+
+        Decision(int code) {
+            mCode = code;
+        }
+
+        /**
+         * @return <code>true</code> if the dialog should be shown.
+         */
+        public boolean isShow() {
+            return this == SHOW;
+        }
+
+        private static Decision fromCode(int code) {
+            for (Decision decision : values()) {
+                if (decision.mCode == code) {
+                    return decision;
+                }
+            }
+            return PRECOMPUTED_NOT_ELIGIBLE;
+        }
+    }
+
+    private final RateStateStore mStore;
+    private final Clock mClock;
+    private long mMinDaysUntilPrompt = 0;
+    private long mMinForegroundMillis = 0;
+    private boolean mResetOnAppUpgrade = false;
+    private CrashHistory mCrashHistory;
+    private int mMaxCrashes = -1;
+    private long mCrashWindowMillis;
+
+    // The conditions sorted by cost, with the decision when each is not met, the key of its memoized result if it is cacheable and
+    // whether it is known to be met.
+    private PromptCondition[] mConditions = new PromptCondition[0];
+    private Decision[] mUnmetDecisions = new Decision[0];
+    private String[] mMetKeys = new String[0];
+    private boolean[] mMet = new boolean[0];
+
+    // Precomputed from the state and the thresholds, so that the usual not yet eligible launch is a single comparison.
+    private long mNextEligibleAt = UNKNOWN;
+    private Decision mSuppression;
+    private long mCrashSuppressedUntil;
+
+    // The name of the condition that was not met by the last decision, if any.
+    private String mUnmetCondition;
+    private boolean mLaunchCounted;
+
+    public RatingEligibilityEngine(RateStateStore store, Clock clock) {
+        mStore = store;
+        mClock = clock;
+    }
+
+    /**
+     * @param minLaunchesUntilPrompt The minimum number of launches before the dialog can be shown.
+     * @return This {@link RatingEligibilityEngine} object to allow chaining.
+     */
+    public synchronized RatingEligibilityEngine setMinLaunchesUntilPrompt(long minLaunchesUntilPrompt) {
+        putCondition(new Threshold("apprate_min_launches", PromptCondition.COST_MEMORY, null, minLaunchesUntilPrompt),
+                Decision.NOT_ENOUGH_LAUNCHES);
+        return this;
+    }
+
+    /**
+     * @param minDaysUntilPrompt The minimum number of days since the first launch before the dialog can be shown.
+     * @return This {@link RatingEligibilityEngine} object to allow chaining.
+     */
+    public synchronized RatingEligibilityEngine setMinDaysUntilPrompt(long minDaysUntilPrompt) {
+        mMinDaysUntilPrompt = minDaysUntilPrompt;
+        invalidate();
+        return this;
+    }
+
+    /**
+     * @param minForegroundMinutesUntilPrompt The minimum total time spent with the application in the foreground, in minutes, before
+     *                                        the dialog can be shown.
+     * @return This {@link RatingEligibilityEngine} object to allow chaining.
+     */
+    public synchronized RatingEligibilityEngine setMinForegroundMinutesUntilPrompt(long minForegroundMinutesUntilPrompt) {
+        mMinForegroundMillis = minForegroundMinutesUntilPrompt * 60 * 1000L;
+        putCondition(new Threshold("apprate_min_foreground_time", PromptCondition.COST_STATE, PrefsContract.PREF_FOREGROUND_MILLIS,
+                mMinForegroundMillis), Decision.NOT_ENOUGH_FOREGROUND_TIME);
+        return this;
+    }
+
+    /**
+     * @param resetOnAppUpgrade If <code>true</code> the tracking is reset when {@link #onSessionStart(SessionHost)} or
+     *                          {@link #onSessionEnd(SessionHost, boolean, long)} finds that the application has been upgraded.
+     * @return This {@link RatingEligibilityEngine} object to allow chaining.
+     */
+    public synchronized RatingEligibilityEngine setResetOnAppUpgrade(boolean resetOnAppUpgrade) {
+        mResetOnAppUpgrade = resetOnAppUpgrade;
+        return this;
+    }
+
+    /**
+     * @param crashHistory The crashes checked by {@link #setMaxCrashesUntilPrompt(int, long)}.
+     * @return This {@link RatingEligibilityEngine} object to allow chaining.
+     */
+    public synchronized RatingEligibilityEngine setCrashHistory(CrashHistory crashHistory) {
+        mCrashHistory = crashHistory;
+        invalidate();
+        return this;
+    }
+
+    /**
+     * @param maxCrashes The maximum number of crashes in the last days for the dialog to be shown, or -1 to ignore crashes.
+     * @param days       The number of days after which a crash is forgotten.
+     * @return This {@link RatingEligibilityEngine} object to allow chaining.
+     */
+    public synchronized RatingEligibilityEngine setMaxCrashesUntilPrompt(int maxCrashes, long days) {
+        mMaxCrashes = maxCrashes;
+        mCrashWindowMillis = days * DAY_IN_MILLIS;
+        invalidate();
+        return this;
+    }
+
+    /**
+     * @param event                The name of a significant event, as recorded with {@link AppRate#recordEvent(String)}.
+     * @param minEventsUntilPrompt The minimum number of times the event must have occurred before the dialog can be shown.
+     * @return This {@link RatingEligibilityEngine} object to allow chaining.
+     */
+    public synchronized RatingEligibilityEngine setMinEventsUntilPrompt(String event, long minEventsUntilPrompt) {
+        putCondition(new Threshold("apprate_min_events_" + event, PromptCondition.COST_STATE, PrefsContract.eventCountKey(event),
+                minEventsUntilPrompt), Decision.NOT_ENOUGH_EVENTS);
+        return this;
+    }
+
+    /**
+     * @param condition A condition that must be met for the dialog to be shown, replacing the condition of the same name.
+     * @return This {@link RatingEligibilityEngine} object to allow chaining.
+     */
+    public synchronized RatingEligibilityEngine addCondition(PromptCondition condition) {
+        putCondition(condition, Decision.CONDITION_NOT_MET);
+        return this;
+    }
+
+    /**
+     * Save off the current version of the application, and reset the tracking if it has been upgraded and resetOnAppUpgrade is set.
+     *
+     * @param currentAppVersionCode The version code of the running application.
+     * @param resetOnAppUpgrade     If <code>true</code> the tracking is reset when the application has been upgraded.
+     * @return <code>true</code> if the tracking has been reset.
+     */
+    public synchronized boolean performAppUpgradeCheck(int currentAppVersionCode, boolean resetOnAppUpgrade) {
+        int lastRunAppVersionCode = mStore.getInt(PrefsContract.PREF_APP_VERSION_CODE, -1);
+        boolean reset = false;
+
+        // If the version has been initialized, we are being upgraded, and the user enabled resetting on upgrading
+        if (lastRunAppVersionCode != -1 && currentAppVersionCode > lastRunAppVersionCode && resetOnAppUpgrade) {
+            // Also forgets the precomputed decision. The install id is kept so that experiment variants stay the same.
+            long installId = mStore.getLong(PrefsContract.PREF_INSTALL_ID, 0);
+            mStore.clear();
+            if (installId != 0) {
+                mStore.putLong(PrefsContract.PREF_INSTALL_ID, installId);
+            }
+            invalidate();
+            reset = true;
+        }
+
+        // Save off the current app version code
+        if (reset || lastRunAppVersionCode != currentAppVersionCode) {
+            mStore.putInt(PrefsContract.PREF_APP_VERSION_CODE, currentAppVersionCode);
+        }
+        return reset;
+    }
+
+    /**
+     * Start a session: check for an upgrade, then take the decision precomputed by the end of the previous session, or count the
+     * launch and decide with all the criteria if it may show the dialog.
+     *
+     * @param host The application.
+     * @return The decision.
+     */
+    public synchronized Decision onSessionStart(SessionHost host) {
+        // Before the precomputed decision is trusted, as an upgrade may reset it.
+        if (performAppUpgradeCheck(host.getVersionCode(), mResetOnAppUpgrade)) {
+            host.onTrackingReset();
+        }
+        if (!isPromptPending()) {
+            mLaunchCounted = false;
+            return getPrecomputedDecision();
+        }
+
+        host.beforeEvaluation();
+        // The state may have been changed since the engine last read it, for example by the previous session.
+        invalidate();
+        mLaunchCounted = true;
+        return onLaunch();
+    }
+
+    /**
+     * @return <code>true</code> if the last {@link #onSessionStart(SessionHost)} counted the launch and modified the state, in which
+     * case the launch must not be counted again by {@link #onSessionEnd(SessionHost, boolean, long)}.
+     */
+    public synchronized boolean isLaunchCounted() {
+        return mLaunchCounted;
+    }
+
+    /**
+     * End a session, typically when the application goes to the background: add its foreground time and precompute the decision of
+     * the next session.
+     *
+     * @param host             The application.
+     * @param countLaunch      <code>true</code> if the launch of the session was not counted by {@link #onSessionStart(SessionHost)}.
+     * @param foregroundMillis The time spent in the foreground since the last call.
+     */
+    public synchronized void onSessionEnd(SessionHost host, boolean countLaunch, long foregroundMillis) {
+        if (performAppUpgradeCheck(host.getVersionCode(), mResetOnAppUpgrade)) {
+            host.onTrackingReset();
+        }
+        host.beforeEvaluation();
+
+        // The state may have been changed by the answers to the dialog since the decision.
+        invalidate();
+        addForegroundTime(foregroundMillis);
+        precomputeNextLaunch(countLaunch);
+    }
+
+    /**
+     * Register a launch of the application and decide whether the dialog should be shown.<br/>
+     * The launch counter and the date of the first launch are only tracked while the dialog may still be shown.
+     *
+     * @return The decision.
+     */
+    public synchronized Decision onLaunch() {
+        mUnmetCondition = null;
+        long nextEligibleAt = getNextEligibleAt();
+        if (nextEligibleAt == NEVER) {
+            return mSuppression;
+        }
+
+        long launchCount = addLong(mStore, PrefsContract.PREF_LAUNCH_COUNT, 1);
+
+        long now = mClock.currentTimeMillis();
+        if (now < mCrashSuppressedUntil) {
+            return Decision.SUPPRESSED_CRASHED;
+        }
+        if (now < nextEligibleAt) {
+            return Decision.NOT_ENOUGH_DAYS;
+        }
+        int unmetCondition = findUnmetCondition(launchCount);
+        if (unmetCondition < 0) {
+            return Decision.SHOW;
+        }
+        mUnmetCondition = mConditions[unmetCondition].getName();
+        return mUnmetDecisions[unmetCondition];
+    }
+
+    /**
+     * Whether {@link #onLaunch()} must be called for the current launch, according to {@link #precomputeNextLaunch(boolean)}.
+     * A single value is read.
+     *
+     * @return <code>false</code> if the dialog will not be shown, in which case the launch is counted by the next
+     * {@link #precomputeNextLaunch(boolean)}.
+     */
+    public synchronized boolean isPromptPending() {
+        long promptAt = mStore.getLong(PrefsContract.PREF_PROMPT_AT, PROMPT_AT_UNKNOWN);
+        return promptAt == PROMPT_AT_UNKNOWN || mClock.currentTimeMillis() >= promptAt;
+    }
+
+    /**
+     * Decide ahead of time from when the next launch may show the dialog, typically when the application goes to the background.
+     * The events and crashes that happen in between are taken into account by the next precomputation.
+     *
+     * @param countLaunch <code>true</code> to count the launch that is ending, if {@link #onLaunch()} has not counted it.
+     */
+    public synchronized void precomputeNextLaunch(boolean countLaunch) {
+        long nextEligibleAt = getNextEligibleAt();
+        long promptAt = NEVER;
+        Decision suppression = mSuppression;
+        int unmetCondition = -1;
+        if (nextEligibleAt != NEVER) {
+            long launchCount = countLaunch
+                    ? addLong(mStore, PrefsContract.PREF_LAUNCH_COUNT, 1)
+                    : mStore.getLong(PrefsContract.PREF_LAUNCH_COUNT, 0);
+            unmetCondition = findUnmetCondition(launchCount + 1);
+            if (unmetCondition >= 0) {
+                suppression = mUnmetDecisions[unmetCondition];
+            } else {
+                promptAt = Math.max(nextEligibleAt, mCrashSuppressedUntil);
+                suppression = mCrashSuppressedUntil > nextEligibleAt ? Decision.SUPPRESSED_CRASHED : Decision.NOT_ENOUGH_DAYS;
+            }
+        }
+        mStore.putLong(PrefsContract.PREF_PROMPT_AT, promptAt)
+                .putInt(PrefsContract.PREF_PROMPT_SUPPRESSION, suppression.mCode)
+                .putInt(PrefsContract.PREF_PROMPT_UNMET_CONDITION,
+                        unmetCondition >= 0 ? mConditions[unmetCondition].getName().hashCode() : 0);
+    }
+
+    /**
+     * The reason why the current launch does not show the dialog, when {@link #isPromptPending()} is <code>false</code>, as stored
+     * by {@link #precomputeNextLaunch(boolean)}. A condition that is not met is only known by the next launch, which may have passed
+     * the days too, so it is reported rather than the days.
+     *
+     * @return The decision of the current launch, without evaluating anything.
+     */
+    public synchronized Decision getPrecomputedDecision() {
+        Decision decision = Decision.fromCode(
+                mStore.getInt(PrefsContract.PREF_PROMPT_SUPPRESSION, Decision.PRECOMPUTED_NOT_ELIGIBLE.mCode));
+        mUnmetCondition = null;
+        int unmetCondition = mStore.getInt(PrefsContract.PREF_PROMPT_UNMET_CONDITION, 0);
+        if (unmetCondition != 0) {
+            for (PromptCondition condition : mConditions) {
+                if (condition.getName().hashCode() == unmetCondition) {
+                    mUnmetCondition = condition.getName();
+                }
+            }
+        }
+        return decision;
+    }
+
+    /**
+     * @return The name of the {@link PromptCondition}, or of the launch, event or foreground time threshold, that was not met by the
+     * last {@link #onLaunch()} or {@link #getPrecomputedDecision()}, or <code>null</code>.
+     */
+    public synchronized String getUnmetCondition() {
+        return mUnmetCondition;
+    }
+
+    /**
+     * Add the time the application has just spent in the foreground, typically when it goes to the background.<br/>
+     * The time is only tracked while the dialog may still be shown and the minimum is not reached yet, so that most sessions do not
+     * modify the store.
+     *
+     * @param foregroundMillis The time spent in the foreground since the last call.
+     */
+    public synchronized void addForegroundTime(long foregroundMillis) {
+        if (foregroundMillis <= 0 || mStore.getLong(PrefsContract.PREF_FOREGROUND_MILLIS, 0) >= mMinForegroundMillis
+                || getNextEligibleAt() == NEVER) {
+            return;
+        }
+        addLong(mStore, PrefsContract.PREF_FOREGROUND_MILLIS, foregroundMillis);
+    }
+
+    /**
+     * Never show the dialog again, after the user rated the application or declined to.
+     */
+    public synchronized void doNotShowAgain() {
+        mStore.putBoolean(PrefsContract.PREF_DONT_SHOW_AGAIN, true)
+                .putLong(PrefsContract.PREF_PROMPT_AT, NEVER)
+                .putInt(PrefsContract.PREF_PROMPT_SUPPRESSION, Decision.SUPPRESSED_DONT_SHOW_AGAIN.mCode)
+                .putInt(PrefsContract.PREF_PROMPT_UNMET_CONDITION, 0);
+        invalidate();
+    }
+
+    /**
+     * Restart the launch, day, event and foreground time tracking from now, after the user asked to be reminded later. The memoized
+     * results of the cacheable conditions are forgotten.
+     */
+    public synchronized void resetLaunchData() {
+        mStore.putLong(PrefsContract.PREF_DATE_FIRST_LAUNCH, mClock.currentTimeMillis())
+                .putLong(PrefsContract.PREF_LAUNCH_COUNT, 0)
+                .putLong(PrefsContract.PREF_FOREGROUND_MILLIS, 0)
+                .putLong(PrefsContract.PREF_PROMPT_AT, PROMPT_AT_UNKNOWN);
+        for (int i = 0; i < mConditions.length; i++) {
+            if (mConditions[i] instanceof Threshold && ((Threshold) mConditions[i]).mKey != null) {
+                mStore.putLong(((Threshold) mConditions[i]).mKey, 0);
+            }
+            if (mMetKeys[i] != null) {
+                mStore.putBoolean(mMetKeys[i], false);
+            }
+        }
+        invalidate();
+    }
+
+    /**
+     * Forget the precomputed state. Must be called if the store has been modified behind the engine's back.
+     */
+    public synchronized void invalidate() {
+        mNextEligibleAt = UNKNOWN;
+        mSuppression = null;
+        mCrashSuppressedUntil = 0;
+        for (int i = 0; i < mMet.length; i++) {
+            mMet[i] = false;
+        }
+    }
+
+    /**
+     * Evaluate the conditions from the cheapest, up to the first that is not met. A cacheable condition is only evaluated until it is
+     * met, which is remembered in the state.
+     *
+     * @param launchCount The number of launches counted by the time the dialog would be shown.
+     * @return The index of the first condition that is not met, or -1 if they all are.
+     */
+    private int findUnmetCondition(long launchCount) {
+        for (int i = 0; i < mConditions.length; i++) {
+            if (mMet[i]) {
+                continue;
+            }
+            String metKey = mMetKeys[i];
+            if (metKey != null && mStore.getBoolean(metKey, false)) {
+                mMet[i] = true;
+                continue;
+            }
+            if (!mConditions[i].isMet(mStore, launchCount)) {
+                return i;
+            }
+            if (metKey != null) {
+                mMet[i] = true;
+                mStore.putBoolean(metKey, true);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Add a condition, or replace the one of the same name, keeping them sorted by cost and in the order they were added for the
+     * same cost.
+     */
+    private void putCondition(PromptCondition condition, Decision unmetDecision) {
+        int count = mConditions.length;
+        int index = 0;
+        while (index < count && !mConditions[index].getName().equals(condition.getName())) {
+            index++;
+        }
+        if (index == count) {
+            PromptCondition[] conditions = new PromptCondition[count + 1];
+            Decision[] unmetDecisions = new Decision[count + 1];
+            String[] metKeys = new String[count + 1];
+            System.arraycopy(mConditions, 0, conditions, 0, count);
+            System.arraycopy(mUnmetDecisions, 0, unmetDecisions, 0, count);
+            System.arraycopy(mMetKeys, 0, metKeys, 0, count);
+            mConditions = conditions;
+            mUnmetDecisions = unmetDecisions;
+            mMetKeys = metKeys;
+            mMet = new boolean[count + 1];
+        }
+        mConditions[index] = condition;
+        mUnmetDecisions[index] = unmetDecision;
+        mMetKeys[index] = condition.isCacheable() ? PrefsContract.conditionMetKey(condition.getName()) : null;
+
+        for (int i = 1; i < mConditions.length; i++) {
+            for (int j = i; j > 0 && mConditions[j - 1].getCost() > mConditions[j].getCost(); j--) {
+                swapConditions(j - 1, j);
+            }
+        }
+        for (int i = 0; i < mMet.length; i++) {
+            mMet[i] = false;
+        }
+    }
+
+    private void swapConditions(int i, int j) {
+        PromptCondition condition = mConditions[i];
+        mConditions[i] = mConditions[j];
+        mConditions[j] = condition;
+        Decision unmetDecision = mUnmetDecisions[i];
+        mUnmetDecisions[i] = mUnmetDecisions[j];
+        mUnmetDecisions[j] = unmetDecision;
+        String metKey = mMetKeys[i];
+        mMetKeys[i] = mMetKeys[j];
+        mMetKeys[j] = metKey;
+    }
+
+    private long getNextEligibleAt() {
+        if (mNextEligibleAt == UNKNOWN) {
+            if (mStore.getBoolean(PrefsContract.PREF_DONT_SHOW_AGAIN, false)) {
+                mSuppression = Decision.SUPPRESSED_DONT_SHOW_AGAIN;
+                mNextEligibleAt = NEVER;
+            } else {
+                if (mMaxCrashes >= 0 && mCrashHistory != null) {
+                    // There are more than the allowed number of crashes in the window until the oldest of them is forgotten.
+                    long crashTime = mCrashHistory.getCrashTime(mMaxCrashes);
+                    mCrashSuppressedUntil = crashTime != 0 ? crashTime + mCrashWindowMillis : 0;
+                }
+
+                long firstLaunch = mStore.getLong(PrefsContract.PREF_DATE_FIRST_LAUNCH, 0);
+                if (firstLaunch == 0) {
+                    firstLaunch = mClock.currentTimeMillis();
+                    mStore.putLong(PrefsContract.PREF_DATE_FIRST_LAUNCH, firstLaunch);
+                }
+                mNextEligibleAt = firstLaunch + mMinDaysUntilPrompt * DAY_IN_MILLIS;
+            }
+        }
+        return mNextEligibleAt;
+    }
+
+    /**
+     * Add to a counter, atomically if the store is an {@link AtomicRateStateStore}, so that processes sharing it lose no increment.
+     *
+     * @return The new value.
+     */
+    static long addLong(RateStateStore store, String key, long delta) {
+        if (store instanceof AtomicRateStateStore) {
+            return ((AtomicRateStateStore) store).addLong(key, delta);
+        }
+        long value = store.getLong(key, 0) + delta;
+        store.putLong(key, value);
+        return value;
+    }
+
+    /**
+     * A minimum of launches, or of a counter of the state. The thresholds change with the configuration, so they are not cacheable.
+     */
+    private static class Threshold implements PromptCondition {
+        private final String mName;
+        private final int mCost;
+        private final String mKey;
+        private final long mMinimum;
+
+        /**
+         * @param key The key of the counter, or <code>null</code> for the launches.
+         */
+        private Threshold(String name, int cost, String key, long minimum) {
+            mName = name;
+            mCost = cost;
+            mKey = key;
+            mMinimum = minimum;
+        }
+
+        @Override
+        public String getName() {
+            return mName;
+        }
+
+        @Override
+        public int getCost() {
+            return mCost;
+        }
+
+        @Override
+        public boolean isCacheable() {
+            return false;
+        }
+
+        @Override
+        public boolean isMet(RateStateStore store, long launchCount) {
+            return (mKey == null ? launchCount : store.getLong(mKey, 0)) >= mMinimum;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.octopepper.apprate;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.util.Log;
+
+/**
+ * Resolves the first {@link RatingTarget} that an activity can handle, once, so that the rate button only has to start it.
+ */
+class RatingIntentResolver {
+
+    private static final String TAG = RatingIntentResolver.class.getSimpleName();
+
+    private final Context mContext;
+    private final RatingTarget[] mTargets;
+    private volatile boolean mResolved;
+    private Intent mIntent;
+
+    /**
+     * @param context The application context.
+     * @param targets The targets, in order of preference.
+     */
+    RatingIntentResolver(Context context, RatingTarget[] targets) {
+        mContext = context;
+        mTargets = targets;
+    }
+
+    /**
+     * Resolve the intent on the background thread, if it has not been resolved yet.
+     */
+    void resolveAsync() {
+        if (mResolved) {
+            return;
+        }
+        AppRateExecutors.background().execute(new Runnable() {
+            @Override
+            public void run() {
+                getIntent();
+            }
+        });
+    }
+
+    /**
+     * @return The intent of the first target that can be handled, or <code>null</code> if there is none. Resolved on the calling
+     * thread if {@link #resolveAsync()} has not done it yet.
+     */
+    synchronized Intent getIntent() {
+        if (!mResolved) {
+            mIntent = resolve();
+            mResolved = true;
+        }
+        return mIntent;
+    }
+
+    private Intent resolve() {
+        PackageManager packageManager = mContext.getPackageManager();
+        for (RatingTarget target : mTargets) {
+            Intent intent = target.createIntent(mContext);
+            if (intent != null && packageManager.resolveActivity(intent, PackageManager.MATCH_DEFAULT_ONLY) != null) {
+                return intent;
+            }
+        }
+        Log.d(TAG, "No activity can handle the rating targets.");
+        return null;
+    }
+}
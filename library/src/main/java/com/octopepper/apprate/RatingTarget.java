@@ -0,0 +1,17 @@
+package com.octopepper.apprate;
+
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * Where the user is sent to rate the application, for example an app store or a web page.<br/>
+ * See {@link RatingTargets} for the common ones.
+ */
+public interface RatingTarget {
+
+    /**
+     * @param context The application context.
+     * @return The intent opening the rating page of the application. It is only used if an activity can handle it.
+     */
+    Intent createIntent(Context context);
+}
@@ -0,0 +1,61 @@
+package com.octopepper.apprate;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+
+/**
+ * The common {@link RatingTarget}s.
+ */
+public class RatingTargets {
+
+    /**
+     * The Play Store application.
+     */
+    public static final RatingTarget PLAY_STORE = new RatingTarget() {
+        @Override
+        public Intent createIntent(Context context) {
+            return viewIntent("market://details?id=" + context.getPackageName());
+        }
+    };
+
+    /**
+     * The Play Store web site, opened in a browser.
+     */
+    public static final RatingTarget PLAY_STORE_WEB = new RatingTarget() {
+        @Override
+        public Intent createIntent(Context context) {
+            return viewIntent("https://play.google.com/store/apps/details?id=" + context.getPackageName());
+        }
+    };
+
+    /**
+     * The Amazon Appstore application.
+     */
+    public static final RatingTarget AMAZON_APPSTORE = new RatingTarget() {
+        @Override
+        public Intent createIntent(Context context) {
+            return viewIntent("amzn://apps/android?p=" + context.getPackageName());
+        }
+    };
+
+    private RatingTargets() {
+    }
+
+    /**
+     * @param url The URL of the rating page.
+     * @return A target opening the URL, typically in a browser.
+     */
+    public static RatingTarget webUrl(final String url) {
+        return new RatingTarget() {
+            @Override
+            public Intent createIntent(Context context) {
+                return viewIntent(url);
+            }
+        };
+    }
+
+    private static Intent viewIntent(String uri) {
+        return new Intent(Intent.ACTION_VIEW, Uri.parse(uri));
+    }
+}
@@ -23,20 +23,19 @@ public class SendFeedback {
     public void promptForFeedback(String feedbackEmailAddress, String subject, String body) {
         if (mActivity == null) return;
 
-        StringBuilder defaultBodyText = new StringBuilder();
-        defaultBodyText.append("\n\n\n\n");
-        defaultBodyText.append("------------------------------------\n\n");
-        defaultBodyText.append(mActivity.getString(R.string.feedback_email_header));
-        defaultBodyText.append("\n\n");
-        defaultBodyText.append("\n").append(mActivity.getString(R.string.email_heading_android_device, getDeviceName()));
-        defaultBodyText.append("\n").append(mActivity.getString(R.string.email_heading_android_version, Build.VERSION.RELEASE));
-        defaultBodyText.append("\n").append(mActivity.getString(R.string.email_heading_app_version, AppInfo.getApplicationVersionName(mActivity)));
+        AppInfo appInfo = AppInfo.get(mActivity);
 
-        String defaultSubjectText = mActivity.getString(R.string.feedback_email_subject_line, AppInfo.getApplicationName(mActivity));
+        String defaultBodyText = FeedbackBody.build(
+                mActivity.getString(R.string.feedback_email_header),
+                mActivity.getString(R.string.email_heading_android_device, getDeviceName()),
+                mActivity.getString(R.string.email_heading_android_version, Build.VERSION.RELEASE),
+                mActivity.getString(R.string.email_heading_app_version, appInfo.getVersionName()));
+
+        String defaultSubjectText = mActivity.getString(R.string.feedback_email_subject_line, appInfo.getName());
 
         Intent i = new Intent(Intent.ACTION_SENDTO, Uri.fromParts("mailto", feedbackEmailAddress, null));
         i.putExtra(Intent.EXTRA_SUBJECT, subject != null ? subject : defaultSubjectText);
-        i.putExtra(Intent.EXTRA_TEXT, body != null ? body : defaultBodyText.toString());
+        i.putExtra(Intent.EXTRA_TEXT, body != null ? body : defaultBodyText);
 
         try {
             mActivity.startActivity(Intent.createChooser(i, mActivity.getString(R.string.send_email)));
@@ -45,24 +44,6 @@ public class SendFeedback {
     }
 
     public String getDeviceName() {
-        String manufacturer = Build.MANUFACTURER;
-        String model = Build.MODEL;
-        if (model.startsWith(manufacturer)) {
-            return capitalize(model);
-        } else {
-            return capitalize(manufacturer) + " " + model;
-        }
-    }
-
-    private String capitalize(String s) {
-        if (s == null || s.length() == 0) {
-            return "";
-        }
-        char first = s.charAt(0);
-        if (Character.isUpperCase(first)) {
-            return s;
-        } else {
-            return Character.toUpperCase(first) + s.substring(1);
-        }
+        return FeedbackBody.deviceName(Build.MANUFACTURER, Build.MODEL);
     }
 }
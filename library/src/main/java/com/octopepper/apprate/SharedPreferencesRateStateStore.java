@@ -0,0 +1,43 @@
+package com.octopepper.apprate;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.SharedPreferences.Editor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A {@link RateStateStore} backed by the {@link PrefsContract#SHARED_PREFS_NAME} shared preferences, as in previous versions of
+ * AppRate.
+ */
+public class SharedPreferencesRateStateStore extends CachedRateStateStore {
+
+    private final SharedPreferences mPreferences;
+
+    public SharedPreferencesRateStateStore(Context context) {
+        super(AppRateExecutors.background());
+        mPreferences = context.getApplicationContext().getSharedPreferences(PrefsContract.SHARED_PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    @Override
+    protected Map<String, Object> load() {
+        return new HashMap<String, Object>(mPreferences.getAll());
+    }
+
+    @Override
+    protected boolean write(Map<String, Object> values) {
+        Editor editor = mPreferences.edit().clear();
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof Boolean) {
+                editor.putBoolean(entry.getKey(), (Boolean) value);
+            } else if (value instanceof Integer) {
+                editor.putInt(entry.getKey(), (Integer) value);
+            } else if (value instanceof Long) {
+                editor.putLong(entry.getKey(), (Long) value);
+            }
+        }
+        return editor.commit();
+    }
+}
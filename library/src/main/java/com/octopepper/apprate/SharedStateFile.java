@@ -0,0 +1,396 @@
+package com.octopepper.apprate;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A small fixed-size hash table of boolean, int and long values in a memory-mapped file, shared by all the processes that map it.
+ * <br/>All the processes see the same page of the kernel page cache, so there is nothing to parse nor to reload. Reads are lock-free:
+ * a sequence number, odd while a write is in progress, is read before and after the value, and the read is retried if it changed.
+ * Writes take an exclusive lock on the file, which serializes them across processes and is released by the kernel if the process
+ * dies. A reader that keeps finding a write in progress takes the lock itself and repairs the sequence left odd by a dead writer.
+ * <br/>Increments are not lock-free: like the other writes, they take the lock for the read and the write of the value in the mapped
+ * page. Android has no compare-and-set of mapped memory that would make them atomic across processes otherwise.
+ * <br/>Keys longer than {@link #MAX_KEY_LENGTH} bytes are stored as their beginning followed by a hash of the whole key.
+ */
+class SharedStateFile {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int MAGIC = 0x41524d50;
+    private static final int VERSION = 1;
+
+    static final byte TYPE_BOOLEAN = 'Z';
+    static final byte TYPE_INT = 'I';
+    static final byte TYPE_LONG = 'J';
+    private static final byte TYPE_EMPTY = 0;
+
+    // The header, then the slots: type, key length, key hash, value and key bytes.
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int SEQUENCE_OFFSET = 8;
+    private static final int HEADER_SIZE = 16;
+    private static final int SLOT_TYPE = 0;
+    private static final int SLOT_KEY_LENGTH = 1;
+    private static final int SLOT_HASH = 4;
+    private static final int SLOT_VALUE = 8;
+    private static final int SLOT_KEY = 16;
+    private static final int SLOT_SIZE = 96;
+
+    /**
+     * The longest key stored as is, in UTF-8 bytes.
+     */
+    static final int MAX_KEY_LENGTH = SLOT_SIZE - SLOT_KEY;
+
+    // A separator and the 16 hexadecimal digits of the hash of a longer key.
+    private static final int KEY_HASH_LENGTH = 17;
+
+    /**
+     * The number of values the file holds.
+     */
+    static final int SLOTS = 64;
+
+    static final int SIZE = HEADER_SIZE + SLOTS * SLOT_SIZE;
+
+    private static final int OPTIMISTIC_READS = 64;
+
+    private static volatile int sFence;
+
+    // Kept open for the locks of its channel.
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    private final MappedByteBuffer mBuffer;
+    private final boolean mCreated;
+    private final ConcurrentMap<String, byte[]> mEncodedKeys = new ConcurrentHashMap<String, byte[]>();
+
+    private SharedStateFile(RandomAccessFile file, MappedByteBuffer buffer, boolean created) {
+        mFile = file;
+        mChannel = file.getChannel();
+        mBuffer = buffer;
+        mCreated = created;
+    }
+
+    /**
+     * Open the file once per process: the locks are held by the whole process, and a second channel on the same file could not take
+     * them while the first holds one.
+     *
+     * @param file The shared file, created if needed. It stays open as long as the process uses it, for its lock.
+     * @return The table mapped from the file.
+     * @throws IOException If the file could not be mapped.
+     */
+    static SharedStateFile open(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            FileLock lock = randomAccessFile.getChannel().lock();
+            try {
+                boolean created = randomAccessFile.length() < SIZE;
+                if (created) {
+                    randomAccessFile.setLength(SIZE);
+                }
+                MappedByteBuffer buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, SIZE);
+                if (buffer.getInt(MAGIC_OFFSET) != MAGIC || buffer.getInt(VERSION_OFFSET) != VERSION) {
+                    // A new or unreadable file starts empty.
+                    for (int slot = 0; slot < SLOTS; slot++) {
+                        buffer.put(slotOffset(slot) + SLOT_TYPE, TYPE_EMPTY);
+                    }
+                    buffer.putInt(SEQUENCE_OFFSET, 0);
+                    buffer.putInt(VERSION_OFFSET, VERSION);
+                    buffer.putInt(MAGIC_OFFSET, MAGIC);
+                    created = true;
+                }
+                return new SharedStateFile(randomAccessFile, buffer, created);
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            randomAccessFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the file was created, or reset because it could not be read, by {@link #open(File)}.
+     */
+    boolean isCreated() {
+        return mCreated;
+    }
+
+    /**
+     * @param key          The key of the value.
+     * @param type         The expected type of the value.
+     * @param defaultValue The value returned if the key is absent or has another type.
+     * @return The value, as a long.
+     * @throws IOException If a stale write had to be repaired and the file could not be locked.
+     */
+    long get(String key, byte type, long defaultValue) throws IOException {
+        byte[] keyBytes = encode(key);
+        int hash = hash(keyBytes);
+        for (int attempt = 0; attempt < OPTIMISTIC_READS; attempt++) {
+            int sequence = mBuffer.getInt(SEQUENCE_OFFSET);
+            if ((sequence & 1) == 0) {
+                fence();
+                long value = read(keyBytes, hash, type, defaultValue);
+                fence();
+                if (mBuffer.getInt(SEQUENCE_OFFSET) == sequence) {
+                    return value;
+                }
+            }
+            Thread.yield();
+        }
+
+        // Either writes keep coming or a writer died in the middle of one.
+        synchronized (this) {
+            FileLock lock = mChannel.lock();
+            try {
+                beginWrite();
+                endWrite();
+                return read(keyBytes, hash, type, defaultValue);
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    /**
+     * @param key   The key of the value.
+     * @param type  The type of the value.
+     * @param value The value, as a long.
+     * @throws IOException If the file could not be locked.
+     * @throws FullException If the key is new and every slot is taken. Nothing is written.
+     */
+    synchronized void put(String key, byte type, long value) throws IOException {
+        byte[] keyBytes = encode(key);
+        int hash = hash(keyBytes);
+        FileLock lock = mChannel.lock();
+        try {
+            int offset = findOrInsert(keyBytes, hash);
+            beginWrite();
+            writeValue(offset, keyBytes, hash, type, value);
+            endWrite();
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * @param values The values to add, boxed as {@link Boolean}, {@link Integer} or {@link Long}.
+     * @throws IOException If the file could not be locked.
+     * @throws FullException If the values of the new keys do not all fit. The values that fitted are written.
+     */
+    synchronized void putAll(Map<String, Object> values) throws IOException {
+        FileLock lock = mChannel.lock();
+        try {
+            beginWrite();
+            try {
+                for (Map.Entry<String, Object> entry : values.entrySet()) {
+                    byte[] keyBytes = encode(entry.getKey());
+                    int hash = hash(keyBytes);
+                    Object value = entry.getValue();
+                    if (value instanceof Boolean) {
+                        writeValue(findOrInsert(keyBytes, hash), keyBytes, hash, TYPE_BOOLEAN, (Boolean) value ? 1 : 0);
+                    } else if (value instanceof Integer) {
+                        writeValue(findOrInsert(keyBytes, hash), keyBytes, hash, TYPE_INT, (Integer) value);
+                    } else if (value instanceof Long) {
+                        writeValue(findOrInsert(keyBytes, hash), keyBytes, hash, TYPE_LONG, (Long) value);
+                    }
+                }
+            } finally {
+                endWrite();
+            }
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * Atomically add to a long value, across processes, under the lock.
+     *
+     * @param key   The key of the value.
+     * @param delta The amount to add.
+     * @return The new value.
+     * @throws IOException If the file could not be locked.
+     * @throws FullException If the key is new and every slot is taken. Nothing is written.
+     */
+    synchronized long add(String key, long delta) throws IOException {
+        byte[] keyBytes = encode(key);
+        int hash = hash(keyBytes);
+        FileLock lock = mChannel.lock();
+        try {
+            long value = read(keyBytes, hash, TYPE_LONG, 0) + delta;
+            int offset = findOrInsert(keyBytes, hash);
+            beginWrite();
+            writeValue(offset, keyBytes, hash, TYPE_LONG, value);
+            endWrite();
+            return value;
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * Remove all the values.
+     *
+     * @throws IOException If the file could not be locked.
+     */
+    synchronized void clear() throws IOException {
+        FileLock lock = mChannel.lock();
+        try {
+            beginWrite();
+            for (int slot = 0; slot < SLOTS; slot++) {
+                mBuffer.put(slotOffset(slot) + SLOT_TYPE, TYPE_EMPTY);
+            }
+            endWrite();
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * Write the page back to the storage now. The kernel does it anyway, even if the process is killed.
+     */
+    void force() {
+        mBuffer.force();
+    }
+
+    private long read(byte[] keyBytes, int hash, byte type, long defaultValue) {
+        int offset = find(keyBytes, hash);
+        if (offset < 0 || mBuffer.get(offset + SLOT_TYPE) != type) {
+            return defaultValue;
+        }
+        return mBuffer.getLong(offset + SLOT_VALUE);
+    }
+
+    /**
+     * @return The offset of the slot of the key, or -1 if absent.
+     */
+    private int find(byte[] keyBytes, int hash) {
+        for (int probe = 0; probe < SLOTS; probe++) {
+            int offset = slotOffset((hash + probe) & (SLOTS - 1));
+            if (mBuffer.get(offset + SLOT_TYPE) == TYPE_EMPTY) {
+                return -1;
+            }
+            if (matches(offset, keyBytes, hash)) {
+                return offset;
+            }
+        }
+        return -1;
+    }
+
+    private int findOrInsert(byte[] keyBytes, int hash) throws FullException {
+        for (int probe = 0; probe < SLOTS; probe++) {
+            int offset = slotOffset((hash + probe) & (SLOTS - 1));
+            if (mBuffer.get(offset + SLOT_TYPE) == TYPE_EMPTY || matches(offset, keyBytes, hash)) {
+                return offset;
+            }
+        }
+        throw new FullException(SLOTS);
+    }
+
+    private boolean matches(int offset, byte[] keyBytes, int hash) {
+        if (mBuffer.getInt(offset + SLOT_HASH) != hash || mBuffer.get(offset + SLOT_KEY_LENGTH) != keyBytes.length) {
+            return false;
+        }
+        for (int i = 0; i < keyBytes.length; i++) {
+            if (mBuffer.get(offset + SLOT_KEY + i) != keyBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeValue(int offset, byte[] keyBytes, int hash, byte type, long value) {
+        mBuffer.putLong(offset + SLOT_VALUE, value);
+        if (!matches(offset, keyBytes, hash)) {
+            mBuffer.put(offset + SLOT_KEY_LENGTH, (byte) keyBytes.length);
+            mBuffer.putInt(offset + SLOT_HASH, hash);
+            for (int i = 0; i < keyBytes.length; i++) {
+                mBuffer.put(offset + SLOT_KEY + i, keyBytes[i]);
+            }
+        }
+        mBuffer.put(offset + SLOT_TYPE, type);
+    }
+
+    /**
+     * Make the sequence odd, repairing it first if a writer died with it odd. Must hold the lock.
+     */
+    private void beginWrite() {
+        int sequence = mBuffer.getInt(SEQUENCE_OFFSET);
+        mBuffer.putInt(SEQUENCE_OFFSET, (sequence | 1));
+        fence();
+    }
+
+    private void endWrite() {
+        fence();
+        mBuffer.putInt(SEQUENCE_OFFSET, mBuffer.getInt(SEQUENCE_OFFSET) + 1);
+    }
+
+    private byte[] encode(String key) {
+        byte[] keyBytes = mEncodedKeys.get(key);
+        if (keyBytes == null) {
+            keyBytes = key.getBytes(UTF_8);
+            if (keyBytes.length > MAX_KEY_LENGTH) {
+                keyBytes = shorten(keyBytes);
+            }
+            mEncodedKeys.putIfAbsent(key, keyBytes);
+        }
+        return keyBytes;
+    }
+
+    /**
+     * @return The first bytes of the key, then '#' and the 64-bit FNV-1a hash of the whole key, {@link #MAX_KEY_LENGTH} bytes in
+     * all. The same in every process.
+     */
+    private static byte[] shorten(byte[] keyBytes) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : keyBytes) {
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        byte[] digest = String.format("#%016x", hash).getBytes(UTF_8);
+        byte[] shortened = new byte[MAX_KEY_LENGTH];
+        System.arraycopy(keyBytes, 0, shortened, 0, MAX_KEY_LENGTH - KEY_HASH_LENGTH);
+        System.arraycopy(digest, 0, shortened, MAX_KEY_LENGTH - KEY_HASH_LENGTH, KEY_HASH_LENGTH);
+        return shortened;
+    }
+
+    private static int hash(byte[] keyBytes) {
+        // FNV-1a
+        int hash = 0x811c9dc5;
+        for (byte b : keyBytes) {
+            hash = (hash ^ (b & 0xff)) * 0x01000193;
+        }
+        return hash;
+    }
+
+    private static int slotOffset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    /**
+     * A full fence: a volatile write then a volatile read, so that neither the reads of the value move out of the sequence checks
+     * nor the writes of the value out of the sequence updates.
+     */
+    private static void fence() {
+        sFence = 0;
+        int ignored = sFence;
+    }
+
+    /**
+     * Thrown when a new key does not fit, every slot being taken by another key.
+     */
+    static class FullException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        FullException(int slots) {
+            super("The AppRate shared state is full, it holds " + slots + " values");
+        }
+    }
+}
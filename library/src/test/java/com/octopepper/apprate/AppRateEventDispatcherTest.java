@@ -0,0 +1,101 @@
+package com.octopepper.apprate;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The delivery of the {@link AppRateEventDispatcher}, on the JVM with an executor running the drains as they are scheduled.
+ */
+public class AppRateEventDispatcherTest {
+
+    private final List<Runnable> mScheduledDrains = new ArrayList<Runnable>();
+    private final List<RuntimeException> mFailures = new ArrayList<RuntimeException>();
+
+    private AppRateEventDispatcher mDispatcher;
+
+    @Before
+    public void setUp() {
+        mDispatcher = new AppRateEventDispatcher(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                mScheduledDrains.add(command);
+            }
+        }, 2, new AppRateEventDispatcher.FailureHandler() {
+            @Override
+            public void onListenerFailed(AppRateEventListener listener, RuntimeException e) {
+                mFailures.add(e);
+            }
+        });
+    }
+
+    @Test
+    public void batched() {
+        RecordingListener listener = new RecordingListener();
+        mDispatcher.addListener(listener);
+
+        assertTrue(mDispatcher.post(AppRateEvent.dialogShown(AppRateEvent.Dialog.RATE)));
+        assertTrue(mDispatcher.post(AppRateEvent.cancelled(AppRateEvent.Dialog.RATE)));
+        assertEquals("A drain scheduled per event", 1, mScheduledDrains.size());
+        runScheduledDrains();
+
+        assertEquals(1, listener.mBatches.size());
+        assertEquals(2, listener.mBatches.get(0).size());
+    }
+
+    @Test
+    public void droppedWhenFull() {
+        mDispatcher.addListener(new RecordingListener());
+
+        assertTrue(mDispatcher.post(AppRateEvent.dialogShown(AppRateEvent.Dialog.RATE)));
+        assertTrue(mDispatcher.post(AppRateEvent.dialogShown(AppRateEvent.Dialog.RATE)));
+        assertFalse(mDispatcher.post(AppRateEvent.dialogShown(AppRateEvent.Dialog.RATE)));
+    }
+
+    @Test
+    public void failingListener() {
+        final RuntimeException failure = new IllegalStateException("Test failure");
+        mDispatcher.addListener(new AppRateEventListener() {
+            @Override
+            public void onEvents(List<AppRateEvent> events) {
+                throw failure;
+            }
+        });
+        RecordingListener listener = new RecordingListener();
+        mDispatcher.addListener(listener);
+
+        mDispatcher.post(AppRateEvent.dialogShown(AppRateEvent.Dialog.RATE));
+        runScheduledDrains();
+        assertEquals("Listener after the failing one not called", 1, listener.mBatches.size());
+        assertEquals(1, mFailures.size());
+        assertEquals(failure, mFailures.get(0));
+
+        // The next event is delivered by a new drain.
+        mDispatcher.post(AppRateEvent.cancelled(AppRateEvent.Dialog.RATE));
+        runScheduledDrains();
+        assertEquals(2, listener.mBatches.size());
+        assertEquals(2, mFailures.size());
+    }
+
+    private void runScheduledDrains() {
+        while (!mScheduledDrains.isEmpty()) {
+            mScheduledDrains.remove(0).run();
+        }
+    }
+
+    private static class RecordingListener implements AppRateEventListener {
+        private final List<List<AppRateEvent>> mBatches = new ArrayList<List<AppRateEvent>>();
+
+        @Override
+        public void onEvents(List<AppRateEvent> events) {
+            mBatches.add(new ArrayList<AppRateEvent>(events));
+        }
+    }
+}
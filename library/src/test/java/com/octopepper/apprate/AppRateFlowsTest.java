@@ -0,0 +1,627 @@
+package com.octopepper.apprate;
+
+import android.app.Activity;
+import android.app.AlertDialog;
+import android.app.Application;
+import android.content.Context;
+import android.content.DialogInterface;
+import android.content.Intent;
+import android.content.pm.PackageInfo;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.widget.EditText;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowAlertDialog;
+import org.robolectric.shadows.ShadowApplication;
+import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.util.ActivityController;
+
+import java.io.File;
+import java.lang.Thread.UncaughtExceptionHandler;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Drives AppRate through all its flows, one session after the other, as an application would with {@link AppRate#initAsync()},
+ * or with {@link AppRate#init()} after {@link AppRate#prewarm(Context)}.<br/>Every test fails if the main thread touches a file of the application, or if a session writes the state more than
+ * {@link #MAX_WRITES_PER_SESSION} times.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class AppRateFlowsTest {
+
+    /**
+     * At most one write for the decision, one for the answer to the dialog and one for the precomputation of the next session.
+     */
+    private static final int MAX_WRITES_PER_SESSION = 3;
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private final List<RatingEligibilityEngine.Decision> mDecisions =
+            new CopyOnWriteArrayList<RatingEligibilityEngine.Decision>();
+    private final List<String> mUnmetConditions = new CopyOnWriteArrayList<String>();
+    private final List<String> mVariants = new CopyOnWriteArrayList<String>();
+    private final AppRateMetricsListener mMetricsListener = new AppRateMetricsListener() {
+        @Override
+        public void onPhaseCompleted(Phase phase, long durationNanos) {
+        }
+
+        @Override
+        public void onVariantAssigned(AppRateExperiment experiment, AppRateExperiment.Variant variant) {
+            mVariants.add(experiment.getName() + "=" + variant.getName());
+        }
+
+        @Override
+        public void onDecision(RatingEligibilityEngine.Decision decision, String unmetCondition) {
+            mDecisions.add(decision);
+            mUnmetConditions.add(String.valueOf(unmetCondition));
+        }
+    };
+
+    private Application mApplication;
+    private CountingFileRateStateStore mStore;
+    private MainThreadIoGuard mGuard;
+    private UncaughtExceptionHandler mPreviousExceptionHandler;
+    private ActivityController<Activity> mActivityController;
+
+    @Before
+    public void setUp() {
+        mApplication = RuntimeEnvironment.application;
+        AppRate.resetProcessState();
+        deleteRecursively(mApplication.getFilesDir());
+        mStore = new CountingFileRateStateStore(mApplication);
+        AppRate.setRateStateStore(mStore);
+
+        // The ExceptionHandler of AppRate forwards the crashes to the previous handler, which must not kill the test.
+        mPreviousExceptionHandler = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler(new UncaughtExceptionHandler() {
+            @Override
+            public void uncaughtException(Thread thread, Throwable throwable) {
+            }
+        });
+
+        // The tasks posted by the background thread to the main thread run on the main thread, when the test lets them.
+        ShadowLooper.pauseMainLooper();
+
+        // The data directory of the application, with its files, cache and shared preferences.
+        mGuard = new MainThreadIoGuard(mApplication.getFilesDir().getParentFile());
+        mGuard.install();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        awaitAppRate();
+        mGuard.uninstall();
+        Thread.setDefaultUncaughtExceptionHandler(mPreviousExceptionHandler);
+        ShadowLooper.unPauseMainLooper();
+        AppRate.resetProcessState();
+
+        assertTrue(describe(mGuard.getViolations()), mGuard.getViolations().isEmpty());
+        assertEquals("State store accessed on the main thread", 0, mStore.getMainThreadAccesses());
+        assertTrue("State loaded " + mStore.getLoads() + " times", mStore.getLoads() <= 1);
+    }
+
+    @Test
+    public void rate() throws InterruptedException {
+        startSession(newAppRate());
+        assertDecision(RatingEligibilityEngine.Decision.SHOW);
+
+        AlertDialog dialog = ShadowAlertDialog.getLatestAlertDialog();
+        assertNotNull("Rate dialog not shown", dialog);
+        click(dialog, AlertDialog.BUTTON_POSITIVE);
+        assertFalse(dialog.isShowing());
+        endSession();
+
+        startSession(newAppRate());
+        assertDecision(RatingEligibilityEngine.Decision.SUPPRESSED_DONT_SHOW_AGAIN);
+        assertNull("Rate dialog shown again after rating", ShadowAlertDialog.getLatestAlertDialog());
+        endSession();
+    }
+
+    @Test
+    public void later() throws InterruptedException {
+        startSession(newAppRate());
+        assertDecision(RatingEligibilityEngine.Decision.SHOW);
+        click(ShadowAlertDialog.getLatestAlertDialog(), AlertDialog.BUTTON_NEUTRAL);
+        endSession();
+
+        startSession(newAppRate());
+        assertDecision(RatingEligibilityEngine.Decision.SHOW);
+        assertNotNull("Rate dialog not shown again after later", ShadowAlertDialog.getLatestAlertDialog());
+        endSession();
+    }
+
+    @Test
+    public void never() throws InterruptedException {
+        startSession(newAppRate());
+        assertDecision(RatingEligibilityEngine.Decision.SHOW);
+        click(ShadowAlertDialog.getLatestAlertDialog(), AlertDialog.BUTTON_NEGATIVE);
+        endSession();
+
+        startSession(newAppRate());
+        assertDecision(RatingEligibilityEngine.Decision.SUPPRESSED_DONT_SHOW_AGAIN);
+        assertNull("Rate dialog shown again after never", ShadowAlertDialog.getLatestAlertDialog());
+        endSession();
+    }
+
+    @Test
+    public void clickListenersAfterTheClick() throws InterruptedException {
+        final List<Integer> clicks = new CopyOnWriteArrayList<Integer>();
+        final List<Boolean> shown = new CopyOnWriteArrayList<Boolean>();
+        startSession(newAppRate()
+                .setOnClickListener(new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        clicks.add(which);
+                    }
+                })
+                .setAppRaterEventListener(new AppRate.AppRaterEventListener() {
+                    @Override
+                    public void onAppRaterDialogsShown() {
+                        shown.add(true);
+                    }
+                }));
+        assertEquals(1, shown.size());
+
+        AlertDialog dialog = ShadowAlertDialog.getLatestAlertDialog();
+        dialog.getButton(AlertDialog.BUTTON_NEUTRAL).performClick();
+        // The message of the click, handled by AppRate.
+        shadowOf(Looper.getMainLooper()).runOneTask();
+        assertFalse("Dialog not dismissed by the click", dialog.isShowing());
+        assertTrue("Click listener called during the click", clicks.isEmpty());
+        ShadowLooper.runUiThreadTasks();
+        assertEquals(1, clicks.size());
+        assertEquals(AlertDialog.BUTTON_NEUTRAL, (int) clicks.get(0));
+        endSession();
+    }
+
+    @Test
+    public void syncRate() throws InterruptedException {
+        startSyncSession(newAppRate());
+        assertDecision(RatingEligibilityEngine.Decision.SHOW);
+        click(ShadowAlertDialog.getLatestAlertDialog(), AlertDialog.BUTTON_POSITIVE);
+        endSession();
+
+        startSyncSession(newAppRate());
+        assertDecision(RatingEligibilityEngine.Decision.SUPPRESSED_DONT_SHOW_AGAIN);
+        assertNull("Rate dialog shown again after rating", ShadowAlertDialog.getLatestAlertDialog());
+        endSession();
+    }
+
+    @Test
+    public void syncLater() throws InterruptedException {
+        startSyncSession(newAppRate());
+        assertDecision(RatingEligibilityEngine.Decision.SHOW);
+        click(ShadowAlertDialog.getLatestAlertDialog(), AlertDialog.BUTTON_NEUTRAL);
+        endSession();
+
+        startSyncSession(newAppRate());
+        assertDecision(RatingEligibilityEngine.Decision.SHOW);
+        assertNotNull("Rate dialog not shown again after later", ShadowAlertDialog.getLatestAlertDialog());
+        endSession();
+    }
+
+    @Test
+    public void syncNever() throws InterruptedException {
+        startSyncSession(newAppRate());
+        assertDecision(RatingEligibilityEngine.Decision.SHOW);
+        click(ShadowAlertDialog.getLatestAlertDialog(), AlertDialog.BUTTON_NEGATIVE);
+        endSession();
+
+        startSyncSession(newAppRate());
+        assertDecision(RatingEligibilityEngine.Decision.SUPPRESSED_DONT_SHOW_AGAIN);
+        assertNull("Rate dialog shown again after never", ShadowAlertDialog.getLatestAlertDialog());
+        endSession();
+    }
+
+    @Test
+    public void syncDoYouLikeTheApp() throws InterruptedException {
+        startSyncSession(newAppRate().showDoYouLikeTheAppFlow("support@example.com"));
+        assertDecision(RatingEligibilityEngine.Decision.SHOW);
+
+        AlertDialog firstDialog = ShadowAlertDialog.getLatestAlertDialog();
+        click(firstDialog, AlertDialog.BUTTON_POSITIVE);
+        AlertDialog rateDialog = ShadowAlertDialog.getLatestAlertDialog();
+        assertNotNull("Rate dialog not shown after yes", rateDialog);
+        assertFalse("First dialog shown again", rateDialog == firstDialog);
+        click(rateDialog, AlertDialog.BUTTON_POSITIVE);
+        endSession();
+
+        startSyncSession(newAppRate().showDoYouLikeTheAppFlow("support@example.com"));
+        assertDecision(RatingEligibilityEngine.Decision.SUPPRESSED_DONT_SHOW_AGAIN);
+        assertNull(ShadowAlertDialog.getLatestAlertDialog());
+        endSession();
+    }
+
+    @Test
+    public void syncCrash() throws InterruptedException {
+        startSyncSession(newAppRate().setMinLaunchesUntilPrompt(2).setShowIfAppHasCrashed(false));
+        assertDecision(RatingEligibilityEngine.Decision.NOT_ENOUGH_LAUNCHES, "apprate_min_launches");
+        Thread.getDefaultUncaughtExceptionHandler().uncaughtException(Thread.currentThread(), new RuntimeException("Test crash"));
+        endSession();
+
+        startSyncSession(newAppRate().setMinLaunchesUntilPrompt(2).setShowIfAppHasCrashed(false));
+        assertDecision(RatingEligibilityEngine.Decision.SUPPRESSED_CRASHED);
+        assertNull("Rate dialog shown after a crash", ShadowAlertDialog.getLatestAlertDialog());
+        endSession();
+    }
+
+    @Test
+    public void syncResetOnUpgrade() throws InterruptedException {
+        setVersionCode(2);
+        seedDeclinedState(1);
+
+        startSyncSession(newAppRate().setResetOnAppUpgrade(true).setShowIfAppHasCrashed(false));
+        assertDecision(RatingEligibilityEngine.Decision.SHOW);
+        assertNotNull("Rate dialog not shown after upgrade", ShadowAlertDialog.getLatestAlertDialog());
+        endSession();
+    }
+
+    @Test
+    public void splashScreen() throws InterruptedException {
+        // Started before any AppRate exists, so before the session tracks the activities.
+        ActivityController<Activity> splashController = Robolectric.buildActivity(Activity.class).create().start().resume();
+        startSession(newAppRate());
+        assertDecision(RatingEligibilityEngine.Decision.SHOW);
+        splashController.pause().stop().destroy();
+        awaitAppRate();
+
+        // Still the same session: another init neither counts a launch nor decides again.
+        mDecisions.clear();
+        new AppRate(mActivityController.get()).setMetricsListener(mMetricsListener).initAsync();
+        awaitAppRate();
+        assertTrue("Session ended by an activity it did not count", mDecisions.isEmpty());
+        endSession();
+    }
+
+    @Test
+    public void ratingTargetResolvedOffMainThread() throws InterruptedException {
+        final List<Thread> resolvingThreads = new CopyOnWriteArrayList<Thread>();
+        RatingTarget ratingTarget = new RatingTarget() {
+            @Override
+            public Intent createIntent(Context context) {
+                resolvingThreads.add(Thread.currentThread());
+                return new Intent(Intent.ACTION_VIEW);
+            }
+        };
+        startSession(newAppRate().setRatingTargets(ratingTarget));
+        assertDecision(RatingEligibilityEngine.Decision.SHOW);
+
+        // Another activity of the session shows the dialog again once its first activity is destroyed.
+        ActivityController<Activity> firstController = mActivityController;
+        newAppRate();
+        mActivityController.start().resume().visible();
+        firstController.pause().stop().destroy();
+        ShadowAlertDialog.reset();
+        new AppRate(mActivityController.get()).setRatingTargets(ratingTarget).initAsync();
+        awaitAppRate();
+
+        click(ShadowAlertDialog.getLatestAlertDialog(), AlertDialog.BUTTON_POSITIVE);
+        assertEquals(2, resolvingThreads.size());
+        for (Thread thread : resolvingThreads) {
+            assertFalse("Rating target resolved on the main thread", thread == Thread.currentThread());
+        }
+        endSession();
+    }
+
+    @Test
+    public void resetOnUpgrade() throws InterruptedException {
+        setVersionCode(2);
+        seedDeclinedState(1);
+
+        startSession(newAppRate().setResetOnAppUpgrade(true));
+        assertDecision(RatingEligibilityEngine.Decision.SHOW);
+        assertNotNull("Rate dialog not shown after upgrade", ShadowAlertDialog.getLatestAlertDialog());
+        endSession();
+    }
+
+    @Test
+    public void noResetOnUpgrade() throws InterruptedException {
+        setVersionCode(2);
+        seedDeclinedState(1);
+
+        startSession(newAppRate());
+        assertDecision(RatingEligibilityEngine.Decision.SUPPRESSED_DONT_SHOW_AGAIN);
+        assertNull(ShadowAlertDialog.getLatestAlertDialog());
+        endSession();
+    }
+
+    @Test
+    public void crash() throws InterruptedException {
+        startSession(newAppRate().setMinLaunchesUntilPrompt(2).setShowIfAppHasCrashed(false));
+        assertDecision(RatingEligibilityEngine.Decision.NOT_ENOUGH_LAUNCHES, "apprate_min_launches");
+
+        // Recorded by the ExceptionHandler on the crashing thread, here the main thread.
+        Thread.getDefaultUncaughtExceptionHandler().uncaughtException(Thread.currentThread(), new RuntimeException("Test crash"));
+        endSession();
+
+        // The second launch would show the dialog without the crash.
+        startSession(newAppRate().setMinLaunchesUntilPrompt(2).setShowIfAppHasCrashed(false));
+        assertDecision(RatingEligibilityEngine.Decision.SUPPRESSED_CRASHED);
+        assertNull("Rate dialog shown after a crash", ShadowAlertDialog.getLatestAlertDialog());
+        endSession();
+    }
+
+    @Test
+    public void legacyCrashFlag() throws InterruptedException {
+        // The sticky flag of a previous version, imported from its shared preferences by the first load.
+        AppRateExecutors.background().execute(new Runnable() {
+            @Override
+            public void run() {
+                mApplication.getSharedPreferences(PrefsContract.SHARED_PREFS_NAME, Context.MODE_PRIVATE).edit()
+                        .putBoolean("pref_app_has_crashed", true)
+                        .commit();
+            }
+        });
+        awaitAppRate();
+
+        startSession(newAppRate().setShowIfAppHasCrashed(false));
+        assertDecision(RatingEligibilityEngine.Decision.SUPPRESSED_CRASHED);
+        assertNull("Rate dialog shown after a crash of the previous version", ShadowAlertDialog.getLatestAlertDialog());
+        endSession();
+
+        startSession(newAppRate().setShowIfAppHasCrashed(false));
+        assertDecision(RatingEligibilityEngine.Decision.SUPPRESSED_CRASHED);
+        endSession();
+    }
+
+    @Test
+    public void foregroundTime() throws InterruptedException {
+        startSession(newAppRate().setMinForegroundMinutesUntilPrompt(2));
+        assertDecision(RatingEligibilityEngine.Decision.NOT_ENOUGH_FOREGROUND_TIME, "apprate_min_foreground_time");
+        // Advances the clock of Robolectric without sleeping.
+        SystemClock.sleep(90 * 1000L);
+        endSession();
+
+        startSession(newAppRate().setMinForegroundMinutesUntilPrompt(2));
+        assertDecision(RatingEligibilityEngine.Decision.NOT_ENOUGH_FOREGROUND_TIME, "apprate_min_foreground_time");
+        SystemClock.sleep(60 * 1000L);
+        endSession();
+
+        startSession(newAppRate().setMinForegroundMinutesUntilPrompt(2));
+        assertDecision(RatingEligibilityEngine.Decision.SHOW);
+        assertNotNull("Rate dialog not shown after enough foreground time", ShadowAlertDialog.getLatestAlertDialog());
+        endSession();
+    }
+
+    @Test
+    public void promptCondition() throws InterruptedException {
+        final boolean[] met = {false};
+        PromptCondition condition = new PromptCondition() {
+            @Override
+            public String getName() {
+                return "test";
+            }
+
+            @Override
+            public int getCost() {
+                return COST_EXPENSIVE;
+            }
+
+            @Override
+            public boolean isCacheable() {
+                return true;
+            }
+
+            @Override
+            public boolean isMet(RateStateStore store, long launchCount) {
+                return met[0];
+            }
+        };
+
+        startSession(newAppRate().addPromptCondition(condition));
+        assertDecision(RatingEligibilityEngine.Decision.CONDITION_NOT_MET, "test");
+        met[0] = true;
+        endSession();
+
+        startSession(newAppRate().addPromptCondition(condition));
+        assertDecision(RatingEligibilityEngine.Decision.SHOW);
+        click(ShadowAlertDialog.getLatestAlertDialog(), AlertDialog.BUTTON_NEUTRAL);
+        // Remind me later forgets that the condition was met, the precomputation at the end of the session evaluates it again.
+        met[0] = false;
+        endSession();
+
+        startSession(newAppRate().addPromptCondition(condition));
+        assertDecision(RatingEligibilityEngine.Decision.CONDITION_NOT_MET, "test");
+        endSession();
+    }
+
+    @Test
+    public void experiment() throws InterruptedException {
+        AppRateExperiment experiment = new AppRateExperiment("prompt_timing")
+                .addVariant(new AppRateExperiment.Variant("late").setMinLaunchesUntilPrompt(2));
+
+        startSession(newAppRate().setExperiment(experiment));
+        assertEquals(1, mVariants.size());
+        assertEquals("prompt_timing=late", mVariants.get(0));
+        assertDecision(RatingEligibilityEngine.Decision.NOT_ENOUGH_LAUNCHES, "apprate_min_launches");
+        endSession();
+
+        startSession(newAppRate().setExperiment(experiment));
+        assertEquals("prompt_timing=late", mVariants.get(0));
+        assertDecision(RatingEligibilityEngine.Decision.SHOW);
+        endSession();
+    }
+
+    @Test
+    public void emailFeedback() throws InterruptedException {
+        startSession(newAppRate().showDoYouLikeTheAppFlow("support@example.com"));
+        assertDecision(RatingEligibilityEngine.Decision.SHOW);
+
+        click(ShadowAlertDialog.getLatestAlertDialog(), AlertDialog.BUTTON_NEGATIVE);
+        click(ShadowAlertDialog.getLatestAlertDialog(), AlertDialog.BUTTON_POSITIVE);
+
+        Intent chooser = ShadowApplication.getInstance().getNextStartedActivity();
+        assertNotNull("Email application not opened", chooser);
+        assertEquals(Intent.ACTION_CHOOSER, chooser.getAction());
+        endSession();
+
+        startSession(newAppRate().showDoYouLikeTheAppFlow("support@example.com"));
+        assertDecision(RatingEligibilityEngine.Decision.SUPPRESSED_DONT_SHOW_AGAIN);
+        endSession();
+    }
+
+    @Test
+    public void inAppFeedback() throws InterruptedException {
+        InMemoryFeedbackSender sender = new InMemoryFeedbackSender();
+        AppRate.setFeedbackSender(mApplication, sender);
+
+        startSession(newAppRate().showDoYouLikeTheAppFlow("support@example.com").setFeedbackLogTailLines(0));
+        assertDecision(RatingEligibilityEngine.Decision.SHOW);
+
+        click(ShadowAlertDialog.getLatestAlertDialog(), AlertDialog.BUTTON_NEGATIVE);
+        click(ShadowAlertDialog.getLatestAlertDialog(), AlertDialog.BUTTON_POSITIVE);
+
+        AlertDialog feedbackDialog = ShadowAlertDialog.getLatestAlertDialog();
+        ((EditText) shadowOf(feedbackDialog).getView()).setText("Too many ads");
+        click(feedbackDialog, AlertDialog.BUTTON_POSITIVE);
+        endSession();
+
+        assertEquals(1, sender.getSentMessages().size());
+        assertEquals("Too many ads", sender.getSentMessages().get(0));
+    }
+
+    private AppRate newAppRate() {
+        // The session tracks the activities from the first AppRate, which must exist before its activity is started.
+        mActivityController = Robolectric.buildActivity(Activity.class).create();
+        return new AppRate(mActivityController.get()).setMetricsListener(mMetricsListener);
+    }
+
+    private void startSession(AppRate appRate) throws InterruptedException {
+        ShadowAlertDialog.reset();
+        mDecisions.clear();
+        mUnmetConditions.clear();
+        mVariants.clear();
+        mStore.resetWrites();
+
+        mActivityController.start().resume().visible();
+        appRate.initAsync();
+        awaitAppRate();
+    }
+
+    /**
+     * Start a session with {@link AppRate#init()}, which decides on the main thread from the state loaded by
+     * {@link AppRate#prewarm(Context)}.
+     */
+    private void startSyncSession(AppRate appRate) throws InterruptedException {
+        AppRate.prewarm(mApplication);
+        awaitAppRate();
+        ShadowAlertDialog.reset();
+        mDecisions.clear();
+        mUnmetConditions.clear();
+        mVariants.clear();
+        mStore.resetWrites();
+
+        mActivityController.start().resume().visible();
+        appRate.init();
+        awaitAppRate();
+    }
+
+    private void endSession() throws InterruptedException {
+        mActivityController.pause().stop().destroy();
+        awaitAppRate();
+        assertTrue("Session wrote the state " + mStore.getWrites() + " times", mStore.getWrites() <= MAX_WRITES_PER_SESSION);
+    }
+
+    private void click(AlertDialog dialog, int whichButton) throws InterruptedException {
+        assertNotNull("No dialog to click", dialog);
+        dialog.getButton(whichButton).performClick();
+        awaitAppRate();
+    }
+
+    private void assertDecision(RatingEligibilityEngine.Decision decision) {
+        assertDecision(decision, null);
+    }
+
+    private void assertDecision(RatingEligibilityEngine.Decision decision, String unmetCondition) {
+        assertEquals(1, mDecisions.size());
+        assertEquals(decision, mDecisions.get(0));
+        assertEquals(String.valueOf(unmetCondition), mUnmetConditions.get(0));
+    }
+
+    private void setVersionCode(int versionCode) {
+        PackageInfo packageInfo = new PackageInfo();
+        packageInfo.packageName = mApplication.getPackageName();
+        packageInfo.versionCode = versionCode;
+        packageInfo.versionName = String.valueOf(versionCode);
+        packageInfo.applicationInfo = mApplication.getApplicationInfo();
+        RuntimeEnvironment.getRobolectricPackageManager().addPackage(packageInfo);
+    }
+
+    /**
+     * Write the state of a user who declined to rate the given version, as an earlier process would have, including the decision
+     * precomputed for the next launch.
+     */
+    private void seedDeclinedState(final int versionCode) throws InterruptedException {
+        AppRateExecutors.background().execute(new Runnable() {
+            @Override
+            public void run() {
+                mStore.putInt(PrefsContract.PREF_APP_VERSION_CODE, versionCode)
+                        .putLong(PrefsContract.PREF_DATE_FIRST_LAUNCH, System.currentTimeMillis())
+                        .putLong(PrefsContract.PREF_LAUNCH_COUNT, 12);
+                new RatingEligibilityEngine(mStore, RatingEligibilityEngine.SYSTEM_CLOCK).doNotShowAgain();
+                mStore.commit();
+            }
+        });
+        awaitAppRate();
+    }
+
+    /**
+     * Let the threads of AppRate and the main thread run until they are all idle, as each may hand work over to the others.
+     */
+    private static void awaitAppRate() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            await(AppRateExecutors.background());
+            await(AppRateExecutors.outbox());
+            await(AppRateExecutors.listeners());
+            ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        }
+    }
+
+    private static void await(Executor executor) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+        assertTrue("AppRate thread is stuck", latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static String describe(List<String> violations) {
+        StringBuilder description = new StringBuilder(violations.size() + " main thread disk accesses");
+        for (String violation : violations) {
+            description.append('\n').append(violation);
+        }
+        return description.toString();
+    }
+}
@@ -0,0 +1,57 @@
+package com.octopepper.apprate;
+
+import android.content.Context;
+import android.os.Looper;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The default {@link FileRateStateStore}, counting its loads and writes and the ones made on the main thread.
+ */
+class CountingFileRateStateStore extends FileRateStateStore {
+
+    private final AtomicInteger mLoads = new AtomicInteger();
+    private final AtomicInteger mWrites = new AtomicInteger();
+    private final AtomicInteger mMainThreadAccesses = new AtomicInteger();
+
+    CountingFileRateStateStore(Context context) {
+        super(context);
+    }
+
+    @Override
+    protected Map<String, Object> load() {
+        mLoads.incrementAndGet();
+        countMainThreadAccess();
+        return super.load();
+    }
+
+    @Override
+    protected boolean write(Map<String, Object> values) {
+        mWrites.incrementAndGet();
+        countMainThreadAccess();
+        return super.write(values);
+    }
+
+    int getLoads() {
+        return mLoads.get();
+    }
+
+    int getWrites() {
+        return mWrites.get();
+    }
+
+    int getMainThreadAccesses() {
+        return mMainThreadAccesses.get();
+    }
+
+    void resetWrites() {
+        mWrites.set(0);
+    }
+
+    private void countMainThreadAccess() {
+        if (Thread.currentThread() == Looper.getMainLooper().getThread()) {
+            mMainThreadAccesses.incrementAndGet();
+        }
+    }
+}
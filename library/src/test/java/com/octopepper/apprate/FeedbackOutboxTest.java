@@ -0,0 +1,176 @@
+package com.octopepper.apprate;
+
+import android.app.Application;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ProviderInfo;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowApplication;
+import org.robolectric.shadows.ShadowContentResolver;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The delivery of the in-app feedback by the {@link FeedbackOutbox}, on a thread of the test.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class FeedbackOutboxTest {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private Application mApplication;
+    private File mOutboxDirectory;
+    private ScheduledExecutorService mExecutor;
+
+    @Before
+    public void setUp() {
+        mApplication = RuntimeEnvironment.application;
+        mOutboxDirectory = new File(new File(mApplication.getFilesDir(), FeedbackOutbox.DIRECTORY_NAME), "outbox");
+        mExecutor = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void deliveredInTheBackground() throws Exception {
+        InMemoryFeedbackSender sender = new InMemoryFeedbackSender();
+        sender.setAvailable(false);
+        FeedbackOutbox outbox = new FeedbackOutbox(mApplication, sender, mExecutor);
+        outbox.enqueue("Too many ads", FeedbackDiagnostics.collect(mApplication, 0));
+        awaitOutbox();
+        assertTrue(sender.getSentMessages().isEmpty());
+
+        // Delivered by the next launch.
+        sender.setAvailable(true);
+        new FeedbackOutbox(mApplication, sender, mExecutor).deliverPending();
+        awaitOutbox();
+        assertEquals(1, sender.getSentMessages().size());
+        assertEquals(0, listOutbox().length);
+    }
+
+    @Test
+    public void interactiveOnlyAfterUserAction() throws Exception {
+        RecordingInteractiveSender sender = new RecordingInteractiveSender();
+        sender.mAvailable = false;
+        FeedbackOutbox outbox = new FeedbackOutbox(mApplication, sender, mExecutor);
+        outbox.enqueue("Too many ads", FeedbackDiagnostics.collect(mApplication, 0));
+        awaitOutbox();
+        assertEquals(1, sender.mMessages.size());
+
+        // Neither retried nor sent by the next launch, where no user action asked for it.
+        sender.mAvailable = true;
+        new FeedbackOutbox(mApplication, sender, mExecutor).deliverPending();
+        awaitOutbox();
+        assertEquals(1, sender.mMessages.size());
+        assertEquals(0, listOutbox().length);
+
+        outbox.enqueue("Crashes on start", FeedbackDiagnostics.collect(mApplication, 0));
+        awaitOutbox();
+        assertEquals(2, sender.mMessages.size());
+        assertEquals("Crashes on start", sender.mMessages.get(1));
+    }
+
+    @Test
+    public void attachmentReadableAfterDelivery() throws Exception {
+        EmailFeedbackSender sender = new EmailFeedbackSender("support@example.com", "Feedback");
+        new FeedbackOutbox(mApplication, sender, mExecutor).enqueue("Too many ads", FeedbackDiagnostics.collect(mApplication, 0));
+        awaitOutbox();
+
+        Intent chooser = ShadowApplication.getInstance().getNextStartedActivity();
+        assertNotNull("Email application not opened", chooser);
+        Intent email = chooser.getParcelableExtra(Intent.EXTRA_INTENT);
+        Uri attachment = email.getParcelableExtra(Intent.EXTRA_STREAM);
+
+        // Read as the email application would, once the outbox is done with the feedback.
+        AppRateFileProvider provider = new AppRateFileProvider();
+        ProviderInfo providerInfo = new ProviderInfo();
+        providerInfo.authority = attachment.getAuthority();
+        providerInfo.grantUriPermissions = true;
+        provider.attachInfo(mApplication, providerInfo);
+        ShadowContentResolver.registerProvider(attachment.getAuthority(), provider);
+        ParcelFileDescriptor file = mApplication.getContentResolver().acquireContentProviderClient(attachment)
+                .openFile(attachment, "r");
+        assertNotNull("Attachment not readable", file);
+        InputStream in = new GZIPInputStream(new FileInputStream(file.getFileDescriptor()));
+        try {
+            assertTrue("Empty attachment", in.read() != -1);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void interruptedWriteSwept() throws Exception {
+        assertTrue(mOutboxDirectory.mkdirs());
+        File tempMessage = new File(mOutboxDirectory, "0000001450000000000.txt.tmp");
+        File orphanDiagnostics = new File(mOutboxDirectory, "0000001450000000000.gz");
+        touch(tempMessage);
+        touch(orphanDiagnostics);
+
+        InMemoryFeedbackSender sender = new InMemoryFeedbackSender();
+        new FeedbackOutbox(mApplication, sender, mExecutor).deliverPending();
+        awaitOutbox();
+
+        assertFalse(tempMessage.exists());
+        assertFalse(orphanDiagnostics.exists());
+        assertTrue(sender.getSentMessages().isEmpty());
+    }
+
+    private File[] listOutbox() {
+        File[] files = mOutboxDirectory.listFiles();
+        return files != null ? files : new File[0];
+    }
+
+    private void awaitOutbox() throws Exception {
+        mExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private static void touch(File file) throws IOException {
+        new FileOutputStream(file).close();
+    }
+
+    private static class RecordingInteractiveSender implements InteractiveFeedbackSender {
+        private final List<String> mMessages = new ArrayList<String>();
+        private volatile boolean mAvailable = true;
+
+        @Override
+        public synchronized void send(Context context, Feedback feedback) throws IOException {
+            mMessages.add(feedback.getMessage());
+            if (!mAvailable) {
+                throw new IOException("Feedback sender unavailable");
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.octopepper.apprate;
+
+import android.app.Application;
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The binary record of the {@link FileRateStateStore}: what is written is read back, a corrupt record is dropped, and the shared
+ * preferences of previous versions are imported.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class FileRateStateStoreTest {
+
+    private static final int MAGIC = 0x41525354;
+
+    private Application mApplication;
+    private File mFile;
+
+    @Before
+    public void setUp() {
+        mApplication = RuntimeEnvironment.application;
+        mFile = new File(mApplication.getFilesDir(), FileRateStateStore.FILE_NAME);
+        mFile.delete();
+    }
+
+    @Test
+    public void roundTrip() {
+        FileRateStateStore store = new FileRateStateStore(mFile);
+        store.putBoolean(PrefsContract.PREF_DONT_SHOW_AGAIN, true)
+                .putBoolean(PrefsContract.PREF_DONT_SHOW_IF_CRASHED, false)
+                .putLong(PrefsContract.PREF_DATE_FIRST_LAUNCH, 1450000000000L)
+                .putLong(PrefsContract.PREF_LAUNCH_COUNT, 12)
+                .putInt(PrefsContract.PREF_APP_VERSION_CODE, 7)
+                .putLong(PrefsContract.PREF_PROMPT_AT, Long.MAX_VALUE)
+                .putLong(PrefsContract.eventCountKey("purchase"), 3)
+                .putBoolean(PrefsContract.conditionMetKey("remote"), true)
+                .putInt(PrefsContract.experimentVariantKey("prompt"), 1);
+        assertTrue(store.commit());
+
+        FileRateStateStore reloaded = new FileRateStateStore(mFile);
+        assertTrue(reloaded.getBoolean(PrefsContract.PREF_DONT_SHOW_AGAIN, false));
+        assertFalse(reloaded.getBoolean(PrefsContract.PREF_DONT_SHOW_IF_CRASHED, true));
+        assertEquals(1450000000000L, reloaded.getLong(PrefsContract.PREF_DATE_FIRST_LAUNCH, 0));
+        assertEquals(12, reloaded.getLong(PrefsContract.PREF_LAUNCH_COUNT, 0));
+        assertEquals(7, reloaded.getInt(PrefsContract.PREF_APP_VERSION_CODE, -1));
+        assertEquals(Long.MAX_VALUE, reloaded.getLong(PrefsContract.PREF_PROMPT_AT, 0));
+        assertEquals(3, reloaded.getLong(PrefsContract.eventCountKey("purchase"), 0));
+        assertTrue(reloaded.getBoolean(PrefsContract.conditionMetKey("remote"), false));
+        assertEquals(1, reloaded.getInt(PrefsContract.experimentVariantKey("prompt"), -1));
+    }
+
+    @Test
+    public void absentValuesStayAbsent() {
+        FileRateStateStore store = new FileRateStateStore(mFile);
+        store.putLong(PrefsContract.PREF_LAUNCH_COUNT, 0);
+        assertTrue(store.commit());
+
+        Map<String, Object> values = new FileRateStateStore(mFile).load();
+        assertEquals(1, values.size());
+        assertEquals(0L, values.get(PrefsContract.PREF_LAUNCH_COUNT));
+    }
+
+    @Test
+    public void compactFixedPart() {
+        FileRateStateStore store = new FileRateStateStore(mFile);
+        store.putBoolean(PrefsContract.PREF_DONT_SHOW_AGAIN, false)
+                .putLong(PrefsContract.PREF_DATE_FIRST_LAUNCH, 1450000000000L)
+                .putLong(PrefsContract.PREF_LAUNCH_COUNT, 12)
+                .putInt(PrefsContract.PREF_APP_VERSION_CODE, 7);
+        assertTrue(store.commit());
+
+        // Header, presence and flags, the two longs and the int of the fixed part, and an empty list of other values.
+        assertEquals(4 + 1 + 1 + 1 + 8 + 8 + 4 + 4, mFile.length());
+    }
+
+    @Test
+    public void truncatedRecord() throws IOException {
+        writeRecordHeader(MAGIC, 1);
+
+        assertTrue(new FileRateStateStore(mFile).load().isEmpty());
+    }
+
+    @Test
+    public void missingHeader() throws IOException {
+        // A list of values without the header of the record.
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(mFile));
+        try {
+            out.writeInt(1);
+            out.writeUTF(PrefsContract.PREF_LAUNCH_COUNT);
+            out.writeByte('J');
+            out.writeLong(12);
+        } finally {
+            out.close();
+        }
+
+        assertTrue(new FileRateStateStore(mFile).load().isEmpty());
+    }
+
+    @Test
+    public void unknownVersion() throws IOException {
+        FileRateStateStore store = new FileRateStateStore(mFile);
+        store.putLong(PrefsContract.PREF_LAUNCH_COUNT, 12);
+        assertTrue(store.commit());
+        byte[] bytes = readBytes(mFile);
+        bytes[4] = 2;
+        writeBytes(mFile, bytes);
+
+        assertTrue(new FileRateStateStore(mFile).load().isEmpty());
+    }
+
+    @Test
+    public void legacyImport() {
+        legacyPreferences().edit()
+                .putLong(PrefsContract.PREF_LAUNCH_COUNT, 5)
+                .putLong(PrefsContract.PREF_DATE_FIRST_LAUNCH, 1450000000000L)
+                .putBoolean(PrefsContract.PREF_DONT_SHOW_AGAIN, true)
+                .putInt(PrefsContract.PREF_APP_VERSION_CODE, 3)
+                .putString("unsupported", "ignored")
+                .commit();
+
+        FileRateStateStore store = new FileRateStateStore(mApplication);
+        assertEquals(5, store.getLong(PrefsContract.PREF_LAUNCH_COUNT, 0));
+        assertTrue(store.getBoolean(PrefsContract.PREF_DONT_SHOW_AGAIN, false));
+        assertTrue("Preferences not cleared after the import", legacyPreferences().getAll().isEmpty());
+
+        // Read back from the record by the next process.
+        Map<String, Object> values = new FileRateStateStore(mApplication).load();
+        assertEquals(4, values.size());
+        assertEquals(1450000000000L, values.get(PrefsContract.PREF_DATE_FIRST_LAUNCH));
+        assertEquals(3, values.get(PrefsContract.PREF_APP_VERSION_CODE));
+    }
+
+    @Test
+    public void corruptRecordImportedAgain() throws IOException {
+        // The preferences are still there when the import could not write the record.
+        legacyPreferences().edit().putLong(PrefsContract.PREF_LAUNCH_COUNT, 5).commit();
+        writeRecordHeader(0, 0);
+
+        Map<String, Object> values = new FileRateStateStore(mApplication).load();
+        assertEquals(5L, values.get(PrefsContract.PREF_LAUNCH_COUNT));
+        assertEquals(5L, new FileRateStateStore(mApplication).load().get(PrefsContract.PREF_LAUNCH_COUNT));
+    }
+
+    private SharedPreferences legacyPreferences() {
+        return mApplication.getSharedPreferences(PrefsContract.SHARED_PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    private void writeRecordHeader(int magic, int version) throws IOException {
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(mFile));
+        try {
+            out.writeInt(magic);
+            out.writeByte(version);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static byte[] readBytes(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            byte[] bytes = new byte[(int) file.length()];
+            int offset = 0;
+            while (offset < bytes.length) {
+                offset += in.read(bytes, offset, bytes.length - offset);
+            }
+            return bytes;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void writeBytes(File file, byte[] bytes) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+}
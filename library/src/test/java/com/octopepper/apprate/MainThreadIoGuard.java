@@ -0,0 +1,114 @@
+package com.octopepper.apprate;
+
+import android.os.Looper;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.security.Permission;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Records every disk read, write and delete made on the main thread under the directories of the application.<br/>
+ * StrictMode never triggers on the JVM where Robolectric runs, so the file accesses are intercepted with a {@link SecurityManager},
+ * which the JVM consults before opening, creating, checking or deleting any file. The accesses of Robolectric to its own resources
+ * are outside the guarded directories.<br/>
+ * The tests run on a JDK 8, as Robolectric 3.0 does. {@link System#setSecurityManager(SecurityManager)} is deprecated since
+ * JDK 17, where it throws unless the JVM is started with <code>-Djava.security.manager=allow</code>.
+ */
+class MainThreadIoGuard extends SecurityManager {
+
+    private final String[] mGuardedPaths;
+    private final List<String> mViolations = new CopyOnWriteArrayList<String>();
+    private SecurityManager mPreviousSecurityManager;
+
+    /**
+     * @param guardedDirectories The directories in which the main thread must not touch any file.
+     */
+    MainThreadIoGuard(File... guardedDirectories) {
+        mGuardedPaths = new String[guardedDirectories.length];
+        for (int i = 0; i < guardedDirectories.length; i++) {
+            mGuardedPaths[i] = guardedDirectories[i].getAbsolutePath();
+        }
+    }
+
+    void install() {
+        mPreviousSecurityManager = System.getSecurityManager();
+        try {
+            System.setSecurityManager(this);
+        } catch (UnsupportedOperationException e) {
+            throw new IllegalStateException("The main thread disk accesses can not be checked on Java "
+                    + System.getProperty("java.version") + ", run the tests on a JDK 8", e);
+        }
+    }
+
+    void uninstall() {
+        System.setSecurityManager(mPreviousSecurityManager);
+    }
+
+    /**
+     * @return The description of each main thread access, with the stack trace of the caller.
+     */
+    List<String> getViolations() {
+        return mViolations;
+    }
+
+    @Override
+    public void checkRead(String file) {
+        check("read", file);
+    }
+
+    @Override
+    public void checkRead(String file, Object context) {
+        check("read", file);
+    }
+
+    @Override
+    public void checkWrite(String file) {
+        check("write", file);
+    }
+
+    @Override
+    public void checkDelete(String file) {
+        check("delete", file);
+    }
+
+    @Override
+    public void checkRead(FileDescriptor fd) {
+    }
+
+    @Override
+    public void checkWrite(FileDescriptor fd) {
+    }
+
+    @Override
+    public void checkPermission(Permission permission) {
+        // Only file accesses are of interest, everything else stays allowed.
+    }
+
+    @Override
+    public void checkPermission(Permission permission, Object context) {
+    }
+
+    private void check(String access, String file) {
+        if (Thread.currentThread() != Looper.getMainLooper().getThread() || !isGuarded(file)) {
+            return;
+        }
+
+        StringBuilder violation = new StringBuilder("Main thread disk ").append(access).append(" of ").append(file);
+        for (StackTraceElement element : new Throwable().getStackTrace()) {
+            violation.append("\n\tat ").append(element);
+        }
+        mViolations.add(violation.toString());
+    }
+
+    private boolean isGuarded(String file) {
+        String path = new File(file).getAbsolutePath();
+        for (String guardedPath : mGuardedPaths) {
+            if (path.startsWith(guardedPath)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
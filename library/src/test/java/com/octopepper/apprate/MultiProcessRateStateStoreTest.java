@@ -0,0 +1,116 @@
+package com.octopepper.apprate;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The mutations of the {@link MultiProcessRateStateStore}: read back at once by the process, written to the shared file by
+ * {@link MultiProcessRateStateStore#apply()} on the background thread or by {@link MultiProcessRateStateStore#commit()}.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class MultiProcessRateStateStoreTest {
+
+    private File mFile;
+    private MultiProcessRateStateStore mStore;
+
+    @Before
+    public void setUp() {
+        mFile = new File(RuntimeEnvironment.application.getFilesDir(), MultiProcessRateStateStore.FILE_NAME);
+        mFile.delete();
+        mStore = new MultiProcessRateStateStore(mFile);
+        mStore.preload();
+    }
+
+    @Test
+    public void applyWritesInTheBackground() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        AppRateExecutors.background().execute(new Runnable() {
+            @Override
+            public void run() {
+                awaitQuietly(release);
+            }
+        });
+
+        mStore.putBoolean(PrefsContract.PREF_DONT_SHOW_AGAIN, true).putLong(PrefsContract.PREF_PROMPT_AT, 12);
+        mStore.apply();
+        assertTrue(mStore.getBoolean(PrefsContract.PREF_DONT_SHOW_AGAIN, false));
+        assertEquals(12, mStore.getLong(PrefsContract.PREF_PROMPT_AT, 0));
+        assertEquals("Written before the background thread ran", 0, fileValue(PrefsContract.PREF_DONT_SHOW_AGAIN,
+                SharedStateFile.TYPE_BOOLEAN));
+
+        release.countDown();
+        awaitBackground();
+        assertEquals(1, fileValue(PrefsContract.PREF_DONT_SHOW_AGAIN, SharedStateFile.TYPE_BOOLEAN));
+        assertEquals(12, fileValue(PrefsContract.PREF_PROMPT_AT, SharedStateFile.TYPE_LONG));
+        assertEquals(12, mStore.getLong(PrefsContract.PREF_PROMPT_AT, 0));
+    }
+
+    @Test
+    public void commitWrites() throws IOException {
+        mStore.putInt(PrefsContract.PREF_APP_VERSION_CODE, 3);
+        assertEquals(-1, fileValue(PrefsContract.PREF_APP_VERSION_CODE, SharedStateFile.TYPE_INT));
+        assertTrue(mStore.commit());
+        assertEquals(3, fileValue(PrefsContract.PREF_APP_VERSION_CODE, SharedStateFile.TYPE_INT));
+    }
+
+    @Test
+    public void addAfterPendingMutations() throws IOException {
+        mStore.addLong(PrefsContract.PREF_LAUNCH_COUNT, 5);
+        mStore.clear().putLong(PrefsContract.PREF_LAUNCH_COUNT, 1);
+        assertEquals(1, mStore.getLong(PrefsContract.PREF_LAUNCH_COUNT, 0));
+        assertEquals(2, mStore.addLong(PrefsContract.PREF_LAUNCH_COUNT, 1));
+        assertEquals(2, fileValue(PrefsContract.PREF_LAUNCH_COUNT, SharedStateFile.TYPE_LONG));
+    }
+
+    @Test
+    public void clearPendingUntilWritten() throws IOException {
+        mStore.putBoolean(PrefsContract.PREF_DONT_SHOW_AGAIN, true);
+        assertTrue(mStore.commit());
+
+        mStore.clear();
+        assertFalse(mStore.getBoolean(PrefsContract.PREF_DONT_SHOW_AGAIN, false));
+        assertEquals(1, fileValue(PrefsContract.PREF_DONT_SHOW_AGAIN, SharedStateFile.TYPE_BOOLEAN));
+        assertTrue(mStore.commit());
+        assertEquals(0, fileValue(PrefsContract.PREF_DONT_SHOW_AGAIN, SharedStateFile.TYPE_BOOLEAN));
+    }
+
+    /**
+     * @return The value in the file, as another process reads it, or -1 if absent.
+     */
+    private long fileValue(String key, byte type) throws IOException {
+        return SharedStateFile.open(mFile).get(key, type, type == SharedStateFile.TYPE_BOOLEAN ? 0 : -1);
+    }
+
+    private static void awaitBackground() throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        AppRateExecutors.background().execute(new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+        assertTrue("Background thread stuck", done.await(10, TimeUnit.SECONDS));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
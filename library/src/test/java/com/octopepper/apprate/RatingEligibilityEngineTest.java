@@ -0,0 +1,402 @@
+package com.octopepper.apprate;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The decisions of the {@link RatingEligibilityEngine}, on the JVM with an {@link InMemoryRateStateStore} and a manual clock.
+ */
+public class RatingEligibilityEngineTest {
+
+    private static final long START = 1450000000000L;
+
+    private final List<String> mEvaluations = new ArrayList<String>();
+
+    private InMemoryRateStateStore mStore;
+    private ManualClock mClock;
+    private RatingEligibilityEngine mEngine;
+
+    @Before
+    public void setUp() {
+        mStore = new InMemoryRateStateStore();
+        mClock = new ManualClock();
+        mEngine = new RatingEligibilityEngine(mStore, mClock);
+    }
+
+    @Test
+    public void showWithoutThresholds() {
+        assertEquals(RatingEligibilityEngine.Decision.SHOW, mEngine.onLaunch());
+        assertEquals(1, mStore.getLong(PrefsContract.PREF_LAUNCH_COUNT, 0));
+        assertEquals(START, mStore.getLong(PrefsContract.PREF_DATE_FIRST_LAUNCH, 0));
+    }
+
+    @Test
+    public void launchThreshold() {
+        mEngine.setMinLaunchesUntilPrompt(3);
+
+        assertEquals(RatingEligibilityEngine.Decision.NOT_ENOUGH_LAUNCHES, mEngine.onLaunch());
+        assertEquals(RatingEligibilityEngine.Decision.NOT_ENOUGH_LAUNCHES, mEngine.onLaunch());
+        assertEquals(RatingEligibilityEngine.Decision.SHOW, mEngine.onLaunch());
+    }
+
+    @Test
+    public void dayThreshold() {
+        mEngine.setMinDaysUntilPrompt(2);
+
+        assertEquals(RatingEligibilityEngine.Decision.NOT_ENOUGH_DAYS, mEngine.onLaunch());
+        mClock.advance(2 * RatingEligibilityEngine.DAY_IN_MILLIS - 1);
+        assertEquals(RatingEligibilityEngine.Decision.NOT_ENOUGH_DAYS, mEngine.onLaunch());
+        mClock.advance(1);
+        assertEquals(RatingEligibilityEngine.Decision.SHOW, mEngine.onLaunch());
+    }
+
+    @Test
+    public void eventThreshold() {
+        mEngine.setMinEventsUntilPrompt("purchase", 2);
+
+        assertEquals(RatingEligibilityEngine.Decision.NOT_ENOUGH_EVENTS, mEngine.onLaunch());
+        mStore.putLong(PrefsContract.eventCountKey("purchase"), 2);
+        assertEquals(RatingEligibilityEngine.Decision.SHOW, mEngine.onLaunch());
+    }
+
+    @Test
+    public void foregroundTimeThreshold() {
+        mEngine.setMinForegroundMinutesUntilPrompt(2);
+
+        assertEquals(RatingEligibilityEngine.Decision.NOT_ENOUGH_FOREGROUND_TIME, mEngine.onLaunch());
+        mEngine.addForegroundTime(90 * 1000L);
+        assertEquals(RatingEligibilityEngine.Decision.NOT_ENOUGH_FOREGROUND_TIME, mEngine.onLaunch());
+        mEngine.addForegroundTime(30 * 1000L);
+        assertEquals(RatingEligibilityEngine.Decision.SHOW, mEngine.onLaunch());
+
+        // Not tracked any more once the minimum is reached.
+        mEngine.addForegroundTime(60 * 1000L);
+        assertEquals(120 * 1000L, mStore.getLong(PrefsContract.PREF_FOREGROUND_MILLIS, 0));
+    }
+
+    @Test
+    public void dontShowAgain() {
+        mEngine.doNotShowAgain();
+
+        assertEquals(RatingEligibilityEngine.Decision.SUPPRESSED_DONT_SHOW_AGAIN, mEngine.onLaunch());
+        assertEquals("Launch counted after declining", 0, mStore.getLong(PrefsContract.PREF_LAUNCH_COUNT, 0));
+        assertFalse(mEngine.isPromptPending());
+    }
+
+    @Test
+    public void crashes() {
+        final long[] crashTimes = {0};
+        mEngine.setCrashHistory(new RatingEligibilityEngine.CrashHistory() {
+            @Override
+            public long getCrashTime(int n) {
+                return n < crashTimes.length ? crashTimes[n] : 0;
+            }
+        }).setMaxCrashesUntilPrompt(0, 7);
+
+        assertEquals(RatingEligibilityEngine.Decision.SHOW, mEngine.onLaunch());
+
+        crashTimes[0] = mClock.currentTimeMillis();
+        mEngine.invalidate();
+        assertEquals(RatingEligibilityEngine.Decision.SUPPRESSED_CRASHED, mEngine.onLaunch());
+
+        // The crash is forgotten after the window.
+        mClock.advance(7 * RatingEligibilityEngine.DAY_IN_MILLIS);
+        assertEquals(RatingEligibilityEngine.Decision.SHOW, mEngine.onLaunch());
+    }
+
+    @Test
+    public void resetLaunchData() {
+        mEngine.setMinLaunchesUntilPrompt(2).setMinEventsUntilPrompt("purchase", 1).setMinForegroundMinutesUntilPrompt(1);
+        mStore.putLong(PrefsContract.eventCountKey("purchase"), 1).putLong(PrefsContract.PREF_FOREGROUND_MILLIS, 60 * 1000L);
+        mEngine.onLaunch();
+        assertEquals(RatingEligibilityEngine.Decision.SHOW, mEngine.onLaunch());
+
+        mClock.advance(1000);
+        mEngine.resetLaunchData();
+
+        assertEquals(0, mStore.getLong(PrefsContract.PREF_LAUNCH_COUNT, -1));
+        assertEquals(0, mStore.getLong(PrefsContract.eventCountKey("purchase"), -1));
+        assertEquals(0, mStore.getLong(PrefsContract.PREF_FOREGROUND_MILLIS, -1));
+        assertEquals(START + 1000, mStore.getLong(PrefsContract.PREF_DATE_FIRST_LAUNCH, 0));
+        assertEquals(RatingEligibilityEngine.Decision.NOT_ENOUGH_LAUNCHES, mEngine.onLaunch());
+    }
+
+    @Test
+    public void upgradeReset() {
+        mStore.putLong(PrefsContract.PREF_INSTALL_ID, 42);
+        assertFalse(mEngine.performAppUpgradeCheck(1, true));
+        mEngine.doNotShowAgain();
+
+        assertFalse(mEngine.performAppUpgradeCheck(2, false));
+        assertEquals(RatingEligibilityEngine.Decision.SUPPRESSED_DONT_SHOW_AGAIN, mEngine.onLaunch());
+
+        assertTrue(mEngine.performAppUpgradeCheck(3, true));
+        assertEquals(3, mStore.getInt(PrefsContract.PREF_APP_VERSION_CODE, -1));
+        assertEquals("Install id not kept", 42, mStore.getLong(PrefsContract.PREF_INSTALL_ID, 0));
+        assertEquals(RatingEligibilityEngine.Decision.SHOW, mEngine.onLaunch());
+    }
+
+    @Test
+    public void precomputeNextLaunch() {
+        mEngine.setMinLaunchesUntilPrompt(2).setMinDaysUntilPrompt(1);
+
+        assertTrue("Nothing precomputed yet", mEngine.isPromptPending());
+        assertEquals(RatingEligibilityEngine.Decision.NOT_ENOUGH_DAYS, mEngine.onLaunch());
+        mEngine.precomputeNextLaunch(false);
+
+        // The second launch is enough, but not before a day.
+        assertFalse(mEngine.isPromptPending());
+        mClock.advance(RatingEligibilityEngine.DAY_IN_MILLIS);
+        assertTrue(mEngine.isPromptPending());
+        assertEquals(RatingEligibilityEngine.Decision.SHOW, mEngine.onLaunch());
+    }
+
+    @Test
+    public void precomputeCountsSkippedLaunch() {
+        mEngine.setMinLaunchesUntilPrompt(3);
+
+        mEngine.onLaunch();
+        mEngine.precomputeNextLaunch(false);
+        assertFalse(mEngine.isPromptPending());
+
+        // A launch that did not call onLaunch is counted by the precomputation.
+        mEngine.precomputeNextLaunch(true);
+        assertEquals(2, mStore.getLong(PrefsContract.PREF_LAUNCH_COUNT, 0));
+        assertTrue(mEngine.isPromptPending());
+        assertEquals(RatingEligibilityEngine.Decision.SHOW, mEngine.onLaunch());
+    }
+
+    @Test
+    public void precomputedDecision() {
+        mEngine.setMinLaunchesUntilPrompt(3).setMinDaysUntilPrompt(1);
+        mEngine.onLaunch();
+        mEngine.precomputeNextLaunch(false);
+
+        // The reason is stored with the time, and found by the engine of the next process.
+        RatingEligibilityEngine engine = new RatingEligibilityEngine(mStore, mClock).setMinLaunchesUntilPrompt(3)
+                .setMinDaysUntilPrompt(1);
+        assertFalse(engine.isPromptPending());
+        assertEquals(RatingEligibilityEngine.Decision.NOT_ENOUGH_LAUNCHES, engine.getPrecomputedDecision());
+        assertEquals("apprate_min_launches", engine.getUnmetCondition());
+
+        engine.precomputeNextLaunch(true);
+        assertFalse(engine.isPromptPending());
+        assertEquals(RatingEligibilityEngine.Decision.NOT_ENOUGH_DAYS, engine.getPrecomputedDecision());
+        assertEquals(null, engine.getUnmetCondition());
+
+        engine.doNotShowAgain();
+        assertEquals(RatingEligibilityEngine.Decision.SUPPRESSED_DONT_SHOW_AGAIN, engine.getPrecomputedDecision());
+    }
+
+    @Test
+    public void precomputedCondition() {
+        mEngine.addCondition(new RecordingCondition("remote", PromptCondition.COST_EXPENSIVE, true, false));
+        assertEquals(RatingEligibilityEngine.Decision.CONDITION_NOT_MET, mEngine.onLaunch());
+        assertEquals("remote", mEngine.getUnmetCondition());
+        mEngine.precomputeNextLaunch(false);
+
+        assertFalse(mEngine.isPromptPending());
+        assertEquals(RatingEligibilityEngine.Decision.CONDITION_NOT_MET, mEngine.getPrecomputedDecision());
+        assertEquals("remote", mEngine.getUnmetCondition());
+    }
+
+    @Test
+    public void precomputedWithoutReason() {
+        // As precomputed by a version that only stored the time.
+        mStore.putLong(PrefsContract.PREF_PROMPT_AT, Long.MAX_VALUE);
+
+        assertFalse(mEngine.isPromptPending());
+        assertEquals(RatingEligibilityEngine.Decision.PRECOMPUTED_NOT_ELIGIBLE, mEngine.getPrecomputedDecision());
+    }
+
+    @Test
+    public void upgradeResetForgetsPrecomputedDecision() {
+        mEngine.performAppUpgradeCheck(1, true);
+        mEngine.doNotShowAgain();
+        assertFalse(mEngine.isPromptPending());
+
+        mEngine.performAppUpgradeCheck(2, true);
+        assertTrue(mEngine.isPromptPending());
+        assertEquals(RatingEligibilityEngine.Decision.SHOW, mEngine.onLaunch());
+    }
+
+    @Test
+    public void sessions() {
+        RecordingHost host = new RecordingHost();
+        mEngine.setMinLaunchesUntilPrompt(3);
+
+        assertEquals(RatingEligibilityEngine.Decision.NOT_ENOUGH_LAUNCHES, mEngine.onSessionStart(host));
+        assertTrue(mEngine.isLaunchCounted());
+        assertEquals(1, host.mEvaluations);
+        mEngine.onSessionEnd(host, !mEngine.isLaunchCounted(), 0);
+
+        // Precomputed: the criteria are not evaluated, the launch is counted at the end of the session.
+        assertEquals(RatingEligibilityEngine.Decision.NOT_ENOUGH_LAUNCHES, mEngine.onSessionStart(host));
+        assertFalse(mEngine.isLaunchCounted());
+        assertEquals(2, host.mEvaluations);
+        mEngine.onSessionEnd(host, !mEngine.isLaunchCounted(), 0);
+        assertEquals(2, mStore.getLong(PrefsContract.PREF_LAUNCH_COUNT, 0));
+
+        assertEquals(RatingEligibilityEngine.Decision.SHOW, mEngine.onSessionStart(host));
+        assertEquals(3, mStore.getLong(PrefsContract.PREF_LAUNCH_COUNT, 0));
+    }
+
+    @Test
+    public void sessionForegroundTime() {
+        RecordingHost host = new RecordingHost();
+        mEngine.setMinForegroundMinutesUntilPrompt(2);
+
+        assertEquals(RatingEligibilityEngine.Decision.NOT_ENOUGH_FOREGROUND_TIME, mEngine.onSessionStart(host));
+        mEngine.onSessionEnd(host, false, 90 * 1000L);
+        assertEquals(RatingEligibilityEngine.Decision.NOT_ENOUGH_FOREGROUND_TIME, mEngine.onSessionStart(host));
+        mEngine.onSessionEnd(host, true, 30 * 1000L);
+        assertEquals(RatingEligibilityEngine.Decision.SHOW, mEngine.onSessionStart(host));
+    }
+
+    @Test
+    public void sessionUpgradeReset() {
+        RecordingHost host = new RecordingHost();
+        mEngine.setResetOnAppUpgrade(true);
+
+        assertEquals(RatingEligibilityEngine.Decision.SHOW, mEngine.onSessionStart(host));
+        mEngine.doNotShowAgain();
+        mEngine.onSessionEnd(host, false, 0);
+        assertEquals(RatingEligibilityEngine.Decision.SUPPRESSED_DONT_SHOW_AGAIN, mEngine.onSessionStart(host));
+        mEngine.onSessionEnd(host, true, 0);
+
+        // The upgrade is checked before the precomputed decision is trusted.
+        host.mVersionCode = 2;
+        assertEquals(RatingEligibilityEngine.Decision.SHOW, mEngine.onSessionStart(host));
+        assertEquals(1, host.mResets);
+    }
+
+    @Test
+    public void conditionsByCost() {
+        mEngine.addCondition(new RecordingCondition("expensive", PromptCondition.COST_EXPENSIVE, false, false))
+                .addCondition(new RecordingCondition("memory", PromptCondition.COST_MEMORY, false, true))
+                .addCondition(new RecordingCondition("state", PromptCondition.COST_STATE, false, false));
+
+        assertEquals(RatingEligibilityEngine.Decision.CONDITION_NOT_MET, mEngine.onLaunch());
+        // Evaluated from the cheapest, up to the first that is not met.
+        assertEquals(2, mEvaluations.size());
+        assertEquals("memory", mEvaluations.get(0));
+        assertEquals("state", mEvaluations.get(1));
+    }
+
+    @Test
+    public void thresholdBeforeExpensiveCondition() {
+        mEngine.addCondition(new RecordingCondition("expensive", PromptCondition.COST_EXPENSIVE, false, true))
+                .setMinLaunchesUntilPrompt(2);
+
+        assertEquals(RatingEligibilityEngine.Decision.NOT_ENOUGH_LAUNCHES, mEngine.onLaunch());
+        assertTrue("Expensive condition evaluated before the launch threshold", mEvaluations.isEmpty());
+        assertEquals(RatingEligibilityEngine.Decision.SHOW, mEngine.onLaunch());
+        assertEquals(1, mEvaluations.size());
+    }
+
+    @Test
+    public void conditionReplacedByName() {
+        mEngine.addCondition(new RecordingCondition("remote", PromptCondition.COST_MEMORY, false, false))
+                .addCondition(new RecordingCondition("remote", PromptCondition.COST_MEMORY, false, true));
+
+        assertEquals(RatingEligibilityEngine.Decision.SHOW, mEngine.onLaunch());
+        assertEquals(1, mEvaluations.size());
+    }
+
+    @Test
+    public void cacheableConditionMemoized() {
+        RecordingCondition condition = new RecordingCondition("cacheable", PromptCondition.COST_EXPENSIVE, true, true);
+        mEngine.addCondition(condition);
+
+        assertEquals(RatingEligibilityEngine.Decision.SHOW, mEngine.onLaunch());
+        assertTrue(mStore.getBoolean(PrefsContract.conditionMetKey("cacheable"), false));
+
+        // Remembered in memory, and in the state by a new engine.
+        condition.mMet = false;
+        assertEquals(RatingEligibilityEngine.Decision.SHOW, mEngine.onLaunch());
+        RatingEligibilityEngine engine = new RatingEligibilityEngine(mStore, mClock).addCondition(condition);
+        assertEquals(RatingEligibilityEngine.Decision.SHOW, engine.onLaunch());
+        assertEquals(1, mEvaluations.size());
+
+        // Forgotten when the tracking restarts.
+        engine.resetLaunchData();
+        assertEquals(RatingEligibilityEngine.Decision.CONDITION_NOT_MET, engine.onLaunch());
+        assertEquals(2, mEvaluations.size());
+    }
+
+    private class RecordingCondition implements PromptCondition {
+        private final String mName;
+        private final int mCost;
+        private final boolean mCacheable;
+        private boolean mMet;
+
+        RecordingCondition(String name, int cost, boolean cacheable, boolean met) {
+            mName = name;
+            mCost = cost;
+            mCacheable = cacheable;
+            mMet = met;
+        }
+
+        @Override
+        public String getName() {
+            return mName;
+        }
+
+        @Override
+        public int getCost() {
+            return mCost;
+        }
+
+        @Override
+        public boolean isCacheable() {
+            return mCacheable;
+        }
+
+        @Override
+        public boolean isMet(RateStateStore store, long launchCount) {
+            mEvaluations.add(mName);
+            return mMet;
+        }
+    }
+
+    private static class RecordingHost implements RatingEligibilityEngine.SessionHost {
+        private int mVersionCode = 1;
+        private int mResets;
+        private int mEvaluations;
+
+        @Override
+        public int getVersionCode() {
+            return mVersionCode;
+        }
+
+        @Override
+        public void onTrackingReset() {
+            mResets++;
+        }
+
+        @Override
+        public void beforeEvaluation() {
+            mEvaluations++;
+        }
+    }
+
+    private static class ManualClock implements RatingEligibilityEngine.Clock {
+        private long mNow = START;
+
+        @Override
+        public long currentTimeMillis() {
+            return mNow;
+        }
+
+        void advance(long millis) {
+            mNow += millis;
+        }
+    }
+}
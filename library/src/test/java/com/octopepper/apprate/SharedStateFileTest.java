@@ -0,0 +1,271 @@
+package com.octopepper.apprate;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * The {@link SharedStateFile} on the JVM, shared with child processes running {@link Child}.
+ */
+public class SharedStateFileTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final List<Process> mChildren = new ArrayList<Process>();
+
+    private File mFile;
+    private SharedStateFile mSharedFile;
+    private ExecutorService mExecutor;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = new File(mFolder.getRoot(), "apprate_shared_state");
+        mSharedFile = SharedStateFile.open(mFile);
+        mExecutor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+        for (Process child : mChildren) {
+            child.destroy();
+        }
+    }
+
+    @Test
+    public void values() throws IOException {
+        assertTrue(mSharedFile.isCreated());
+        mSharedFile.put(PrefsContract.PREF_DONT_SHOW_AGAIN, SharedStateFile.TYPE_BOOLEAN, 1);
+        mSharedFile.put(PrefsContract.PREF_APP_VERSION_CODE, SharedStateFile.TYPE_INT, 12);
+        mSharedFile.put(PrefsContract.PREF_LAUNCH_COUNT, SharedStateFile.TYPE_LONG, 3);
+
+        assertEquals(1, mSharedFile.get(PrefsContract.PREF_DONT_SHOW_AGAIN, SharedStateFile.TYPE_BOOLEAN, 0));
+        assertEquals(12, mSharedFile.get(PrefsContract.PREF_APP_VERSION_CODE, SharedStateFile.TYPE_INT, -1));
+        assertEquals("Another type", -1, mSharedFile.get(PrefsContract.PREF_LAUNCH_COUNT, SharedStateFile.TYPE_INT, -1));
+        assertEquals(4, mSharedFile.add(PrefsContract.PREF_LAUNCH_COUNT, 1));
+
+        SharedStateFile reopened = SharedStateFile.open(mFile);
+        assertFalse(reopened.isCreated());
+        assertEquals(4, reopened.get(PrefsContract.PREF_LAUNCH_COUNT, SharedStateFile.TYPE_LONG, 0));
+    }
+
+    @Test
+    public void longKeys() throws IOException {
+        String prefix = PrefsContract.conditionMetKey(repeat('x', SharedStateFile.MAX_KEY_LENGTH));
+        mSharedFile.put(prefix + "_first", SharedStateFile.TYPE_BOOLEAN, 1);
+        mSharedFile.put(prefix + "_second", SharedStateFile.TYPE_LONG, 2);
+
+        SharedStateFile reopened = SharedStateFile.open(mFile);
+        assertEquals(1, reopened.get(prefix + "_first", SharedStateFile.TYPE_BOOLEAN, 0));
+        assertEquals(2, reopened.get(prefix + "_second", SharedStateFile.TYPE_LONG, 0));
+        assertEquals(0, reopened.get(prefix, SharedStateFile.TYPE_BOOLEAN, 0));
+    }
+
+    @Test
+    public void full() throws IOException {
+        for (int i = 0; i < SharedStateFile.SLOTS; i++) {
+            mSharedFile.put("key_" + i, SharedStateFile.TYPE_LONG, i);
+        }
+        try {
+            mSharedFile.put("key_" + SharedStateFile.SLOTS, SharedStateFile.TYPE_LONG, 0);
+            fail("Write to a full file not reported");
+        } catch (SharedStateFile.FullException expected) {
+        }
+        try {
+            mSharedFile.add("key_" + SharedStateFile.SLOTS, 1);
+            fail("Increment in a full file not reported");
+        } catch (SharedStateFile.FullException expected) {
+        }
+
+        // The existing keys are still written.
+        mSharedFile.put("key_0", SharedStateFile.TYPE_LONG, 10);
+        assertEquals(10, mSharedFile.get("key_0", SharedStateFile.TYPE_LONG, -1));
+        assertEquals(SharedStateFile.SLOTS - 1,
+                mSharedFile.get("key_" + (SharedStateFile.SLOTS - 1), SharedStateFile.TYPE_LONG, -1));
+    }
+
+    @Test
+    public void deadWriterRepaired() throws IOException {
+        mSharedFile.put(PrefsContract.PREF_LAUNCH_COUNT, SharedStateFile.TYPE_LONG, 3);
+
+        // The sequence left odd by a process that died in the middle of a write.
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, SharedStateFile.SIZE);
+            int sequence = buffer.getInt(8);
+            buffer.putInt(8, sequence | 1);
+
+            assertEquals(3, mSharedFile.get(PrefsContract.PREF_LAUNCH_COUNT, SharedStateFile.TYPE_LONG, 0));
+            assertEquals("Sequence not repaired", 0, buffer.getInt(8) & 1);
+            assertEquals(3, mSharedFile.get(PrefsContract.PREF_LAUNCH_COUNT, SharedStateFile.TYPE_LONG, 0));
+        } finally {
+            file.close();
+        }
+    }
+
+    @Test
+    public void readsDuringWrites() throws Exception {
+        Future<Void> writer = mExecutor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                for (long i = 1; i <= 20000; i++) {
+                    mSharedFile.put(PrefsContract.PREF_PROMPT_AT, SharedStateFile.TYPE_LONG, i << 32 | i);
+                }
+                return null;
+            }
+        });
+        while (!writer.isDone()) {
+            long value = mSharedFile.get(PrefsContract.PREF_PROMPT_AT, SharedStateFile.TYPE_LONG, 0);
+            assertEquals("Torn read", value >>> 32, value & 0xffffffffL);
+        }
+        writer.get();
+    }
+
+    @Test
+    public void writesWaitForTheLock() throws Exception {
+        mSharedFile.put(PrefsContract.PREF_LAUNCH_COUNT, SharedStateFile.TYPE_LONG, 3);
+        Process lockHolder = startChild("lock", mFile.getAbsolutePath());
+        BufferedReader output = new BufferedReader(new InputStreamReader(lockHolder.getInputStream(), "UTF-8"));
+        assertEquals("locked", output.readLine());
+
+        // The increments take the lock too, they are not lock-free.
+        Future<Long> increment = mExecutor.submit(new Callable<Long>() {
+            @Override
+            public Long call() throws IOException {
+                return mSharedFile.add(PrefsContract.PREF_LAUNCH_COUNT, 1);
+            }
+        });
+        Future<Void> write = mExecutor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                mSharedFile.put(PrefsContract.PREF_DONT_SHOW_AGAIN, SharedStateFile.TYPE_BOOLEAN, 1);
+                return null;
+            }
+        });
+        try {
+            increment.get(300, TimeUnit.MILLISECONDS);
+            fail("Incremented while another process held the lock");
+        } catch (TimeoutException expected) {
+        }
+        assertFalse("Written while another process held the lock", write.isDone());
+        assertEquals("Read blocked by the lock", 3, mSharedFile.get(PrefsContract.PREF_LAUNCH_COUNT, SharedStateFile.TYPE_LONG, 0));
+
+        OutputStream input = lockHolder.getOutputStream();
+        input.write('\n');
+        input.flush();
+        assertEquals(4, (long) increment.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        write.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(1, mSharedFile.get(PrefsContract.PREF_DONT_SHOW_AGAIN, SharedStateFile.TYPE_BOOLEAN, 0));
+    }
+
+    @Test
+    public void incrementsAcrossProcesses() throws Exception {
+        final int increments = 2000;
+        List<Process> children = new ArrayList<Process>();
+        for (int i = 0; i < 2; i++) {
+            children.add(startChild("add", mFile.getAbsolutePath(), PrefsContract.PREF_LAUNCH_COUNT, String.valueOf(increments)));
+        }
+        List<Future<Void>> threads = new ArrayList<Future<Void>>();
+        for (int i = 0; i < 2; i++) {
+            threads.add(mExecutor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    for (int j = 0; j < increments; j++) {
+                        mSharedFile.add(PrefsContract.PREF_LAUNCH_COUNT, 1);
+                    }
+                    return null;
+                }
+            }));
+        }
+
+        for (Future<Void> thread : threads) {
+            thread.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+        for (Process child : children) {
+            assertEquals("Child process failed", 0, child.waitFor());
+        }
+        assertEquals(4 * increments, mSharedFile.get(PrefsContract.PREF_LAUNCH_COUNT, SharedStateFile.TYPE_LONG, 0));
+    }
+
+    private Process startChild(String... args) throws IOException {
+        String classPath = location(SharedStateFile.class) + File.pathSeparator + location(Child.class);
+        List<String> command = new ArrayList<String>();
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        command.add("-cp");
+        command.add(classPath);
+        command.add(Child.class.getName());
+        for (String arg : args) {
+            command.add(arg);
+        }
+        Process child = new ProcessBuilder(command).redirectErrorStream(true).start();
+        mChildren.add(child);
+        return child;
+    }
+
+    private static String location(Class<?> type) {
+        return new File(type.getProtectionDomain().getCodeSource().getLocation().getPath()).getPath();
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder builder = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Another process of the application:<br/>
+     * <code>add &lt;file&gt; &lt;key&gt; &lt;count&gt;</code> increments the key count times,<br/>
+     * <code>lock &lt;file&gt;</code> holds the lock of the file, from printing <code>locked</code> until a line is read.
+     */
+    public static class Child {
+
+        public static void main(String[] args) throws IOException {
+            File file = new File(args[1]);
+            if ("add".equals(args[0])) {
+                SharedStateFile sharedFile = SharedStateFile.open(file);
+                int count = Integer.parseInt(args[3]);
+                for (int i = 0; i < count; i++) {
+                    sharedFile.add(args[2], 1);
+                }
+            } else {
+                RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+                FileLock lock = randomAccessFile.getChannel().lock();
+                System.out.println("locked");
+                System.out.flush();
+                new BufferedReader(new InputStreamReader(System.in, "UTF-8")).readLine();
+                lock.release();
+                randomAccessFile.close();
+            }
+        }
+    }
+}
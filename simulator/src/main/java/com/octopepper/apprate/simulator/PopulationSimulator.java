@@ -0,0 +1,245 @@
+package com.octopepper.apprate.simulator;
+
+import com.octopepper.apprate.InMemoryRateStateStore;
+import com.octopepper.apprate.PrefsContract;
+import com.octopepper.apprate.RateStateStore;
+import com.octopepper.apprate.RatingEligibilityEngine;
+import com.octopepper.apprate.RatingEligibilityEngine.Decision;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Replays the timelines of a population through the {@link RatingEligibilityEngine}, with an in-memory store and a clock that
+ * follows the timeline, once for each of the settings of a sweep.<br/>
+ * Each session runs {@link RatingEligibilityEngine#onSessionStart(RatingEligibilityEngine.SessionHost)} and
+ * {@link RatingEligibilityEngine#onSessionEnd(RatingEligibilityEngine.SessionHost, boolean, long)}, the sequence AppRate runs, so
+ * the precomputed decisions, the significant events, the foreground time and the upgrades are taken into account as in the
+ * application. The engine is kept from one session to the next, as in a process that stays alive.<br/>
+ * The population is split across the cores with fork-join. Each timeline is generated once and replayed with all the settings, so
+ * they are compared on the same users.
+ */
+public class PopulationSimulator {
+
+    private static final int LEAF_USERS = 1024;
+    private static final int CRASH_HISTORY_CAPACITY = 8;
+
+    private final PopulationSource mPopulation;
+    private final ForkJoinPool mPool;
+    private double mRemindLaterRate = 0.3;
+    private long mSeed = 0;
+    private int mLeafUsers = LEAF_USERS;
+    private boolean mReplayStore = true;
+
+    /**
+     * @param population The users to simulate.
+     * @param pool       The pool the simulation runs in.
+     */
+    public PopulationSimulator(PopulationSource population, ForkJoinPool pool) {
+        mPopulation = population;
+        mPool = pool;
+    }
+
+    /**
+     * @param remindLaterRate The probability that a prompted user asks to be reminded later, which restarts the tracking. The
+     *                        other users rate the application or decline, and are never prompted again.<br/>
+     *                        Default value is 0.3.
+     * @param seed            The seed of the answers, which are the same for the same user with all the settings.
+     * @return This {@link PopulationSimulator} object to allow chaining.
+     */
+    public PopulationSimulator setRemindLaterRate(double remindLaterRate, long seed) {
+        mRemindLaterRate = remindLaterRate;
+        mSeed = seed;
+        return this;
+    }
+
+    /**
+     * @param leafUsers The number of users under which a part of the population is no longer split. For tests only.
+     * @return This {@link PopulationSimulator} object to allow chaining.
+     */
+    PopulationSimulator setLeafUsers(int leafUsers) {
+        mLeafUsers = leafUsers;
+        return this;
+    }
+
+    /**
+     * @param replayStore <code>false</code> to replay with an {@link InMemoryRateStateStore} instead of the
+     *                    {@link ReplayStateStore}. For tests only.
+     * @return This {@link PopulationSimulator} object to allow chaining.
+     */
+    PopulationSimulator setReplayStore(boolean replayStore) {
+        mReplayStore = replayStore;
+        return this;
+    }
+
+    /**
+     * @param settings The settings to compare.
+     * @return The result of each of the settings, in the same order.
+     */
+    public SimulationResult[] run(PromptSettings... settings) {
+        return mPool.invoke(new SimulationTask(settings, 0, mPopulation.size()));
+    }
+
+    private class SimulationTask extends RecursiveTask<SimulationResult[]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final PromptSettings[] mSettings;
+        private final int mFrom;
+        private final int mTo;
+
+        SimulationTask(PromptSettings[] settings, int from, int to) {
+            mSettings = settings;
+            mFrom = from;
+            mTo = to;
+        }
+
+        @Override
+        protected SimulationResult[] compute() {
+            if (mTo - mFrom <= mLeafUsers) {
+                return new Replay(mSettings).run(mFrom, mTo);
+            }
+
+            int middle = (mFrom + mTo) >>> 1;
+            SimulationTask left = new SimulationTask(mSettings, mFrom, middle);
+            left.fork();
+            SimulationResult[] results = new SimulationTask(mSettings, middle, mTo).compute();
+            SimulationResult[] leftResults = left.join();
+            for (int i = 0; i < results.length; i++) {
+                results[i].merge(leftResults[i]);
+            }
+            return results;
+        }
+    }
+
+    /**
+     * The state of one thread replaying users, reused from one user to the next.
+     */
+    private class Replay implements RatingEligibilityEngine.Clock, RatingEligibilityEngine.CrashHistory,
+            RatingEligibilityEngine.SessionHost {
+
+        private final PromptSettings[] mSettings;
+        private final SimulationResult[] mResults;
+        private final RatingEligibilityEngine[] mEngines;
+        private final RateStateStore mStore = mReplayStore ? new ReplayStateStore() : new InMemoryRateStateStore();
+        private final UserTimeline mTimeline = new UserTimeline();
+        private final long[] mCrashTimes = new long[CRASH_HISTORY_CAPACITY];
+        private final String mEventCountKey = PrefsContract.eventCountKey(PromptSettings.EVENT);
+        private int mCrashCount;
+        private long mNow;
+        private int mVersionCode;
+        private long mPendingEvents;
+
+        Replay(PromptSettings[] settings) {
+            mSettings = settings;
+            mResults = new SimulationResult[settings.length];
+            mEngines = new RatingEligibilityEngine[settings.length];
+            for (int i = 0; i < settings.length; i++) {
+                mResults[i] = new SimulationResult(settings[i]);
+                mEngines[i] = new RatingEligibilityEngine(mStore, this);
+                settings[i].configure(mEngines[i], this);
+            }
+        }
+
+        SimulationResult[] run(int from, int to) {
+            for (int user = from; user < to; user++) {
+                mPopulation.fill(user, mTimeline);
+                for (int i = 0; i < mSettings.length; i++) {
+                    replayUser(user, mSettings[i], mEngines[i], mResults[i]);
+                }
+            }
+            return mResults;
+        }
+
+        private void replayUser(int user, PromptSettings settings, RatingEligibilityEngine engine, SimulationResult result) {
+            mStore.clear();
+            Arrays.fill(mCrashTimes, 0);
+            mCrashCount = 0;
+            mVersionCode = 1;
+            mPendingEvents = 0;
+            engine.invalidate();
+
+            int prompts = 0;
+            int daysToFirstPrompt = 0;
+            long firstLaunch = -1;
+            long sessionStart = -1;
+            boolean launchCounted = false;
+            Decision lastDecision = null;
+            for (int i = 0; i < mTimeline.size(); i++) {
+                mNow = mTimeline.getTime(i);
+                byte kind = mTimeline.getKind(i);
+                if (kind == UserTimeline.CRASH) {
+                    mCrashTimes[mCrashCount++ % CRASH_HISTORY_CAPACITY] = mNow;
+                    // The process dies: the session ends without preparing the next one, and its foreground time is lost.
+                    sessionStart = -1;
+                } else if (kind == UserTimeline.UPGRADE) {
+                    mVersionCode++;
+                } else if (kind == UserTimeline.EVENT) {
+                    mPendingEvents++;
+                } else if (kind == UserTimeline.BACKGROUND) {
+                    if (sessionStart >= 0) {
+                        engine.onSessionEnd(this, !launchCounted, mNow - sessionStart);
+                        sessionStart = -1;
+                    }
+                } else {
+                    if (sessionStart >= 0) {
+                        // A recorded timeline without the return to the background: the session ended by the time of this launch.
+                        engine.onSessionEnd(this, !launchCounted, 0);
+                    }
+                    if (firstLaunch < 0) {
+                        firstLaunch = mNow;
+                    }
+                    sessionStart = mNow;
+                    lastDecision = engine.onSessionStart(this);
+                    launchCounted = engine.isLaunchCounted();
+                    result.addLaunchDecision(lastDecision);
+                    if (lastDecision.isShow()) {
+                        if (prompts == 0) {
+                            daysToFirstPrompt = (int) ((mNow - firstLaunch) / RatingEligibilityEngine.DAY_IN_MILLIS);
+                        }
+                        prompts++;
+                        if (SimulationRandom.uniform(mSeed, user, prompts) < mRemindLaterRate) {
+                            engine.resetLaunchData();
+                        } else {
+                            engine.doNotShowAgain();
+                        }
+                    }
+                }
+            }
+            result.addUser(prompts, daysToFirstPrompt, lastDecision);
+        }
+
+        @Override
+        public int getVersionCode() {
+            return mVersionCode;
+        }
+
+        @Override
+        public void onTrackingReset() {
+            Arrays.fill(mCrashTimes, 0);
+            mCrashCount = 0;
+        }
+
+        @Override
+        public void beforeEvaluation() {
+            if (mPendingEvents > 0) {
+                mStore.putLong(mEventCountKey, mStore.getLong(mEventCountKey, 0) + mPendingEvents);
+                mPendingEvents = 0;
+            }
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return mNow;
+        }
+
+        @Override
+        public long getCrashTime(int n) {
+            if (n >= mCrashCount || n >= CRASH_HISTORY_CAPACITY) {
+                return 0;
+            }
+            return mCrashTimes[(mCrashCount - 1 - n) % CRASH_HISTORY_CAPACITY];
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.octopepper.apprate.simulator;
+
+/**
+ * The users of a simulation, synthetic or recorded. Must be safe to read from several threads.
+ */
+public interface PopulationSource {
+
+    /**
+     * @return The number of users.
+     */
+    int size();
+
+    /**
+     * @param user     The index of a user, in [0, {@link #size()}).
+     * @param timeline The timeline to fill with the events of the user, always the same for the same user.
+     */
+    void fill(int user, UserTimeline timeline);
+}
@@ -0,0 +1,107 @@
+package com.octopepper.apprate.simulator;
+
+import com.octopepper.apprate.RatingEligibilityEngine;
+
+/**
+ * The AppRate settings of one point of a sweep, as they would be passed to <code>AppRate</code>.
+ */
+public class PromptSettings {
+
+    /**
+     * The name of the significant event of the timelines.
+     */
+    public static final String EVENT = "simulated_event";
+
+    private final long mMinLaunchesUntilPrompt;
+    private final long mMinDaysUntilPrompt;
+    private long mMinEventsUntilPrompt = 0;
+    private long mMinForegroundMinutesUntilPrompt = 0;
+    private int mMaxCrashes = -1;
+    private int mCrashWindowDays = 30;
+    private boolean mResetOnAppUpgrade = false;
+
+    public PromptSettings(long minLaunchesUntilPrompt, long minDaysUntilPrompt) {
+        mMinLaunchesUntilPrompt = minLaunchesUntilPrompt;
+        mMinDaysUntilPrompt = minDaysUntilPrompt;
+    }
+
+    /**
+     * @param maxCrashes The maximum number of crashes in the last days for the dialog to be shown, or -1 to ignore crashes.
+     * @param days       The number of days after which a crash is forgotten.
+     * @return This {@link PromptSettings} object to allow chaining.
+     */
+    public PromptSettings setMaxCrashesUntilPrompt(int maxCrashes, int days) {
+        mMaxCrashes = maxCrashes;
+        mCrashWindowDays = days;
+        return this;
+    }
+
+    /**
+     * @param minEventsUntilPrompt The minimum number of significant events before the dialog can be shown.
+     * @return This {@link PromptSettings} object to allow chaining.
+     */
+    public PromptSettings setMinEventsUntilPrompt(long minEventsUntilPrompt) {
+        mMinEventsUntilPrompt = minEventsUntilPrompt;
+        return this;
+    }
+
+    /**
+     * @param minForegroundMinutesUntilPrompt The minimum time spent with the application in the foreground before the dialog can be
+     *                                        shown, in minutes.
+     * @return This {@link PromptSettings} object to allow chaining.
+     */
+    public PromptSettings setMinForegroundMinutesUntilPrompt(long minForegroundMinutesUntilPrompt) {
+        mMinForegroundMinutesUntilPrompt = minForegroundMinutesUntilPrompt;
+        return this;
+    }
+
+    /**
+     * @param resetOnAppUpgrade If <code>true</code> the tracking is reset when the application is upgraded.
+     * @return This {@link PromptSettings} object to allow chaining.
+     */
+    public PromptSettings setResetOnAppUpgrade(boolean resetOnAppUpgrade) {
+        mResetOnAppUpgrade = resetOnAppUpgrade;
+        return this;
+    }
+
+    public long getMinLaunchesUntilPrompt() {
+        return mMinLaunchesUntilPrompt;
+    }
+
+    public long getMinDaysUntilPrompt() {
+        return mMinDaysUntilPrompt;
+    }
+
+    public boolean isResetOnAppUpgrade() {
+        return mResetOnAppUpgrade;
+    }
+
+    /**
+     * @param engine The engine to configure like <code>AppRate</code> does.
+     * @param crashes The crashes of the simulated user.
+     */
+    void configure(RatingEligibilityEngine engine, RatingEligibilityEngine.CrashHistory crashes) {
+        engine.setMinLaunchesUntilPrompt(mMinLaunchesUntilPrompt)
+                .setMinDaysUntilPrompt(mMinDaysUntilPrompt)
+                .setResetOnAppUpgrade(mResetOnAppUpgrade);
+        if (mMinEventsUntilPrompt > 0) {
+            engine.setMinEventsUntilPrompt(EVENT, mMinEventsUntilPrompt);
+        }
+        if (mMinForegroundMinutesUntilPrompt > 0) {
+            engine.setMinForegroundMinutesUntilPrompt(mMinForegroundMinutesUntilPrompt);
+        }
+        if (mMaxCrashes >= 0) {
+            engine.setCrashHistory(crashes)
+                    .setMaxCrashesUntilPrompt(mMaxCrashes, mCrashWindowDays);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "launches=" + mMinLaunchesUntilPrompt + " days=" + mMinDaysUntilPrompt
+                + (mMinEventsUntilPrompt > 0 ? " events=" + mMinEventsUntilPrompt : "")
+                + (mMinForegroundMinutesUntilPrompt > 0 ? " foreground=" + mMinForegroundMinutesUntilPrompt + "min" : "")
+                + (mMaxCrashes >= 0 ? " crashes=" + mMaxCrashes + "/" + mCrashWindowDays + "d" : "")
+                + (mResetOnAppUpgrade ? " reset" : "");
+    }
+}
@@ -0,0 +1,109 @@
+package com.octopepper.apprate.simulator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Timelines recorded from real users, read from lines of <code>user,timeMillis,event</code> where the event is
+ * <code>launch</code>, <code>crash</code>, <code>upgrade</code>, <code>event</code> for a significant event or
+ * <code>background</code> when the application went to the background. Empty lines and lines starting with <code>#</code> are ignored,
+ * the lines of a user do not have to be contiguous nor sorted.
+ */
+public class RecordedPopulation implements PopulationSource {
+
+    private final List<UserTimeline> mTimelines;
+
+    private RecordedPopulation(List<UserTimeline> timelines) {
+        mTimelines = timelines;
+    }
+
+    /**
+     * @param reader The recorded events.
+     * @return The recorded users.
+     * @throws IOException If the events cannot be read or a line is malformed.
+     */
+    public static RecordedPopulation read(Reader reader) throws IOException {
+        Map<String, List<long[]>> eventsByUser = new HashMap<String, List<long[]>>();
+        List<String> users = new ArrayList<String>();
+
+        BufferedReader lines = new BufferedReader(reader);
+        int lineNumber = 0;
+        String line;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            String[] fields = line.split(",");
+            if (fields.length != 3) {
+                throw new IOException("Line " + lineNumber + ": expected user,timeMillis,event");
+            }
+            long time;
+            try {
+                time = Long.parseLong(fields[1].trim());
+            } catch (NumberFormatException e) {
+                throw new IOException("Line " + lineNumber + ": invalid time " + fields[1]);
+            }
+
+            List<long[]> events = eventsByUser.get(fields[0]);
+            if (events == null) {
+                events = new ArrayList<long[]>();
+                eventsByUser.put(fields[0], events);
+                users.add(fields[0]);
+            }
+            events.add(new long[]{time, parseKind(fields[2].trim(), lineNumber)});
+        }
+
+        List<UserTimeline> timelines = new ArrayList<UserTimeline>(users.size());
+        for (String user : users) {
+            long[][] events = eventsByUser.get(user).toArray(new long[0][]);
+            // Stable, so that an upgrade recorded at the time of a launch stays before it.
+            Arrays.sort(events, new Comparator<long[]>() {
+                @Override
+                public int compare(long[] lhs, long[] rhs) {
+                    return lhs[0] < rhs[0] ? -1 : (lhs[0] == rhs[0] ? 0 : 1);
+                }
+            });
+            UserTimeline timeline = new UserTimeline();
+            for (long[] event : events) {
+                timeline.add(event[0], (byte) event[1]);
+            }
+            timelines.add(timeline);
+        }
+        return new RecordedPopulation(timelines);
+    }
+
+    private static byte parseKind(String event, int lineNumber) throws IOException {
+        if (event.equals("launch")) {
+            return UserTimeline.LAUNCH;
+        } else if (event.equals("crash")) {
+            return UserTimeline.CRASH;
+        } else if (event.equals("upgrade")) {
+            return UserTimeline.UPGRADE;
+        } else if (event.equals("event")) {
+            return UserTimeline.EVENT;
+        } else if (event.equals("background")) {
+            return UserTimeline.BACKGROUND;
+        }
+        throw new IOException("Line " + lineNumber + ": unknown event " + event);
+    }
+
+    @Override
+    public int size() {
+        return mTimelines.size();
+    }
+
+    @Override
+    public void fill(int user, UserTimeline timeline) {
+        timeline.copyFrom(mTimelines.get(user));
+    }
+}
@@ -0,0 +1,125 @@
+package com.octopepper.apprate.simulator;
+
+import com.octopepper.apprate.InMemoryRateStateStore;
+import com.octopepper.apprate.PrefsContract;
+import com.octopepper.apprate.RateStateStore;
+
+/**
+ * An in-memory {@link RateStateStore} for a single thread, with a field for each key the engine reads on every launch, so that
+ * replaying a launch neither boxes nor locks. The other keys are kept in an {@link InMemoryRateStateStore}.
+ */
+class ReplayStateStore implements RateStateStore {
+
+    private final InMemoryRateStateStore mOthers = new InMemoryRateStateStore();
+    private boolean mOthersEmpty = true;
+    private Boolean mDontShowAgain;
+    private long mDateFirstLaunch;
+    private boolean mHasDateFirstLaunch;
+    private long mLaunchCount;
+    private boolean mHasLaunchCount;
+    private int mAppVersionCode;
+    private boolean mHasAppVersionCode;
+    private long mPromptAt;
+    private boolean mHasPromptAt;
+
+    @Override
+    public void preload() {
+    }
+
+    @Override
+    public boolean getBoolean(String key, boolean defaultValue) {
+        if (isKey(key, PrefsContract.PREF_DONT_SHOW_AGAIN)) {
+            return mDontShowAgain != null ? mDontShowAgain : defaultValue;
+        }
+        return mOthersEmpty ? defaultValue : mOthers.getBoolean(key, defaultValue);
+    }
+
+    @Override
+    public int getInt(String key, int defaultValue) {
+        if (isKey(key, PrefsContract.PREF_APP_VERSION_CODE)) {
+            return mHasAppVersionCode ? mAppVersionCode : defaultValue;
+        }
+        return mOthersEmpty ? defaultValue : mOthers.getInt(key, defaultValue);
+    }
+
+    @Override
+    public long getLong(String key, long defaultValue) {
+        if (isKey(key, PrefsContract.PREF_DATE_FIRST_LAUNCH)) {
+            return mHasDateFirstLaunch ? mDateFirstLaunch : defaultValue;
+        } else if (isKey(key, PrefsContract.PREF_LAUNCH_COUNT)) {
+            return mHasLaunchCount ? mLaunchCount : defaultValue;
+        } else if (isKey(key, PrefsContract.PREF_PROMPT_AT)) {
+            return mHasPromptAt ? mPromptAt : defaultValue;
+        }
+        return mOthersEmpty ? defaultValue : mOthers.getLong(key, defaultValue);
+    }
+
+    @Override
+    public RateStateStore putBoolean(String key, boolean value) {
+        if (isKey(key, PrefsContract.PREF_DONT_SHOW_AGAIN)) {
+            mDontShowAgain = value;
+        } else {
+            mOthers.putBoolean(key, value);
+            mOthersEmpty = false;
+        }
+        return this;
+    }
+
+    @Override
+    public RateStateStore putInt(String key, int value) {
+        if (isKey(key, PrefsContract.PREF_APP_VERSION_CODE)) {
+            mAppVersionCode = value;
+            mHasAppVersionCode = true;
+        } else {
+            mOthers.putInt(key, value);
+            mOthersEmpty = false;
+        }
+        return this;
+    }
+
+    @Override
+    public RateStateStore putLong(String key, long value) {
+        if (isKey(key, PrefsContract.PREF_DATE_FIRST_LAUNCH)) {
+            mDateFirstLaunch = value;
+            mHasDateFirstLaunch = true;
+        } else if (isKey(key, PrefsContract.PREF_LAUNCH_COUNT)) {
+            mLaunchCount = value;
+            mHasLaunchCount = true;
+        } else if (isKey(key, PrefsContract.PREF_PROMPT_AT)) {
+            mPromptAt = value;
+            mHasPromptAt = true;
+        } else {
+            mOthers.putLong(key, value);
+            mOthersEmpty = false;
+        }
+        return this;
+    }
+
+    @Override
+    public RateStateStore clear() {
+        mDontShowAgain = null;
+        mHasDateFirstLaunch = false;
+        mHasLaunchCount = false;
+        mHasAppVersionCode = false;
+        mHasPromptAt = false;
+        if (!mOthersEmpty) {
+            mOthers.clear();
+            mOthersEmpty = true;
+        }
+        return this;
+    }
+
+    @Override
+    public void apply() {
+    }
+
+    @Override
+    public boolean commit() {
+        return true;
+    }
+
+    private static boolean isKey(String key, String contractKey) {
+        // The engine passes the PrefsContract constants, so the comparison is usually by reference.
+        return key == contractKey || key.equals(contractKey);
+    }
+}
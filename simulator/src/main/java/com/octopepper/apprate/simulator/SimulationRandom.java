@@ -0,0 +1,64 @@
+package com.octopepper.apprate.simulator;
+
+/**
+ * A small SplitMix64 generator. Seeded from the user index, it gives every user the same draws whatever the thread or the
+ * order in which the users are simulated.
+ */
+class SimulationRandom {
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private long mState;
+
+    SimulationRandom(long seed) {
+        mState = seed;
+    }
+
+    /**
+     * @param seed  The seed of the simulation.
+     * @param user  The index of a user.
+     * @param value An index of a value drawn for the user.
+     * @return A uniformly distributed double in [0, 1), without creating a generator.
+     */
+    static double uniform(long seed, long user, long value) {
+        return toDouble(mix(mix(seed + user * GOLDEN_GAMMA) + value * GOLDEN_GAMMA));
+    }
+
+    long nextLong() {
+        mState += GOLDEN_GAMMA;
+        return mix(mState);
+    }
+
+    /**
+     * @return A uniformly distributed double in [0, 1).
+     */
+    double nextDouble() {
+        return toDouble(nextLong());
+    }
+
+    /**
+     * @return A normally distributed double, with mean 0 and standard deviation 1.
+     */
+    double nextGaussian() {
+        // Box-Muller, one of the two values is dropped.
+        return Math.sqrt(-2 * Math.log(1 - nextDouble())) * Math.cos(2 * Math.PI * nextDouble());
+    }
+
+    /**
+     * @param mean The mean of the distribution.
+     * @return An exponentially distributed double.
+     */
+    double nextExponential(double mean) {
+        return -mean * Math.log(1 - nextDouble());
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static double toDouble(long bits) {
+        return (bits >>> 11) * 0x1.0p-53;
+    }
+}
@@ -0,0 +1,145 @@
+package com.octopepper.apprate.simulator;
+
+import com.octopepper.apprate.RatingEligibilityEngine.Decision;
+
+/**
+ * What happened to a population with one {@link PromptSettings}: how many users were prompted, how long after their first launch,
+ * and why the others were not.
+ */
+public class SimulationResult {
+
+    /**
+     * The days to the first prompt are counted day by day up to this bound, later prompts are counted in the last bucket.
+     */
+    public static final int MAX_DAYS = 365;
+
+    private final PromptSettings mSettings;
+    private long mUsers = 0;
+    private long mPromptedUsers = 0;
+    private long mPrompts = 0;
+    private final long[] mDaysToFirstPrompt = new long[MAX_DAYS + 1];
+    private final long[] mLaunchDecisions = new long[Decision.values().length];
+    private final long[] mLastDecisionsOfUnprompted = new long[Decision.values().length];
+
+    SimulationResult(PromptSettings settings) {
+        mSettings = settings;
+    }
+
+    /**
+     * @param prompts           The number of times the user was prompted.
+     * @param daysToFirstPrompt The number of days from the first launch to the first prompt, if prompted.
+     * @param lastDecision      The decision of the last launch, or <code>null</code> if the user never launched the application.
+     */
+    void addUser(int prompts, int daysToFirstPrompt, Decision lastDecision) {
+        mUsers++;
+        if (prompts > 0) {
+            mPromptedUsers++;
+            mPrompts += prompts;
+            mDaysToFirstPrompt[Math.min(daysToFirstPrompt, MAX_DAYS)]++;
+        } else if (lastDecision != null) {
+            mLastDecisionsOfUnprompted[lastDecision.ordinal()]++;
+        }
+    }
+
+    void addLaunchDecision(Decision decision) {
+        mLaunchDecisions[decision.ordinal()]++;
+    }
+
+    /**
+     * @param other The result of another part of the population, with the same settings.
+     */
+    void merge(SimulationResult other) {
+        mUsers += other.mUsers;
+        mPromptedUsers += other.mPromptedUsers;
+        mPrompts += other.mPrompts;
+        for (int i = 0; i < mDaysToFirstPrompt.length; i++) {
+            mDaysToFirstPrompt[i] += other.mDaysToFirstPrompt[i];
+        }
+        for (int i = 0; i < mLaunchDecisions.length; i++) {
+            mLaunchDecisions[i] += other.mLaunchDecisions[i];
+            mLastDecisionsOfUnprompted[i] += other.mLastDecisionsOfUnprompted[i];
+        }
+    }
+
+    public PromptSettings getSettings() {
+        return mSettings;
+    }
+
+    public long getUsers() {
+        return mUsers;
+    }
+
+    public long getPromptedUsers() {
+        return mPromptedUsers;
+    }
+
+    /**
+     * @return The share of the users that were prompted at least once.
+     */
+    public double getPromptRate() {
+        return mUsers > 0 ? (double) mPromptedUsers / mUsers : 0;
+    }
+
+    /**
+     * @return The average number of prompts of the prompted users, more than 1 when they ask to be reminded later.
+     */
+    public double getPromptsPerPromptedUser() {
+        return mPromptedUsers > 0 ? (double) mPrompts / mPromptedUsers : 0;
+    }
+
+    /**
+     * @param day A number of days since the first launch, up to {@link #MAX_DAYS}.
+     * @return The number of users first prompted on that day.
+     */
+    public long getUsersFirstPromptedOnDay(int day) {
+        return mDaysToFirstPrompt[day];
+    }
+
+    /**
+     * @param percentile A percentile in ]0, 100].
+     * @return The number of days to the first prompt under which the percentile of the prompted users were prompted, or -1 if
+     * nobody was prompted.
+     */
+    public int getDaysToFirstPromptPercentile(double percentile) {
+        long rank = (long) Math.ceil(mPromptedUsers * percentile / 100);
+        long count = 0;
+        for (int day = 0; day < mDaysToFirstPrompt.length; day++) {
+            count += mDaysToFirstPrompt[day];
+            if (count >= rank && count > 0) {
+                return day;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param decision A decision.
+     * @return The number of launches of all the users with that decision.
+     */
+    public long getLaunchDecisions(Decision decision) {
+        return mLaunchDecisions[decision.ordinal()];
+    }
+
+    /**
+     * @param decision A decision.
+     * @return The number of never prompted users whose last launch had that decision, that is why they were not prompted.
+     */
+    public long getUnpromptedUsersLastDecision(Decision decision) {
+        return mLastDecisionsOfUnprompted[decision.ordinal()];
+    }
+
+    /**
+     * @return The most frequent reason why users were never prompted, or <code>null</code> if all were.
+     */
+    public Decision getMainSuppressionReason() {
+        Decision reason = null;
+        long max = 0;
+        for (Decision decision : Decision.values()) {
+            if (mLastDecisionsOfUnprompted[decision.ordinal()] > max) {
+                max = mLastDecisionsOfUnprompted[decision.ordinal()];
+                reason = decision;
+            }
+        }
+        return reason;
+    }
+}
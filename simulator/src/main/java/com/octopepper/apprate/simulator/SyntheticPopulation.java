@@ -0,0 +1,158 @@
+package com.octopepper.apprate.simulator;
+
+import com.octopepper.apprate.RatingEligibilityEngine;
+
+/**
+ * A generated population. Each user installs the application, launches it at their own rate until they churn, spends a few
+ * minutes in it with some significant events, sometimes crashes it, and picks up the regular releases at their next launch. The timelines are generated on demand from the seed, so millions of
+ * users do not have to be kept in memory.
+ */
+public class SyntheticPopulation implements PopulationSource {
+
+    private static final long START_MILLIS = 1450000000000L;
+    private static final long CRASH_DELAY_MILLIS = 60 * 1000L;
+    private static final long MINUTE_MILLIS = 60 * 1000L;
+
+    private final int mSize;
+    private final long mSeed;
+    private int mHorizonDays = 90;
+    private double mMedianLaunchesPerDay = 1;
+    private double mLaunchesPerDaySpread = 0.8;
+    private double mDailyChurnRate = 0.03;
+    private double mCrashRate = 0.002;
+    private int mReleaseIntervalDays = 21;
+    private double mMeanSessionMinutes = 4;
+    private double mEventsPerSession = 0.3;
+
+    /**
+     * @param size The number of users.
+     * @param seed The seed the timelines are generated from.
+     */
+    public SyntheticPopulation(int size, long seed) {
+        mSize = size;
+        mSeed = seed;
+    }
+
+    /**
+     * @param horizonDays The number of days simulated after the installation.<br/>
+     *                    Default value is 90 days.
+     * @return This {@link SyntheticPopulation} object to allow chaining.
+     */
+    public SyntheticPopulation setHorizonDays(int horizonDays) {
+        mHorizonDays = horizonDays;
+        return this;
+    }
+
+    /**
+     * @param medianLaunchesPerDay The median over users of the number of launches per day.<br/>
+     *                             Default value is 1.
+     * @param spread               The standard deviation of its logarithm, so that some users are much more active than others.
+     *                             <br/>Default value is 0.8.
+     * @return This {@link SyntheticPopulation} object to allow chaining.
+     */
+    public SyntheticPopulation setLaunchesPerDay(double medianLaunchesPerDay, double spread) {
+        mMedianLaunchesPerDay = medianLaunchesPerDay;
+        mLaunchesPerDaySpread = spread;
+        return this;
+    }
+
+    /**
+     * @param dailyChurnRate The probability that a user stops using the application on a given day.<br/>
+     *                       Default value is 0.03.
+     * @return This {@link SyntheticPopulation} object to allow chaining.
+     */
+    public SyntheticPopulation setDailyChurnRate(double dailyChurnRate) {
+        mDailyChurnRate = dailyChurnRate;
+        return this;
+    }
+
+    /**
+     * @param crashRate The probability that a launch ends with a crash.<br/>
+     *                  Default value is 0.002.
+     * @return This {@link SyntheticPopulation} object to allow chaining.
+     */
+    public SyntheticPopulation setCrashRate(double crashRate) {
+        mCrashRate = crashRate;
+        return this;
+    }
+
+    /**
+     * @param releaseIntervalDays The number of days between two releases, or 0 for no release.<br/>
+     *                            Default value is 21 days.
+     * @return This {@link SyntheticPopulation} object to allow chaining.
+     */
+    public SyntheticPopulation setReleaseIntervalDays(int releaseIntervalDays) {
+        mReleaseIntervalDays = releaseIntervalDays;
+        return this;
+    }
+
+    /**
+     * @param meanSessionMinutes The mean time spent in the application per launch, in minutes.<br/>
+     *                           Default value is 4 minutes.
+     * @param eventsPerSession   The mean number of significant events per launch.<br/>
+     *                           Default value is 0.3.
+     * @return This {@link SyntheticPopulation} object to allow chaining.
+     */
+    public SyntheticPopulation setSessions(double meanSessionMinutes, double eventsPerSession) {
+        mMeanSessionMinutes = meanSessionMinutes;
+        mEventsPerSession = eventsPerSession;
+        return this;
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    @Override
+    public void fill(int user, UserTimeline timeline) {
+        timeline.clear();
+        SimulationRandom random = new SimulationRandom(mSeed ^ ((long) user << 32 | user));
+
+        double meanDaysBetweenLaunches = 1 / (mMedianLaunchesPerDay * Math.exp(mLaunchesPerDaySpread * random.nextGaussian()));
+        double lifetimeDays = mDailyChurnRate > 0 ? random.nextExponential(1 / mDailyChurnRate) : mHorizonDays;
+        long end = START_MILLIS + (long) (Math.min(lifetimeDays, mHorizonDays) * RatingEligibilityEngine.DAY_IN_MILLIS);
+        long releaseInterval = mReleaseIntervalDays * RatingEligibilityEngine.DAY_IN_MILLIS;
+        // Users install the application at any time between two releases.
+        long nextRelease = releaseInterval > 0 ? START_MILLIS + (long) (random.nextDouble() * releaseInterval) : Long.MAX_VALUE;
+
+        long time = START_MILLIS;
+        while (time < end) {
+            if (time >= nextRelease) {
+                timeline.add(time, UserTimeline.UPGRADE);
+                while (nextRelease <= time) {
+                    nextRelease += releaseInterval;
+                }
+            }
+            timeline.add(time, UserTimeline.LAUNCH);
+            long next = time + (long) (random.nextExponential(meanDaysBetweenLaunches) * RatingEligibilityEngine.DAY_IN_MILLIS);
+            long sessionEnd;
+            if (random.nextDouble() < mCrashRate) {
+                sessionEnd = time + CRASH_DELAY_MILLIS;
+                addEvents(random, timeline, time, sessionEnd);
+                timeline.add(sessionEnd, UserTimeline.CRASH);
+            } else {
+                sessionEnd = time + Math.max(1, (long) (random.nextExponential(mMeanSessionMinutes) * MINUTE_MILLIS));
+                addEvents(random, timeline, time, sessionEnd);
+                timeline.add(sessionEnd, UserTimeline.BACKGROUND);
+            }
+            time = Math.max(next, sessionEnd);
+        }
+    }
+
+    /**
+     * Add the significant events of a session, spread uniformly over it.
+     */
+    private void addEvents(SimulationRandom random, UserTimeline timeline, long start, long end) {
+        if (mEventsPerSession <= 0) {
+            return;
+        }
+        // Poisson arrivals: the gaps between the events are exponential.
+        double meanGap = (end - start) / mEventsPerSession;
+        long time = start + (long) random.nextExponential(meanGap);
+        while (time < end) {
+            timeline.add(time, UserTimeline.EVENT);
+            time += Math.max(1, (long) random.nextExponential(meanGap));
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.octopepper.apprate.simulator;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Simulates a grid of minimum launches and days over a population and prints, for each point, the share of users prompted, the
+ * days to their first prompt and why the others were not prompted.
+ * <pre>
+ * --users 100000          number of synthetic users
+ * --horizon 90            number of days simulated
+ * --timelines events.csv  replay recorded timelines instead, see {@link RecordedPopulation}
+ * --launches 0,3,5,10,20  minimum launches of the grid
+ * --days 0,1,3,7,14,30    minimum days of the grid
+ * --min-events 0          also require this many significant events
+ * --min-foreground 0      also require this many minutes in the foreground
+ * --max-crashes 0         also suppress the prompt after crashes, in the last 30 days
+ * --reset-on-upgrade      reset the tracking on upgrades
+ * --remind-later 0.3      probability that a prompted user asks to be reminded later
+ * --seed 1                seed of the synthetic users and of their answers
+ * --parallelism 8         number of threads, the number of cores by default
+ * </pre>
+ */
+public class ThresholdSweep {
+
+    public static void main(String[] args) throws IOException {
+        int users = 100000;
+        int horizonDays = 90;
+        String timelines = null;
+        long[] launches = {0, 3, 5, 10, 20};
+        long[] days = {0, 1, 3, 7, 14, 30};
+        long minEvents = 0;
+        long minForegroundMinutes = 0;
+        int maxCrashes = -1;
+        boolean resetOnUpgrade = false;
+        double remindLater = 0.3;
+        long seed = 1;
+        int parallelism = Runtime.getRuntime().availableProcessors();
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--reset-on-upgrade")) {
+                resetOnUpgrade = true;
+                continue;
+            }
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing value of " + arg);
+            }
+            String value = args[++i];
+            if (arg.equals("--users")) {
+                users = Integer.parseInt(value);
+            } else if (arg.equals("--horizon")) {
+                horizonDays = Integer.parseInt(value);
+            } else if (arg.equals("--timelines")) {
+                timelines = value;
+            } else if (arg.equals("--launches")) {
+                launches = parseList(value);
+            } else if (arg.equals("--days")) {
+                days = parseList(value);
+            } else if (arg.equals("--min-events")) {
+                minEvents = Long.parseLong(value);
+            } else if (arg.equals("--min-foreground")) {
+                minForegroundMinutes = Long.parseLong(value);
+            } else if (arg.equals("--max-crashes")) {
+                maxCrashes = Integer.parseInt(value);
+            } else if (arg.equals("--remind-later")) {
+                remindLater = Double.parseDouble(value);
+            } else if (arg.equals("--seed")) {
+                seed = Long.parseLong(value);
+            } else if (arg.equals("--parallelism")) {
+                parallelism = Integer.parseInt(value);
+            } else {
+                throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+
+        PopulationSource population;
+        if (timelines != null) {
+            Reader reader = new FileReader(timelines);
+            try {
+                population = RecordedPopulation.read(reader);
+            } finally {
+                reader.close();
+            }
+        } else {
+            population = new SyntheticPopulation(users, seed).setHorizonDays(horizonDays);
+        }
+
+        List<PromptSettings> grid = new ArrayList<PromptSettings>();
+        for (long minLaunches : launches) {
+            for (long minDays : days) {
+                grid.add(new PromptSettings(minLaunches, minDays)
+                        .setMinEventsUntilPrompt(minEvents)
+                        .setMinForegroundMinutesUntilPrompt(minForegroundMinutes)
+                        .setMaxCrashesUntilPrompt(maxCrashes, 30)
+                        .setResetOnAppUpgrade(resetOnUpgrade));
+            }
+        }
+
+        long start = System.nanoTime();
+        SimulationResult[] results = new PopulationSimulator(population, new ForkJoinPool(parallelism))
+                .setRemindLaterRate(remindLater, seed)
+                .run(grid.toArray(new PromptSettings[grid.size()]));
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+        System.out.println(String.format(Locale.US, "%8s %5s %9s %8s %5s %5s %5s  %s",
+                "launches", "days", "prompted", "prompts", "p50", "p90", "p99", "main reason not prompted"));
+        for (SimulationResult result : results) {
+            System.out.println(String.format(Locale.US, "%8d %5d %8.1f%% %8.2f %5d %5d %5d  %s",
+                    result.getSettings().getMinLaunchesUntilPrompt(),
+                    result.getSettings().getMinDaysUntilPrompt(),
+                    result.getPromptRate() * 100,
+                    result.getPromptsPerPromptedUser(),
+                    result.getDaysToFirstPromptPercentile(50),
+                    result.getDaysToFirstPromptPercentile(90),
+                    result.getDaysToFirstPromptPercentile(99),
+                    result.getMainSuppressionReason()));
+        }
+        System.out.println(String.format(Locale.US, "%d users, %d settings, %d threads, %d ms",
+                population.size(), results.length, parallelism, elapsedMillis));
+    }
+
+    private static long[] parseList(String value) {
+        String[] items = value.split(",");
+        long[] list = new long[items.length];
+        for (int i = 0; i < items.length; i++) {
+            list[i] = Long.parseLong(items[i].trim());
+        }
+        return list;
+    }
+}
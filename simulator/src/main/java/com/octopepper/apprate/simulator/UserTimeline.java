@@ -0,0 +1,71 @@
+package com.octopepper.apprate.simulator;
+
+import java.util.Arrays;
+
+/**
+ * The launches, crashes, upgrades, significant events and returns to the background of one user, in chronological order.<br/>
+ * A launch starts a session, which ends when the application goes to the background. A crash ends it without letting AppRate
+ * prepare the next one, as the process dies.<br/>
+ * A timeline is reused from one user to the next, so that replaying millions of users does not allocate per event.
+ */
+public class UserTimeline {
+
+    public static final byte LAUNCH = 'L';
+    public static final byte CRASH = 'C';
+    public static final byte UPGRADE = 'U';
+    public static final byte EVENT = 'E';
+    public static final byte BACKGROUND = 'B';
+
+    private long[] mTimes = new long[64];
+    private byte[] mKinds = new byte[64];
+    private int mSize = 0;
+
+    /**
+     * Forget all the events, keeping the capacity.
+     */
+    public void clear() {
+        mSize = 0;
+    }
+
+    /**
+     * @param timeMillis The time of the event, not before the time of the previous one.
+     * @param kind       {@link #LAUNCH}, {@link #CRASH}, {@link #UPGRADE}, {@link #EVENT} or {@link #BACKGROUND}.
+     */
+    public void add(long timeMillis, byte kind) {
+        if (kind != LAUNCH && kind != CRASH && kind != UPGRADE && kind != EVENT && kind != BACKGROUND) {
+            throw new IllegalArgumentException("Unknown event kind " + (char) kind);
+        }
+        if (mSize > 0 && timeMillis < mTimes[mSize - 1]) {
+            throw new IllegalArgumentException("Events must be added in chronological order");
+        }
+        if (mSize == mTimes.length) {
+            mTimes = Arrays.copyOf(mTimes, mSize * 2);
+            mKinds = Arrays.copyOf(mKinds, mSize * 2);
+        }
+        mTimes[mSize] = timeMillis;
+        mKinds[mSize] = kind;
+        mSize++;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public long getTime(int index) {
+        return mTimes[index];
+    }
+
+    public byte getKind(int index) {
+        return mKinds[index];
+    }
+
+    /**
+     * @param other The timeline to copy into this one.
+     */
+    public void copyFrom(UserTimeline other) {
+        clear();
+        for (int i = 0; i < other.mSize; i++) {
+            add(other.mTimes[i], other.mKinds[i]);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.octopepper.apprate.simulator;
+
+import com.octopepper.apprate.RatingEligibilityEngine.Decision;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The replay of a small seeded population, compared between the ways the {@link PopulationSimulator} can run it.
+ */
+public class PopulationSimulatorTest {
+
+    private static final int USERS = 3000;
+
+    private SyntheticPopulation mPopulation;
+    private ForkJoinPool mPool;
+
+    @Before
+    public void setUp() {
+        mPopulation = new SyntheticPopulation(USERS, 42).setCrashRate(0.02);
+        mPool = new ForkJoinPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        mPool.shutdown();
+    }
+
+    @Test
+    public void replayStore() {
+        SimulationResult[] replayed = new PopulationSimulator(mPopulation, mPool).setRemindLaterRate(0.3, 7).run(settings());
+        SimulationResult[] inMemory = new PopulationSimulator(mPopulation, mPool).setRemindLaterRate(0.3, 7)
+                .setReplayStore(false)
+                .run(settings());
+
+        assertNotTrivial(replayed);
+        assertSameResults(inMemory, replayed);
+    }
+
+    @Test
+    public void forkJoinSplit() {
+        SimulationResult[] whole = new PopulationSimulator(mPopulation, new ForkJoinPool(1)).setRemindLaterRate(0.3, 7)
+                .setLeafUsers(USERS)
+                .run(settings());
+        SimulationResult[] split = new PopulationSimulator(mPopulation, mPool).setRemindLaterRate(0.3, 7)
+                .setLeafUsers(100)
+                .run(settings());
+
+        assertNotTrivial(whole);
+        assertSameResults(whole, split);
+    }
+
+    private static PromptSettings[] settings() {
+        return new PromptSettings[]{
+                new PromptSettings(0, 0),
+                new PromptSettings(5, 3),
+                new PromptSettings(3, 0).setMinEventsUntilPrompt(2).setMinForegroundMinutesUntilPrompt(10),
+                new PromptSettings(2, 1).setMaxCrashesUntilPrompt(0, 14).setResetOnAppUpgrade(true),
+        };
+    }
+
+    private static void assertNotTrivial(SimulationResult[] results) {
+        for (SimulationResult result : results) {
+            assertEquals(USERS, result.getUsers());
+        }
+        // Some users are left unprompted by the thresholds, so that the reasons are compared too.
+        assertTrue(results[1].getPromptedUsers() > 0);
+        assertTrue(results[1].getPromptedUsers() < USERS);
+    }
+
+    private static void assertSameResults(SimulationResult[] expected, SimulationResult[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            String settings = expected[i].getSettings().toString();
+            assertEquals(settings, expected[i].getUsers(), actual[i].getUsers());
+            assertEquals(settings, expected[i].getPromptedUsers(), actual[i].getPromptedUsers());
+            assertEquals(settings, expected[i].getPromptsPerPromptedUser(), actual[i].getPromptsPerPromptedUser(), 0);
+            for (int day = 0; day <= SimulationResult.MAX_DAYS; day++) {
+                assertEquals(settings + " day " + day, expected[i].getUsersFirstPromptedOnDay(day),
+                        actual[i].getUsersFirstPromptedOnDay(day));
+            }
+            for (Decision decision : Decision.values()) {
+                assertEquals(settings + " " + decision, expected[i].getLaunchDecisions(decision),
+                        actual[i].getLaunchDecisions(decision));
+                assertEquals(settings + " " + decision, expected[i].getUnpromptedUsersLastDecision(decision),
+                        actual[i].getUnpromptedUsersLastDecision(decision));
+            }
+        }
+    }
+}